@@ -0,0 +1,26 @@
+package org.thomaschen.streamlinedata.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * Discards everything written to it, keeping only the byte count so the output cannot be
+ * optimized away.
+ */
+class CountingOutputStream extends OutputStream {
+
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,96 @@
+package org.thomaschen.streamlinedata.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TaskDataView;
+import org.thomaschen.streamlinedata.model.UserData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the API's response bodies with the mapper Spring Boot configures.
+ * The UserData task map is never serialized, so a user with many tasks is measured as the
+ * aggregate alone plus the task lists the paged task endpoints return.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    int taskCount;
+
+    private ObjectMapper objectMapper;
+    private UserData userData;
+    private List<TaskData> tasks;
+    private List<TaskDataView> taskViews;
+
+    @Setup
+    public void createUser() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        Random random = new Random(42);
+        Calendar createdAt = Calendar.getInstance();
+        userData = new UserData("benchmark", 0, 0, 0, 0.0, 0.0);
+        tasks = new ArrayList<>(taskCount);
+        taskViews = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            long expDuration = 60000L + random.nextInt(3600000);
+            long actualDuration = (long) (expDuration * (0.5 + random.nextDouble()));
+            TaskData taskData = new TaskData(userData, expDuration, actualDuration,
+                    Arrays.asList("tag" + (i % 8), "all"));
+            taskData.setCreatedAt(createdAt);
+            userData.addTaskData(taskData);
+            tasks.add(taskData);
+
+            TaskDataView view = new TaskDataView(taskData.getTaskId(), taskData.getCreatedAt(),
+                    userData.getId(), expDuration, actualDuration);
+            taskData.getTags().forEach(view::addTag);
+            taskViews.add(view);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long userData() throws IOException {
+        return write(userData);
+    }
+
+    @Benchmark
+    public long taskData() throws IOException {
+        return write(tasks);
+    }
+
+    @Benchmark
+    public long taskDataViews() throws IOException {
+        return write(taskViews);
+    }
+
+    private long write(Object value) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        objectMapper.writeValue(out, value);
+        return out.getCount();
+    }
+}
@@ -0,0 +1,99 @@
+package org.thomaschen.streamlinedata.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import org.thomaschen.streamlinedata.service.JsonTimeSeriesSink;
+import org.thomaschen.streamlinedata.service.LargestTriangleThreeBucketsSink;
+import org.thomaschen.streamlinedata.service.TimeBucket;
+import org.thomaschen.streamlinedata.service.TimeBucketSink;
+import org.thomaschen.streamlinedata.service.TimeSeriesSink;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running estimation factor series written as JSON, the way TimeSeriesService streams them,
+ * without the database. Points are written to a counting stream so only generation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TimeSeriesBenchmark {
+
+    private static final int MAX_POINTS = 500;
+
+    @Param({"1000", "100000", "1000000"})
+    int taskCount;
+
+    private ObjectMapper objectMapper;
+    private long[] timestamps;
+    private double[] estFactors;
+
+    @Setup
+    public void createPoints() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        // One task roughly every ten minutes
+        Random random = new Random(42);
+        timestamps = new long[taskCount];
+        estFactors = new double[taskCount];
+        long timestamp = 1514764800000L;
+        for (int i = 0; i < taskCount; i++) {
+            timestamp += 60000L + random.nextInt(1080000);
+            timestamps[i] = timestamp;
+            estFactors[i] = 0.5 + random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public long everyPoint() throws IOException {
+        return write(null, null);
+    }
+
+    @Benchmark
+    public long dayBuckets() throws IOException {
+        return write(TimeBucket.DAY, null);
+    }
+
+    @Benchmark
+    public long downsampled() throws IOException {
+        return write(null, MAX_POINTS);
+    }
+
+    private long write(TimeBucket bucket, Integer maxPoints) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            TimeSeriesSink sink = new JsonTimeSeriesSink(generator);
+            if (bucket != null) {
+                sink = new TimeBucketSink(bucket, sink);
+            } else if (maxPoints != null) {
+                sink = new LargestTriangleThreeBucketsSink(taskCount, maxPoints, sink);
+            }
+
+            double estFactorSum = 0.0;
+            for (int i = 0; i < taskCount; i++) {
+                estFactorSum += estFactors[i];
+                sink.accept(timestamps[i], estFactorSum / (i + 1));
+            }
+            sink.finish();
+        }
+        return out.getCount();
+    }
+}
@@ -0,0 +1,80 @@
+package org.thomaschen.streamlinedata.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental aggregate updates against a full recalculation, for users with 1k to 1M tasks.
+ * The incremental updates should not depend on the number of tasks already aggregated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class UserDataBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int taskCount;
+
+    private List<TaskData> tasks;
+    private UserData userData;
+    private TaskData nextTask;
+
+    @Setup(Level.Trial)
+    public void createTasks() {
+        Random random = new Random(42);
+        UserData owner = new UserData("benchmark", 0, 0, 0, 0.0, 0.0);
+        tasks = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            long expDuration = 60000L + random.nextInt(3600000);
+            long actualDuration = Math.max(1000L, (long) (expDuration * (0.5 + random.nextDouble())));
+            tasks.add(new TaskData(owner, expDuration, actualDuration, null));
+        }
+        nextTask = new TaskData(owner, 1800000L, 2400000L, null);
+    }
+
+    @Setup(Level.Iteration)
+    public void aggregateTasks() {
+        userData = UserData.calcUserData(tasks, "benchmark");
+    }
+
+    @Benchmark
+    public UserData addTaskData() {
+        userData.addTaskData(nextTask);
+        return userData;
+    }
+
+    @Benchmark
+    public UserData addThenSubtractTaskData() {
+        // Paired so the aggregate keeps its size however many invocations run
+        userData.addTaskData(nextTask);
+        userData.subtractTaskData(nextTask);
+        return userData;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public UserData calcUserData() {
+        return UserData.calcUserData(tasks, "benchmark");
+    }
+}
@@ -0,0 +1,97 @@
+package org.thomaschen.streamlinedata.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Calls each operation at its fixed rate, open loop: requests are sent on schedule whether
+ * or not earlier ones have completed. Latency is measured from the time a request was due,
+ * not from when a worker got to it, so a stalled server shows up in the percentiles instead
+ * of silently lowering the request rate.
+ */
+class FixedRateDriver {
+
+    private static final Logger logger = LoggerFactory.getLogger(FixedRateDriver.class);
+
+    private final List<LoadOperation> operations;
+    private final int threads;
+
+    FixedRateDriver(List<LoadOperation> operations, int threads) {
+        this.operations = operations;
+        this.threads = threads;
+    }
+
+    /**
+     * Runs the traffic mix, discarding the latencies of requests due during the warmup
+     * @param warmupSeconds seconds run before latencies are recorded
+     * @param durationSeconds seconds latencies are recorded for
+     * @return the latencies and errors of every operation
+     */
+    LatencyReport run(int warmupSeconds, int durationSeconds) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        LatencyReport report = new LatencyReport(measureFrom);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        List<Thread> schedulers = new ArrayList<>();
+        for (LoadOperation operation : operations) {
+            if (operation.getRatePerSecond() <= 0) {
+                continue;
+            }
+            LatencyReport.OperationLatency latency = report.add(operation);
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / operation.getRatePerSecond());
+
+            Thread scheduler = new Thread(() -> {
+                for (long due = start; due < end; due += interval) {
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    long dueAt = due;
+                    workers.execute(() -> send(operation, latency, dueAt, dueAt >= measureFrom));
+                }
+            }, "load-" + operation.getName());
+            scheduler.setDaemon(true);
+            schedulers.add(scheduler);
+        }
+
+        logger.info("Driving {} operations for {} s after a {} s warmup", schedulers.size(),
+                durationSeconds, warmupSeconds);
+        schedulers.forEach(Thread::start);
+        for (Thread scheduler : schedulers) {
+            scheduler.join();
+        }
+
+        workers.shutdown();
+        if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+            logger.warn("Abandoning requests still running 60 s after the run ended");
+            workers.shutdownNow();
+        }
+        return report;
+    }
+
+    private static void send(LoadOperation operation, LatencyReport.OperationLatency latency,
+                             long due, boolean measured) {
+        Random random = ThreadLocalRandom.current();
+        boolean failed = false;
+        try {
+            operation.getRequest().send(random);
+        } catch (Exception e) {
+            failed = true;
+            logger.debug("{} failed", operation.getName(), e);
+        }
+        if (measured) {
+            latency.record(due, System.nanoTime(), failed);
+        }
+    }
+}
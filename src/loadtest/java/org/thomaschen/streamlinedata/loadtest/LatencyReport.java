@@ -0,0 +1,132 @@
+package org.thomaschen.streamlinedata.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency percentiles and throughput of every operation of a run.
+ */
+class LatencyReport {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long measureFrom;
+    private final List<OperationLatency> operations = new ArrayList<>();
+
+    /**
+     * @param measureFrom System.nanoTime() from which requests are due to be recorded
+     */
+    LatencyReport(long measureFrom) {
+        this.measureFrom = measureFrom;
+    }
+
+    OperationLatency add(LoadOperation operation) {
+        OperationLatency latency = new OperationLatency(operation);
+        operations.add(latency);
+        return latency;
+    }
+
+    /**
+     * Prints one line per operation, latencies in milliseconds. Throughput counts requests
+     * completed up to the last completion, so it drops below the target rate once the
+     * service falls behind.
+     * @param out the stream printed to
+     */
+    void print(PrintStream out) {
+        out.printf("%-40s %9s %9s %9s %7s %9s %9s %9s %9s %9s%n", "operation", "target/s", "actual/s",
+                "requests", "errors", "p50", "p90", "p99", "p99.9", "max");
+
+        long totalRequests = 0;
+        long lastCompleted = measureFrom;
+        for (OperationLatency operation : operations) {
+            Histogram histogram = operation.getHistogram();
+            totalRequests += histogram.getTotalCount();
+            lastCompleted = Math.max(lastCompleted, operation.lastCompleted.get());
+            out.printf("%-40s %9.1f %9.1f %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation.operation.getName(),
+                    operation.operation.getRatePerSecond(),
+                    perSecond(histogram.getTotalCount(), operation.lastCompleted.get()),
+                    histogram.getTotalCount(),
+                    operation.errors.get(),
+                    millis(histogram.getValueAtPercentile(50.0)),
+                    millis(histogram.getValueAtPercentile(90.0)),
+                    millis(histogram.getValueAtPercentile(99.0)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+        out.printf("%-40s %9s %9.1f %9d%n", "total", "", perSecond(totalRequests, lastCompleted), totalRequests);
+    }
+
+    /**
+     * Writes the summary and the full percentile distribution of every operation, in
+     * HdrHistogram's .hgrm format, to a directory
+     * @param directory the directory written to, created if missing
+     */
+    void write(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream(new File(directory, "summary.txt")), false, "UTF-8")) {
+            print(out);
+        }
+        for (OperationLatency operation : operations) {
+            String fileName = operation.operation.getName().replaceAll("[^A-Za-z0-9]+", "_") + ".hgrm";
+            try (PrintStream out = new PrintStream(new FileOutputStream(new File(directory, fileName)), false, "UTF-8")) {
+                operation.getHistogram().outputPercentileDistribution(out, NANOS_PER_MILLI);
+            }
+        }
+    }
+
+    private double perSecond(long requests, long lastCompleted) {
+        long elapsed = lastCompleted - measureFrom;
+        return (elapsed > 0) ? requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0.0;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Latencies, in nanoseconds, and errors of one operation, safe to record from many threads
+     */
+    static class OperationLatency {
+        private final LoadOperation operation;
+        private final Recorder recorder = new Recorder(3);
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong lastCompleted = new AtomicLong(Long.MIN_VALUE);
+        private Histogram histogram;
+
+        OperationLatency(LoadOperation operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * @param due System.nanoTime() the request was due at
+         * @param completed System.nanoTime() the request completed at
+         * @param failed whether the request failed
+         */
+        void record(long due, long completed, boolean failed) {
+            recorder.recordValue(completed - due);
+            lastCompleted.accumulateAndGet(completed, Math::max);
+            if (failed) {
+                errors.incrementAndGet();
+            }
+        }
+
+        synchronized Histogram getHistogram() {
+            if (histogram == null) {
+                histogram = recorder.getIntervalHistogram();
+            }
+            return histogram;
+        }
+    }
+}
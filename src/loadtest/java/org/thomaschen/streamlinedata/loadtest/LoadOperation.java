@@ -0,0 +1,38 @@
+package org.thomaschen.streamlinedata.loadtest;
+
+import java.util.Random;
+
+/**
+ * One endpoint of the traffic mix, called at a fixed rate.
+ */
+class LoadOperation {
+
+    /**
+     * Sends one request, throwing if it fails
+     */
+    interface Request {
+        void send(Random random) throws Exception;
+    }
+
+    private final String name;
+    private final double ratePerSecond;
+    private final Request request;
+
+    LoadOperation(String name, double ratePerSecond, Request request) {
+        this.name = name;
+        this.ratePerSecond = ratePerSecond;
+        this.request = request;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    Request getRequest() {
+        return request;
+    }
+}
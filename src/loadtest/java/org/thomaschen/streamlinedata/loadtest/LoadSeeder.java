@@ -0,0 +1,153 @@
+package org.thomaschen.streamlinedata.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Seeds users and tasks through the API before a run. Tags follow a Zipf distribution over
+ * a fixed vocabulary, each task carrying zero to three of them, and actual durations scatter
+ * log-normally around the expected duration.
+ */
+class LoadSeeder {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadSeeder.class);
+
+    static final List<String> TAGS;
+    static final ZipfSampler TAG_SAMPLER;
+
+    static {
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tags.add("tag" + i);
+        }
+        TAGS = Collections.unmodifiableList(tags);
+        TAG_SAMPLER = new ZipfSampler(TAGS.size(), 1.1);
+    }
+
+    private static final int TASKS_PER_BATCH = 1000;
+    private static final int SEED_THREADS = 8;
+
+    private final RestTemplate restTemplate;
+
+    LoadSeeder(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * Creates users with tasks
+     * @param users number of users created
+     * @param tasksPerUser number of tasks created per user
+     * @return the UUIDs of the users and tasks created
+     */
+    SeedData seed(int users, int tasksPerUser) throws Exception {
+        long started = System.nanoTime();
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+
+        List<UUID> userIds = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            Map<String, Object> userData = new HashMap<>();
+            userData.put("userId", "loaduser-" + runId + "-" + i);
+            userData.put("totalTasksCompleted", 0);
+            userData.put("totalUnderTasks", 0);
+            userData.put("totalOverTasks", 0);
+            userData.put("taskEstFactor", 0.0);
+            userData.put("avgTaskTime", 0.0);
+            Map<?, ?> created = restTemplate.postForObject("/api/users/", userData, Map.class);
+            userIds.add(UUID.fromString((String) created.get("id")));
+        }
+
+        // Users are interleaved across batches, so each batch touches many users' aggregates
+        List<Map<UUID, List<Map<String, Object>>>> batches = new ArrayList<>();
+        Random random = new Random(42);
+        Map<UUID, List<Map<String, Object>>> batch = new LinkedHashMap<>();
+        int batchTasks = 0;
+        for (int task = 0; task < tasksPerUser; task++) {
+            for (UUID userId : userIds) {
+                batch.computeIfAbsent(userId, id -> new ArrayList<>()).add(randomTask(random));
+                if (++batchTasks == TASKS_PER_BATCH) {
+                    batches.add(batch);
+                    batch = new LinkedHashMap<>();
+                    batchTasks = 0;
+                }
+            }
+        }
+        if (batchTasks > 0) {
+            batches.add(batch);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(SEED_THREADS);
+        List<UUID> taskIds = new ArrayList<>(users * tasksPerUser);
+        try {
+            List<Future<Map<UUID, List<UUID>>>> results = new ArrayList<>();
+            for (Map<UUID, List<Map<String, Object>>> tasksByOwner : batches) {
+                results.add(pool.submit(() -> restTemplate.exchange("/api/tasks/batch", HttpMethod.POST,
+                        new HttpEntity<>(tasksByOwner),
+                        new ParameterizedTypeReference<Map<UUID, List<UUID>>>() { }).getBody()));
+            }
+            for (Future<Map<UUID, List<UUID>>> result : results) {
+                result.get().values().forEach(taskIds::addAll);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        logger.info("Seeded {} users with {} tasks in {} ms", users, taskIds.size(),
+                (System.nanoTime() - started) / 1000000);
+        return new SeedData(userIds, taskIds);
+    }
+
+    /**
+     * A task body as the API accepts it
+     */
+    static Map<String, Object> randomTask(Random random) {
+        long expDuration = 5L * 60000L * (1 + random.nextInt(24));
+        long actualDuration = Math.max(1000L, Math.round(expDuration * Math.exp(0.4 * random.nextGaussian() + 0.1)));
+
+        Map<String, Object> task = new HashMap<>();
+        task.put("expDuration", expDuration);
+        task.put("actualDuration", actualDuration);
+        task.put("tags", randomTags(random));
+        return task;
+    }
+
+    static List<String> randomTags(Random random) {
+        int count = random.nextInt(4);
+        List<String> tags = new ArrayList<>(count);
+        while (tags.size() < count) {
+            String tag = TAGS.get(TAG_SAMPLER.sample(random));
+            if (!tags.contains(tag)) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * The users and tasks a run reads and writes
+     */
+    static class SeedData {
+        final List<UUID> userIds;
+        final List<UUID> taskIds;
+
+        SeedData(List<UUID> userIds, List<UUID> taskIds) {
+            this.userIds = userIds;
+            this.taskIds = taskIds;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.thomaschen.streamlinedata.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import org.thomaschen.streamlinedata.StreamlineDataApplication;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Measures the service under the production traffic mix.
+ *
+ * Starts the application on a random port against the Testcontainers MySQL database configured
+ * on the test classpath, or targets loadtest.base-url if set, seeds users and tasks, then calls
+ * the UserData and Task endpoints at fixed rates and reports latency percentiles and throughput
+ * per endpoint. Another database can be used by passing -Ddb.url, -Ddb.username and -Ddb.password.
+ *
+ * Options, as system properties:
+ *   loadtest.users             users seeded (200)
+ *   loadtest.tasks-per-user    tasks seeded per user (500)
+ *   loadtest.rate-scale        multiplier applied to every operation's rate (1.0)
+ *   loadtest.warmup-seconds    seconds run before latencies are recorded (15)
+ *   loadtest.duration-seconds  seconds latencies are recorded for (60)
+ *   loadtest.threads           concurrent requests at most (64)
+ *   loadtest.base-url          URL of a running service, empty to start one
+ *   loadtest.report-dir        directory the summary and .hgrm files are written to (target/loadtest)
+ */
+public class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    /**
+     * Users are picked with a Zipf skew, so some are far busier than others
+     */
+    private static final double USER_SKEW = 0.8;
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("loadtest.users", 200);
+        int tasksPerUser = Integer.getInteger("loadtest.tasks-per-user", 500);
+        double rateScale = Double.parseDouble(System.getProperty("loadtest.rate-scale", "1.0"));
+        int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 15);
+        int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+        int threads = Integer.getInteger("loadtest.threads", 64);
+        String baseUrl = System.getProperty("loadtest.base-url", "");
+        File reportDir = new File(System.getProperty("loadtest.report-dir", "target/loadtest"));
+
+        // HttpURLConnection keeps only 5 idle connections per host by default
+        System.setProperty("http.maxConnections", Integer.toString(threads));
+        // Devtools would otherwise restart the application in a new class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        ConfigurableApplicationContext context = null;
+        try {
+            if (baseUrl.isEmpty()) {
+                context = new SpringApplicationBuilder(StreamlineDataApplication.class)
+                        .properties("server.port=0")
+                        .run(args);
+                baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            }
+            logger.info("Load testing {}", baseUrl);
+
+            RestTemplate restTemplate = new RestTemplateBuilder().rootUri(baseUrl).build();
+            LoadSeeder.SeedData seedData = new LoadSeeder(restTemplate).seed(users, tasksPerUser);
+
+            List<LoadOperation> operations = trafficMix(restTemplate, seedData, rateScale);
+            LatencyReport report = new FixedRateDriver(operations, threads).run(warmupSeconds, durationSeconds);
+
+            report.print(System.out);
+            report.write(reportDir);
+            logger.info("Wrote latency distributions to {}", reportDir.getAbsolutePath());
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * The endpoints called and their rates per second before scaling, reads outnumbering writes
+     */
+    static List<LoadOperation> trafficMix(RestTemplate restTemplate, LoadSeeder.SeedData seedData, double rateScale) {
+        ZipfSampler userSampler = new ZipfSampler(seedData.userIds.size(), USER_SKEW);
+        List<UUID> userIds = seedData.userIds;
+        List<UUID> taskIds = seedData.taskIds;
+
+        List<LoadOperation> operations = new ArrayList<>();
+        operations.add(new LoadOperation("GET /api/users/{id}", 100 * rateScale, random ->
+                restTemplate.getForObject("/api/users/{id}", String.class,
+                        userIds.get(userSampler.sample(random)))));
+        operations.add(new LoadOperation("GET /api/users/{id}?tags", 20 * rateScale, random ->
+                restTemplate.getForObject("/api/users/{id}?tags={tag}", String.class,
+                        userIds.get(userSampler.sample(random)),
+                        LoadSeeder.TAGS.get(LoadSeeder.TAG_SAMPLER.sample(random)))));
+        operations.add(new LoadOperation("POST /api/users/{id}/tasks", 40 * rateScale, random ->
+                restTemplate.postForObject("/api/users/{id}/tasks", LoadSeeder.randomTask(random), String.class,
+                        userIds.get(userSampler.sample(random)))));
+        operations.add(new LoadOperation("GET /api/users/{id}/tasks/paged", 20 * rateScale, random ->
+                restTemplate.getForObject("/api/users/{id}/tasks/paged?page={page}", String.class,
+                        userIds.get(userSampler.sample(random)), random.nextInt(3))));
+        // Parsed, since a series failing after streaming began still answers 200 with truncated JSON
+        operations.add(new LoadOperation("GET /api/users/{id}/tasks/timeseries", 5 * rateScale, random ->
+                restTemplate.getForObject("/api/users/{id}/tasks/timeseries?maxPoints=500", JsonNode.class,
+                        userIds.get(userSampler.sample(random)))));
+        operations.add(new LoadOperation("POST /api/users/{id}/predictions", 40 * rateScale, random -> {
+            Map<String, Object> task = new HashMap<>();
+            task.put("expDuration", 5L * 60000L * (1 + random.nextInt(24)));
+            task.put("actualDuration", 0L);
+            task.put("tags", LoadSeeder.randomTags(random));
+            restTemplate.postForObject("/api/users/{id}/predictions", task, String.class,
+                    userIds.get(userSampler.sample(random)));
+        }));
+        operations.add(new LoadOperation("GET /api/tasks/{id}", 40 * rateScale, random ->
+                restTemplate.getForObject("/api/tasks/{id}", String.class, randomTask(taskIds, random))));
+        operations.add(new LoadOperation("PUT /api/tasks/{id}", 10 * rateScale, random ->
+                restTemplate.put("/api/tasks/{id}", LoadSeeder.randomTask(random), randomTask(taskIds, random))));
+        return operations;
+    }
+
+    private static UUID randomTask(List<UUID> taskIds, Random random) {
+        return taskIds.get(random.nextInt(taskIds.size()));
+    }
+}
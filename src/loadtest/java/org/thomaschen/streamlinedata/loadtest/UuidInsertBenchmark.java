@@ -0,0 +1,231 @@
+package org.thomaschen.streamlinedata.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.thomaschen.streamlinedata.model.TimeOrderedUuidGenerator;
+import org.thomaschen.streamlinedata.repository.UuidBytes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares the insert throughput of random version 4 and time-ordered version 7 primary keys.
+ *
+ * Creates two copies of the tasks table, with the same BINARY(16) primary key and secondary
+ * indexes, and fills one with UUID.randomUUID() ids and the other with
+ * TimeOrderedUuidGenerator ids in batched transactions. Random keys insert into random pages of
+ * the clustered index, so their throughput falls once the index outgrows the InnoDB buffer pool;
+ * time-ordered keys append to its right edge. Throughput is reported for every tenth of the rows,
+ * followed by the final size of each table.
+ *
+ * Runs against the Testcontainers MySQL database configured on the test classpath, or the database
+ * given by -Ddb.url, -Ddb.username and -Ddb.password. The two tables are dropped afterwards.
+ *
+ * Options, as system properties:
+ *   loadtest.uuid-rows        rows inserted per key kind (2000000)
+ *   loadtest.uuid-batch-size  rows per transaction (1000)
+ *   loadtest.report-dir       directory the summary is written to (target/loadtest)
+ */
+public class UuidInsertBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(UuidInsertBenchmark.class);
+
+    private static final int INTERVALS = 10;
+
+    private static final int OWNERS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = Integer.getInteger("loadtest.uuid-rows", 2000000);
+        int batchSize = Integer.getInteger("loadtest.uuid-batch-size", 1000);
+        File reportDir = new File(System.getProperty("loadtest.report-dir", "target/loadtest"));
+
+        Properties database = databaseProperties();
+        String url = System.getProperty("db.url", database.getProperty("db.url"));
+        url += (url.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true";
+
+        List<KeyRun> runs = new ArrayList<>();
+        runs.add(new KeyRun("v4 random", "uuid_bench_v4", UUID::randomUUID));
+        runs.add(new KeyRun("v7 time-ordered", "uuid_bench_v7", TimeOrderedUuidGenerator::nextUuid));
+
+        try (Connection connection = DriverManager.getConnection(url,
+                System.getProperty("db.username", database.getProperty("db.username")),
+                System.getProperty("db.password", database.getProperty("db.password")))) {
+            try {
+                for (KeyRun run : runs) {
+                    logger.info("Inserting {} rows with {} ids", rows, run.name);
+                    createTable(connection, run.table);
+                    run.insert(connection, rows, batchSize);
+                    run.measureSize(connection);
+                }
+            } finally {
+                for (KeyRun run : runs) {
+                    execute(connection, "drop table if exists " + run.table);
+                }
+            }
+        }
+
+        print(System.out, runs, rows);
+        reportDir.mkdirs();
+        File summary = new File(reportDir, "uuid-insert.txt");
+        try (PrintStream out = new PrintStream(new FileOutputStream(summary))) {
+            print(out, runs, rows);
+        }
+        logger.info("Wrote the UUID insert summary to {}", summary.getAbsolutePath());
+    }
+
+    private static Properties databaseProperties() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = UuidInsertBenchmark.class.getResourceAsStream("/database.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Same keys and indexes as the tasks table
+     */
+    private static void createTable(Connection connection, String table) throws SQLException {
+        execute(connection, "drop table if exists " + table);
+        execute(connection, "create table " + table + " (" +
+                "task_id BINARY(16) not null, " +
+                "owner_id BINARY(16) not null, " +
+                "created_at DATETIME not null, " +
+                "updated_at DATETIME not null, " +
+                "exp_duration BIGINT not null, " +
+                "actual_duration BIGINT not null, " +
+                "version BIGINT not null, " +
+                "primary key (task_id), " +
+                "index idx_owner_created (owner_id, created_at), " +
+                "index idx_created_id (created_at, task_id)) engine=InnoDB");
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static void print(PrintStream out, List<KeyRun> runs, int rows) {
+        out.printf("%-10s", "rows");
+        for (KeyRun run : runs) {
+            out.printf(" %18s", run.name + " /s");
+        }
+        out.println();
+        for (int interval = 0; interval < INTERVALS; interval++) {
+            out.printf("%-10d", (long) rows * (interval + 1) / INTERVALS);
+            for (KeyRun run : runs) {
+                out.printf(" %18.0f", run.intervalRates[interval]);
+            }
+            out.println();
+        }
+        for (KeyRun run : runs) {
+            out.printf("%s: %.1f s, %.0f rows/s overall, data %.1f MB, indexes %.1f MB%n",
+                    run.name, run.totalSeconds, rows / run.totalSeconds,
+                    run.dataBytes / 1048576.0, run.indexBytes / 1048576.0);
+        }
+    }
+
+    /**
+     * Inserts and results for one kind of primary key
+     */
+    private static class KeyRun {
+        final String name;
+        final String table;
+        final Supplier<UUID> ids;
+        final double[] intervalRates = new double[INTERVALS];
+        double totalSeconds;
+        long dataBytes;
+        long indexBytes;
+
+        KeyRun(String name, String table, Supplier<UUID> ids) {
+            this.name = name;
+            this.table = table;
+            this.ids = ids;
+        }
+
+        void insert(Connection connection, int rows, int batchSize) throws SQLException {
+            // Same owners and durations for both kinds, so only the keys differ
+            Random random = new Random(42);
+            List<byte[]> owners = new ArrayList<>();
+            for (int i = 0; i < OWNERS; i++) {
+                owners.add(UuidBytes.toBytes(new UUID(random.nextLong(), random.nextLong())));
+            }
+
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement("insert into " + table +
+                    " (task_id, owner_id, created_at, updated_at, exp_duration, actual_duration, version)" +
+                    " values (?, ?, ?, ?, ?, ?, 0)")) {
+                long start = System.nanoTime();
+                long intervalStart = start;
+                int intervalStartRow = 0;
+                int interval = 0;
+                for (int row = 0; row < rows; row++) {
+                    Timestamp now = new Timestamp(System.currentTimeMillis());
+                    long expDuration = 60000L * (1 + random.nextInt(120));
+                    insert.setBytes(1, UuidBytes.toBytes(ids.get()));
+                    insert.setBytes(2, owners.get(random.nextInt(OWNERS)));
+                    insert.setTimestamp(3, now);
+                    insert.setTimestamp(4, now);
+                    insert.setLong(5, expDuration);
+                    insert.setLong(6, (long) (expDuration * (0.5 + random.nextDouble())));
+                    insert.addBatch();
+
+                    int inserted = row + 1;
+                    if (inserted % batchSize == 0 || inserted == rows) {
+                        insert.executeBatch();
+                        connection.commit();
+
+                        // Intervals end on commits, so each rate covers whole transactions
+                        long committedAt = System.nanoTime();
+                        while (interval < INTERVALS && (long) inserted * INTERVALS >= (long) rows * (interval + 1)) {
+                            intervalRates[interval++] = (inserted - intervalStartRow) / seconds(committedAt - intervalStart);
+                            intervalStart = committedAt;
+                            intervalStartRow = inserted;
+                        }
+                    }
+                }
+                totalSeconds = seconds(System.nanoTime() - start);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        void measureSize(Connection connection) throws SQLException {
+            execute(connection, "analyze table " + table);
+            try (PreparedStatement select = connection.prepareStatement("select data_length, index_length " +
+                    "from information_schema.tables where table_schema = database() and table_name = ?")) {
+                select.setString(1, table);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    if (resultSet.next()) {
+                        dataBytes = resultSet.getLong(1);
+                        indexBytes = resultSet.getLong(2);
+                    }
+                }
+            }
+        }
+
+        private static double seconds(long nanos) {
+            return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+        }
+    }
+}
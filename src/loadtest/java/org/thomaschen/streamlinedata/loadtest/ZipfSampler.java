@@ -0,0 +1,30 @@
+package org.thomaschen.streamlinedata.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples ranks 0 to n - 1 with probability proportional to 1 / (rank + 1)^exponent, so a few
+ * tags and users account for most of the traffic, as they do in production.
+ */
+class ZipfSampler {
+
+    private final double[] cumulative;
+
+    ZipfSampler(int n, double exponent) {
+        cumulative = new double[n];
+        double total = 0.0;
+        for (int rank = 0; rank < n; rank++) {
+            total += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min((index >= 0) ? index : -index - 1, cumulative.length - 1);
+    }
+}
@@ -17,7 +17,7 @@ import java.util.TimeZone;
 @EnableJpaAuditing
 @EnableScheduling
 @RestController
-@PropertySource("database.properties")
+@PropertySource("classpath:database.properties")
 public class StreamlineDataApplication {
 
     @PostConstruct
@@ -1,13 +1,22 @@
 package org.thomaschen.streamlinedata.api;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.service.AggregateDeltaWorker;
+import org.thomaschen.streamlinedata.service.AggregateRebuildJob;
+import org.thomaschen.streamlinedata.service.CacheStatus;
+import org.thomaschen.streamlinedata.service.PredictionService;
+import org.thomaschen.streamlinedata.service.RebuildStatus;
+import org.thomaschen.streamlinedata.service.TaskTagIndexService;
+import org.thomaschen.streamlinedata.service.UserDataCache;
 
 import javax.validation.Valid;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -15,10 +24,58 @@ import java.util.UUID;
 @RequestMapping("/api")
 public class DataController {
 
+    @Autowired
+    AggregateRebuildJob aggregateRebuildJob;
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    PredictionService predictionService;
+
+    @Autowired
+    AggregateDeltaWorker aggregateDeltaWorker;
+
+    @Autowired
+    TaskTagIndexService taskTagIndexService;
+
     @GetMapping("/")
     public String index() {
         return "Hello, Welcome to the Streamline Data API";
     }
 
+    // Start rebuilding every UserData aggregate from its tasks
+    @PostMapping("/rebuild")
+    public ResponseEntity<RebuildStatus> startRebuild() {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(aggregateRebuildJob.startRebuild());
+    }
+
+    // Get progress of the current or last rebuild
+    @GetMapping("/rebuild")
+    public RebuildStatus getRebuildStatus() {
+        return aggregateRebuildJob.getStatus();
+    }
+
+    // Get size and hit rate of the in-process caches
+    @GetMapping("/cache")
+    public List<CacheStatus> getCacheStatus() {
+        List<CacheStatus> status = new ArrayList<>(userDataCache.getStatus());
+        status.addAll(predictionService.getStatus());
+        status.add(taskTagIndexService.getStatus());
+        return status;
+    }
+
+    // Get number of aggregate deltas waiting for the background worker
+    @GetMapping("/writes/pending")
+    public long getPendingDeltas() {
+        return aggregateDeltaWorker.getPendingCount();
+    }
+
+    // Apply every pending aggregate delta now, returns the number applied
+    @PostMapping("/writes/flush")
+    public long flushPendingDeltas() {
+        return aggregateDeltaWorker.drain();
+    }
+
 }
 
@@ -1,60 +1,123 @@
 package org.thomaschen.streamlinedata.api;
 
-import javafx.concurrent.Task;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
 import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.KeysetPage;
 import org.thomaschen.streamlinedata.model.TaskData;
-import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.model.TaskDataView;
 import org.thomaschen.streamlinedata.repository.TaskDataRepository;
 import org.thomaschen.streamlinedata.repository.UserDataRepository;
+import org.thomaschen.streamlinedata.service.ExportService;
+import org.thomaschen.streamlinedata.service.TaskDataService;
+import org.thomaschen.streamlinedata.service.TaskDataViewService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.security.Principal;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/tasks")
 public class TaskController {
 
+    static final int MAX_BATCH_TASKS = 10000;
+
     @Autowired
     TaskDataRepository taskDataRepository;
 
     @Autowired
     UserDataRepository userDataRepository;
 
-    // Get all Task Datas
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    TaskDataViewService taskDataViewService;
+
+    @Autowired
+    ExportService exportService;
+
+    // Get the first limit TaskDatas ordered by (createdAt, taskId), linking to /page for the rest
     @GetMapping("/")
-    public List<TaskData> getAllTasks() {
-        return taskDataRepository.findAll();
+    public ResponseEntity<List<TaskDataView>> getAllTasks(@RequestParam(value="limit",
+            defaultValue="" + UserDataController.MAX_PAGE_LIMIT) int limit) {
+        if (limit < 1 || limit > UserDataController.MAX_PAGE_LIMIT) {
+            throw new InvalidParameterException("limit", limit);
+        }
+
+        List<TaskDataView> tasks = taskDataRepository.findFirstViewPage(PageRequest.of(0, limit));
+        if (tasks.size() < limit) {
+            return ResponseEntity.ok(taskDataViewService.withTags(tasks));
+        }
+        TaskDataView last = tasks.get(tasks.size() - 1);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, UserDataController.nextPageLink("/api/tasks/page",
+                        KeysetPage.encodeCursor(last.getCreatedAt(), last.getTaskId()), limit))
+                .body(taskDataViewService.withTags(tasks));
+    }
+
+    // Create many TaskDatas grouped by the UUID of their owning UserData
+    @PostMapping("/batch")
+    public Map<UUID, List<UUID>> createTaskDataBatch(@RequestBody Map<UUID, List<TaskData>> tasksByOwner) {
+        // Null task lists are rejected by the service
+        long count = 0;
+        for (List<TaskData> tasks : tasksByOwner.values()) {
+            count += tasks == null ? 0 : tasks.size();
+        }
+        if (count > MAX_BATCH_TASKS) {
+            throw new InvalidParameterException("tasks", count);
+        }
+        return taskDataService.createTaskDataBatch(tasksByOwner);
+    }
+
+    // Get one page of TaskDatas ordered by (createdAt, taskId)
+    @GetMapping("/page")
+    public KeysetPage<TaskDataView> getTaskPage(@RequestParam(value="cursor", required=false) String cursor,
+                                            @RequestParam(value="limit", defaultValue="100") int limit) {
+        if (limit < 1 || limit > UserDataController.MAX_PAGE_LIMIT) {
+            throw new InvalidParameterException("limit", limit);
+        }
+
+        List<TaskDataView> tasks;
+        if (cursor == null) {
+            tasks = taskDataRepository.findFirstViewPage(PageRequest.of(0, limit));
+        } else {
+            try {
+                tasks = taskDataRepository.findViewPageAfter(KeysetPage.cursorCreatedAt(cursor),
+                        KeysetPage.cursorId(cursor), PageRequest.of(0, limit));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidParameterException("cursor", cursor);
+            }
+        }
+
+        String nextCursor = null;
+        if (tasks.size() == limit) {
+            TaskDataView last = tasks.get(tasks.size() - 1);
+            nextCursor = KeysetPage.encodeCursor(last.getCreatedAt(), last.getTaskId());
+        }
+        return new KeysetPage<>(taskDataViewService.withTags(tasks), nextCursor);
+    }
+
+    // Stream all TaskDatas as newline delimited JSON
+    @GetMapping("/export")
+    public void exportTasks(HttpServletResponse response) throws IOException {
+        response.setContentType(ExportService.NDJSON_CONTENT_TYPE);
+        exportService.writeTasks(response.getOutputStream());
     }
 
     // Update UserData using UUID
     @PutMapping("/{id}")
     public TaskData updateTaskData(@PathVariable(value = "id") UUID id,
                            @Valid @RequestBody TaskData taskDataDetails) {
-        TaskData taskData = taskDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("TaskData", "id", id));
-
-        UserData userData = userDataRepository.findById(taskData.getOwner().getId())
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
-
-        // Remove old taskData impact on userData
-        userData.subtractTaskData(taskData);
-
-        taskData.setActualDuration(taskDataDetails.getActualDuration());
-        taskData.setExpDuration(taskDataDetails.getExpDuration());
-        taskData.setOwner(userData);
-        taskData.setTags(taskDataDetails.getTags());
-
-        // Add new taskData impact on userData
-        userData.addTaskData(taskData);
-
-        userDataRepository.save(userData);
-        TaskData updatedTaskData = taskDataRepository.save(taskData);
-        return updatedTaskData;
+        return taskDataService.updateTaskData(id, taskDataDetails);
     }
 
     // Get Specifc TaskData using UUID
@@ -67,16 +130,7 @@ public class TaskController {
     // Delete Specific TaskData using UUID
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteTaskData(@PathVariable(value = "id") UUID id) {
-        TaskData taskData = taskDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("TaskData", "id", id));
-
-        UserData userData = userDataRepository.findById(taskData.getOwner().getId())
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
-
-        userData.removeTaskData(taskData);
-
-        userDataRepository.save(userData);
-        taskDataRepository.delete(taskData);
+        taskDataService.deleteTaskData(id);
 
         return ResponseEntity.ok().build();
     }
@@ -5,39 +5,120 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
 import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
 import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TeamRollup;
 import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.model.UserDataSnapshot;
 import org.thomaschen.streamlinedata.repository.TaskDataRepository;
 import org.thomaschen.streamlinedata.repository.UserDataRepository;
+import org.thomaschen.streamlinedata.service.TeamRollupService;
+import org.thomaschen.streamlinedata.service.UserDataCache;
+import org.thomaschen.streamlinedata.service.UserDataWriteExecutor;
 
 import javax.validation.Valid;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/teams")
 public class TeamDataController {
 
+    static final String TEAM_PREFIX = "t";
+
     @Autowired
     UserDataRepository userDataRepository;
 
     @Autowired
     TaskDataRepository taskDataRepository;
 
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDataWriteExecutor userDataWriteExecutor;
+
     // Create new UserData as unique Team
     @PostMapping("/")
     public UserData createUserDataAsTeam(@Valid @RequestBody UserData userData) {
         // Ensures unique userId
-        userData.setUserId("t" + userData.getUserId());
+        userData.setUserId(TEAM_PREFIX + userData.getUserId());
         return userDataRepository.save(userData);
     }
 
     // Get UUID from name
     @GetMapping("/identity/{name}")
     public UUID getIdFromTeamName(@PathVariable(value = "name") String userId) {
-        UserData userData = userDataRepository.findByUserId("t" + userId);
-        return userData.getId();
+        UUID id = userDataCache.resolveId(TEAM_PREFIX + userId);
+        if (id == null) {
+            throw new ResourceNotFoundException("Team", "name", userId);
+        }
+        return id;
+    }
+
+    // Get UUIDs from many team names, names without a team are left out
+    @PostMapping("/identity")
+    public Map<String, UUID> getIdsFromTeamNames(@RequestBody List<String> names) {
+        if (names.size() > UserDataController.MAX_PAGE_LIMIT) {
+            throw new InvalidParameterException("names", names.size());
+        }
+
+        List<String> userIds = new ArrayList<>(names.size());
+        for (String name : names) {
+            userIds.add(TEAM_PREFIX + name);
+        }
+
+        Map<String, UUID> ids = new HashMap<>();
+        for (Map.Entry<String, UUID> entry : userDataCache.resolveIds(userIds).entrySet()) {
+            ids.put(entry.getKey().substring(TEAM_PREFIX.length()), entry.getValue());
+        }
+        return ids;
+    }
+
+    // Get UUIDs of the members of a team
+    @GetMapping("/{id}/members")
+    public List<UUID> getTeamMembers(@PathVariable(value = "id") UUID id) {
+        return teamRollupService.getMemberIds(id);
+    }
+
+    // Add a UserData to a team, returns the team's updated rollup
+    @PutMapping("/{id}/members/{memberId}")
+    public UserDataSnapshot addTeamMember(@PathVariable(value = "id") UUID id,
+                                          @PathVariable(value = "memberId") UUID memberId) {
+        TeamRollup rollup = userDataWriteExecutor.execute(Arrays.asList(id, memberId),
+                () -> teamRollupService.addMember(id, memberId));
+        return toSnapshot(id, rollup);
+    }
+
+    // Remove a UserData from a team
+    @DeleteMapping("/{id}/members/{memberId}")
+    public ResponseEntity<?> removeTeamMember(@PathVariable(value = "id") UUID id,
+                                              @PathVariable(value = "memberId") UUID memberId) {
+        userDataWriteExecutor.execute(Arrays.asList(id, memberId), () -> {
+            teamRollupService.removeMember(id, memberId);
+            return null;
+        });
+        return ResponseEntity.ok().build();
+    }
+
+    // Get aggregate statistics over every task of a team's members
+    @GetMapping("/{id}/rollup")
+    public UserDataSnapshot getTeamRollup(@PathVariable(value = "id") UUID id) {
+        return toSnapshot(id, teamRollupService.getRollup(id));
+    }
+
+    private UserDataSnapshot toSnapshot(UUID id, TeamRollup rollup) {
+        UserDataSnapshot team = userDataCache.getById(id);
+        String name = (team == null) ? id.toString() : team.getUserId();
+        return new UserDataSnapshot(rollup.toUserData("Rollup Statistics for " + name + "'s Members"));
     }
 }
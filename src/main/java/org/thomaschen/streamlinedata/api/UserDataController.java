@@ -1,24 +1,47 @@
 package org.thomaschen.streamlinedata.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import org.thomaschen.streamlinedata.exceptions.InvalidArithmeticException;
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
 import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.KeysetPage;
+import org.thomaschen.streamlinedata.model.PredictionRequest;
 import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TaskDataView;
 import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.model.UserDataSnapshot;
 import org.thomaschen.streamlinedata.repository.TaskDataRepository;
 import org.thomaschen.streamlinedata.repository.UserDataRepository;
-
+import org.thomaschen.streamlinedata.service.ExportService;
+import org.thomaschen.streamlinedata.service.PredictionService;
+import org.thomaschen.streamlinedata.service.TagDictionary;
+import org.thomaschen.streamlinedata.service.TagExpression;
+import org.thomaschen.streamlinedata.service.TagStatisticsService;
+import org.thomaschen.streamlinedata.service.TaskDataService;
+import org.thomaschen.streamlinedata.service.TaskDataViewService;
+import org.thomaschen.streamlinedata.service.TaskTagIndexService;
+import org.thomaschen.streamlinedata.service.TeamRollupService;
+import org.thomaschen.streamlinedata.service.TimeBucket;
+import org.thomaschen.streamlinedata.service.TimeSeriesService;
+import org.thomaschen.streamlinedata.service.UserDataCache;
+import org.thomaschen.streamlinedata.service.UserDataWriteExecutor;
+import org.thomaschen.streamlinedata.service.UserDeletionService;
+
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -26,16 +49,119 @@ import java.util.UUID;
 @RequestMapping("/api/users")
 public class UserDataController {
 
+    static final int MAX_PAGE_LIMIT = 1000;
+
+    static final int MAX_BATCH_PREDICTIONS = 10000;
+
     @Autowired
     UserDataRepository userDataRepository;
 
     @Autowired
     TaskDataRepository taskDataRepository;
 
-    // Get all UserDatas
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    TaskDataViewService taskDataViewService;
+
+    @Autowired
+    TaskTagIndexService taskTagIndexService;
+
+    @Autowired
+    TagStatisticsService tagStatisticsService;
+
+    @Autowired
+    TagDictionary tagDictionary;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDataWriteExecutor userDataWriteExecutor;
+
+    @Autowired
+    UserDeletionService userDeletionService;
+
+    @Autowired
+    TimeSeriesService timeSeriesService;
+
+    @Autowired
+    ExportService exportService;
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    PredictionService predictionService;
+
+    // Get the aggregates of the first limit UserDatas ordered by (createdAt, id), linking to /page for the rest
     @GetMapping("/")
-    public List<UserData> getAllUsers() {
-        return userDataRepository.findAll();
+    public ResponseEntity<List<UserDataSnapshot>> getAllUsers(@RequestParam(value="limit",
+            defaultValue="" + MAX_PAGE_LIMIT) int limit) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new InvalidParameterException("limit", limit);
+        }
+
+        List<UserDataSnapshot> users = userDataRepository.findFirstSnapshotPage(PageRequest.of(0, limit));
+        if (users.size() < limit) {
+            return ResponseEntity.ok(users);
+        }
+        UserDataSnapshot last = users.get(users.size() - 1);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, nextPageLink("/api/users/page",
+                        KeysetPage.encodeCursor(last.getCreatedAt(), last.getId()), limit))
+                .body(users);
+    }
+
+    /**
+     * Link header value pointing at the keyset page after a capped listing
+     * @param path path of the page endpoint
+     * @param cursor cursor of the last item listed
+     * @param limit number of items per page
+     * @return the header value, with rel="next"
+     */
+    static String nextPageLink(String path, String cursor, int limit) {
+        String uri = ServletUriComponentsBuilder.fromCurrentContextPath().path(path)
+                .queryParam("cursor", cursor)
+                .queryParam("limit", limit)
+                .toUriString();
+        return "<" + uri + ">; rel=\"next\"";
+    }
+
+    // Get one page of UserData aggregates ordered by (createdAt, id)
+    @GetMapping("/page")
+    public KeysetPage<UserDataSnapshot> getUserPage(@RequestParam(value="cursor", required=false) String cursor,
+                                            @RequestParam(value="limit", defaultValue="100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new InvalidParameterException("limit", limit);
+        }
+
+        List<UserDataSnapshot> users;
+        if (cursor == null) {
+            users = userDataRepository.findFirstSnapshotPage(PageRequest.of(0, limit));
+        } else {
+            try {
+                users = userDataRepository.findSnapshotPageAfter(KeysetPage.cursorCreatedAt(cursor),
+                        KeysetPage.cursorId(cursor), PageRequest.of(0, limit));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidParameterException("cursor", cursor);
+            }
+        }
+
+        String nextCursor = null;
+        if (users.size() == limit) {
+            UserDataSnapshot last = users.get(users.size() - 1);
+            nextCursor = KeysetPage.encodeCursor(last.getCreatedAt(), last.getId());
+        }
+        return new KeysetPage<>(users, nextCursor);
+    }
+
+    // Stream all UserDatas as newline delimited JSON
+    @GetMapping("/export")
+    public void exportUsers(HttpServletResponse response) throws IOException {
+        response.setContentType(ExportService.NDJSON_CONTENT_TYPE);
+        exportService.writeUsers(response.getOutputStream());
     }
 
     // Create new UserData
@@ -48,43 +174,52 @@ public class UserDataController {
     @PutMapping("/{id}")
     public UserData updateUserData(@PathVariable(value = "id") UUID id,
                                 @Valid @RequestBody UserData userDataDetails) {
-        UserData userData = userDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
-
-        userData.setTaskEstFactor(userDataDetails.getTaskEstFactor());
-        userData.setTotalOverTasks(userDataDetails.getTotalOverTasks());
-        userData.setTotalUnderTasks(userDataDetails.getTotalUnderTasks());
-        userData.setTotalTasksCompleted(userDataDetails.getTotalTasksCompleted());
-
-        UserData updatedUserData = userDataRepository.save(userData);
-        return updatedUserData;
+        return userDataWriteExecutor.execute(id, () -> {
+            UserData userData = userDataRepository.findById(id)
+                    .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
+
+            userData.setTaskEstFactor(userDataDetails.getTaskEstFactor());
+            userData.setTotalOverTasks(userDataDetails.getTotalOverTasks());
+            userData.setTotalUnderTasks(userDataDetails.getTotalUnderTasks());
+            userData.setTotalTasksCompleted(userDataDetails.getTotalTasksCompleted());
+
+            UserData updatedUserData = userDataRepository.save(userData);
+            teamRollupService.memberChanged(id);
+            userDataCache.evict(id);
+            return updatedUserData;
+        });
     }
 
-    // Get Specifc UserData using UUID
+    // Get Specifc UserData using UUID, served from the aggregate cache, or statistics of the tasks matching a tag expression
     @GetMapping("/{id}")
-    public UserData getUserDataById(@PathVariable(value = "id") UUID id,
-                                    @RequestParam(value="tags", required=false) String tag) {
+    public UserDataSnapshot getUserDataById(@PathVariable(value = "id") UUID id,
+                                            @RequestParam(value="tags", required=false) String tag) {
+        TagExpression expression = (tag == null) ? null : TagExpression.parse(tag);
 
-        UserData userData = userDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
+        UserDataSnapshot userData = userDataCache.getById(id);
+        if (userData == null) {
+            throw new ResourceNotFoundException("UserData", "id", id);
+        }
 
-        if (tag == null) {
+        if (expression == null) {
             return userData;
+        } else if (expression.getTag() != null) {
+            return new UserDataSnapshot(tagStatisticsService.getTagStatistics(id, expression.getTag()).toUserData(
+                    "Subset Statistics for " + userData.getUserId() + "'s Tasks with Tag: " + expression.getTag()));
         } else {
-            List<TaskData> tasksWithTag = taskDataRepository.findAllByOwnerAndTags(userData, tag);
-            return UserData.calcUserData(tasksWithTag,
-                    "Subset Statistics for " + userData.getUserId() + "'s Tasks with Tag: " + tag);
+            UserData subset = new UserData(
+                    "Subset Statistics for " + userData.getUserId() + "'s Tasks with Tags: " + tag, 0, 0, 0, 0.0, 0.0);
+            subset.applyAccumulator(taskTagIndexService.accumulate(id, expression));
+            return new UserDataSnapshot(subset);
         }
     }
 
     // Delete Specific UserData using id
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteUserData(@PathVariable(value = "id") UUID id) {
-        UserData userData = userDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
-
-        userDataRepository.delete(userData);
-
+        if (!userDeletionService.deleteUser(id)) {
+            throw new ResourceNotFoundException("UserData", "id", id);
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -92,113 +227,140 @@ public class UserDataController {
     @PostMapping("/{id}/tasks")
     public TaskData createTaskData(@PathVariable(value = "id") UUID id,
                                    @Valid @RequestBody TaskData taskData) {
-        UserData userData = userDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
+        return taskDataService.createTaskData(id, taskData);
+    }
 
-        if (taskData.getExpDuration() == 0) {
-            throw new InvalidArithmeticException("TaskData", "expDuration", "0");
+    // Get TaskDatas owned by UserData with id, optionally matching a tag expression
+    @GetMapping("/{id}/tasks")
+    public List<TaskDataView> getAllTaskData(@PathVariable(value = "id") UUID id,
+                                             @RequestParam(value="tags", required=false) String tag) {
+        TagExpression expression = (tag == null) ? null : TagExpression.parse(tag);
+        if (!userDataRepository.existsById(id)) {
+            throw new ResourceNotFoundException("UserData", "id", id);
         }
 
-        userData.addTaskData(taskData);
-        taskData.setOwner(userData);
-
-        TaskData newTaskData = taskDataRepository.save(taskData);
-        UserData upatedUserData = userDataRepository.save(userData);
-
-        return newTaskData;
+        if (expression == null) {
+            return taskDataViewService.withTags(taskDataRepository.findViewsByOwnerId(id));
+        } else if (expression.getTag() != null) {
+            return taskDataViewService.withTags(
+                    taskDataRepository.findViewsByOwnerIdAndTagId(id, tagDictionary.getId(expression.getTag())));
+        } else {
+            return taskTagIndexService.findViews(id, expression);
+        }
     }
 
-    // Get TaskData entities owned by UserData with id
-    @GetMapping("/{id}/tasks")
-    public List<TaskData> getAllTaskData(@PathVariable(value = "id") UUID id,
-                                         @RequestParam(value="tags", required=false) String tag) {
-        UserData taskOwner = userDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
+    // Get one page of TaskDatas owned by UserData with id, pages filter by a single tag only
+    @GetMapping("/{id}/tasks/paged")
+    public Page<TaskDataView> getTaskDataPage(@PathVariable(value = "id") UUID id,
+                                          @RequestParam(value="tags", required=false) String tag,
+                                          @PageableDefault(size = 50, sort = "createdAt") Pageable pageable) {
+        TagExpression expression = (tag == null) ? null : TagExpression.parse(tag);
+        if (expression != null && expression.getTag() == null) {
+            throw new InvalidParameterException("tags", tag);
+        }
+        if (!userDataRepository.existsById(id)) {
+            throw new ResourceNotFoundException("UserData", "id", id);
+        }
 
-        if (tag == null) {
-            return taskDataRepository.findAllByOwner(taskOwner);
+        Page<TaskDataView> page;
+        if (expression == null) {
+            page = taskDataRepository.findViewsByOwnerId(id, pageable);
         } else {
-            return taskDataRepository.findAllByOwnerAndTags(taskOwner, tag);
+            page = taskDataRepository.findViewsByOwnerIdAndTagId(id, tagDictionary.getId(expression.getTag()), pageable);
         }
+        taskDataViewService.withTags(page.getContent());
+        return page;
     }
 
     // Get TaskData Points
     @GetMapping("/{id}/tasks/timeseries")
-    public String getUserTimeSeriesData(@PathVariable(value = "id") UUID id,
-                                        @RequestParam(value="tags", required=false) String tag)  {
-        UserData taskOwner = userDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
-
-        List<TaskData> tasks = null;
-        if (tag == null) {
-            tasks = taskDataRepository.findAllByOwnerOrderByCreatedAt(taskOwner);
-        } else {
-            tasks =  taskDataRepository.findAllByOwnerAndTagsOrderByCreatedAt(taskOwner, tag);
+    public void getUserTimeSeriesData(@PathVariable(value = "id") UUID id,
+                                      @RequestParam(value="tags", required=false) String tag,
+                                      @RequestParam(value="bucket", required=false) String bucketName,
+                                      @RequestParam(value="maxPoints", required=false) Integer maxPoints,
+                                      HttpServletResponse response) throws IOException {
+        TimeBucket bucket = null;
+        if (bucketName != null) {
+            bucket = TimeBucket.fromName(bucketName);
+            if (bucket == null) {
+                throw new InvalidParameterException("bucket", bucketName);
+            }
+            if (maxPoints != null) {
+                throw new InvalidParameterException("maxPoints", "cannot be combined with bucket");
+            }
         }
-
-        if (tasks == null) {
-            return "[]";
+        if (maxPoints != null && maxPoints < 3) {
+            throw new InvalidParameterException("maxPoints", maxPoints);
         }
+        TagExpression expression = (tag == null) ? null : TagExpression.parse(tag);
 
-        Double runningEstFactor = 0.0;
-        Integer totalTasks = 0;
-
-        ObjectMapper mapper = new ObjectMapper();
-        ArrayNode childNodes = mapper.createArrayNode();
-        for (TaskData taskData : tasks) {
-            JsonNode element = mapper.createObjectNode();
-
-            Double currTaskEstFactor = (double) taskData.getActualDuration() / (double) taskData.getExpDuration();
-            runningEstFactor = (runningEstFactor * totalTasks + currTaskEstFactor) /
-                    (totalTasks + 1);
-
-            ((ObjectNode) element).put("value", runningEstFactor);
-
-            String strDate = null;
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-            strDate = sdf.format(taskData.getCreatedAt().getTime());
-
-            ((ObjectNode) element).put("name", strDate);
-            childNodes.add(element);
-
-            totalTasks++;
+        if (!userDataRepository.existsById(id)) {
+            throw new ResourceNotFoundException("UserData", "id", id);
         }
 
-        String timeseries = "";
-        try {
-            timeseries = mapper.writeValueAsString(childNodes);
-        } catch (JsonProcessingException jpe) {
-            System.err.println(jpe.toString());
-        }
-        return timeseries;
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        timeSeriesService.writeTimeSeries(id, expression, bucket, maxPoints, response.getOutputStream());
     }
 
+    // Predict the actual duration of a new task from the user's and its tags' history
     @PostMapping("/{id}/predictions")
     public Double getNewTaskPrediction(@PathVariable(value = "id") UUID id,
                                        @Valid @RequestBody TaskData taskData) {
-        UserData userData = userDataRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
+        return predictionService.predict(id, taskData.getExpDuration(), taskData.getTags());
+    }
 
-        return taskData.getExpDuration() + userData.getAvgTaskTime() / 2;
+    // Predict the actual durations of many new tasks across many users, in request order
+    @PostMapping("/predictions")
+    public List<Double> getNewTaskPredictions(@RequestBody List<PredictionRequest> requests) {
+        if (requests.size() > MAX_BATCH_PREDICTIONS) {
+            throw new InvalidParameterException("requests", requests.size());
+        }
+        return predictionService.predictBatch(requests);
     }
 
     // Get UUID from name
     @GetMapping("/identity/{name}")
     public UUID getIdFromName(@PathVariable(value = "name") String userId) {
-        UserData userData = userDataRepository.findByUserId(userId);
-        return userData.getId();
+        UUID id = userDataCache.resolveId(userId);
+        if (id == null) {
+            throw new ResourceNotFoundException("UserData", "userId", userId);
+        }
+        return id;
     }
 
-    // Delete all users
+    // Get UUIDs from many names, names without a UserData are left out
+    @PostMapping("/identity")
+    public Map<String, UUID> getIdsFromNames(@RequestBody List<String> userIds) {
+        if (userIds.size() > MAX_PAGE_LIMIT) {
+            throw new InvalidParameterException("names", userIds.size());
+        }
+        return userDataCache.resolveIds(userIds);
+    }
+
+    // Delete all users, or those created in [createdFrom, createdTo) epoch millis and/or whose userId starts with prefix
     @DeleteMapping("/")
-    public ResponseEntity<?> deleteAllUsers() {
-        List<UserData> allUsers = userDataRepository.findAll();
+    public ResponseEntity<Long> deleteAllUsers(@RequestParam(value="createdFrom", required=false) Long createdFrom,
+                                               @RequestParam(value="createdTo", required=false) Long createdTo,
+                                               @RequestParam(value="prefix", required=false) String prefix) {
+        if (createdFrom == null && createdTo == null && prefix == null) {
+            return ResponseEntity.ok(userDeletionService.deleteAll());
+        }
 
-        for (UserData user : allUsers) {
-            userDataRepository.delete(user);
+        if (createdFrom != null && createdTo != null && createdFrom > createdTo) {
+            throw new InvalidParameterException("createdFrom", createdFrom);
         }
+        if (prefix != null && prefix.isEmpty()) {
+            throw new InvalidParameterException("prefix", prefix);
+        }
+        return ResponseEntity.ok(userDeletionService.deleteMatching(toCalendar(createdFrom), toCalendar(createdTo), prefix));
+    }
 
-        return ResponseEntity.ok().build();
+    private static Calendar toCalendar(Long millis) {
+        if (millis == null) {
+            return null;
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(millis);
+        return calendar;
     }
 }
@@ -0,0 +1,31 @@
+package org.thomaschen.streamlinedata.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class ConcurrentUpdateException extends RuntimeException {
+    private String resourceName;
+    private String fieldName;
+    private Object fieldValue;
+
+    public ConcurrentUpdateException(String resourceName, String fieldName, Object fieldValue, Throwable cause) {
+        super(String.format("%s with %s : '%s' was modified concurrently, retry the request",
+                resourceName, fieldName, fieldValue), cause);
+        this.resourceName = resourceName;
+        this.fieldName = fieldName;
+        this.fieldValue = fieldValue;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public Object getFieldValue() {
+        return fieldValue;
+    }
+}
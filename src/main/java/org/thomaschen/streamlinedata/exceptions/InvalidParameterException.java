@@ -0,0 +1,25 @@
+package org.thomaschen.streamlinedata.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidParameterException extends RuntimeException {
+
+    private String parameterName;
+    private Object parameterValue;
+
+    public InvalidParameterException(String parameterName, Object parameterValue) {
+        super(String.format("Invalid value for parameter %s : '%s'", parameterName, parameterValue));
+        this.parameterName = parameterName;
+        this.parameterValue = parameterValue;
+    }
+
+    public String getParameterName() {
+        return parameterName;
+    }
+
+    public Object getParameterValue() {
+        return parameterValue;
+    }
+}
@@ -0,0 +1,108 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Times every repository call and counts the rows its reads returned.
+ *
+ * Each call is recorded in the streamline.repository.queries timer and the
+ * streamline.repository.rows summary, tagged with the repository interface and method, and
+ * its rows are added to the current request's total. Streamed results are timed up to the
+ * stream being returned, and their rows are not counted. Saves, deletes, counts and existence
+ * checks record no rows.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    private static final String PACKAGE = "org.thomaschen.streamlinedata.repository.";
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    @Around("execution(public * org.springframework.data.repository.Repository+.*(..))")
+    public Object timeQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+        String repository = repositoryName(joinPoint.getThis().getClass());
+        String method = joinPoint.getSignature().getName();
+
+        long started = System.nanoTime();
+        String exception = "None";
+        try {
+            Object result = joinPoint.proceed();
+
+            long rows = countRows(method, result);
+            RequestMetricsFilter.addRows(rows);
+            DistributionSummary.builder("streamline.repository.rows")
+                    .tag("repository", repository)
+                    .tag("method", method)
+                    .register(meterRegistry)
+                    .record(rows);
+            return result;
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            Timer.builder("streamline.repository.queries")
+                    .tag("repository", repository)
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Rows read by a repository call: the elements of a collection or slice, one for a present
+     * Optional or a returned entity or projection, none for anything else
+     * @param method the name of the repository method called
+     * @param result the value it returned
+     * @return the number of rows
+     */
+    static long countRows(String method, Object result) {
+        if (method.startsWith("save") || method.startsWith("delete")) {
+            return 0;
+        } else if (result == null || result instanceof Stream
+                || result instanceof Boolean || result instanceof Number) {
+            return 0;
+        } else if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        } else if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        } else if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * The simple name of the application repository interface a proxy implements
+     */
+    private String repositoryName(Class<?> proxyClass) {
+        return repositoryNames.computeIfAbsent(proxyClass, type -> {
+            for (Class<?> implemented : type.getInterfaces()) {
+                if (implemented.getName().startsWith(PACKAGE)) {
+                    return implemented.getSimpleName();
+                }
+            }
+            return type.getSimpleName();
+        });
+    }
+}
@@ -0,0 +1,166 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Records the rows read from repositories and the response bytes written by each request.
+ *
+ * Both are published as summaries tagged like http.server.requests, by the matched URI
+ * pattern and HTTP method, so a request type whose latency spikes can be told apart by how
+ * much data it read and wrote.
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final ThreadLocal<long[]> ROWS = new ThreadLocal<>();
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Adds rows read to the current request's total, ignored outside a request
+     * @param rows the number of rows read
+     */
+    static void addRows(long rows) {
+        long[] total = ROWS.get();
+        if (total != null) {
+            total[0] += rows;
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long[] rows = new long[1];
+        ROWS.set(rows);
+        CountingResponse countingResponse = new CountingResponse(response);
+        try {
+            chain.doFilter(request, countingResponse);
+        } finally {
+            ROWS.remove();
+
+            String uri = uri(request);
+            DistributionSummary.builder("streamline.http.rows")
+                    .baseUnit("rows")
+                    .tag("uri", uri)
+                    .tag("method", request.getMethod())
+                    .register(meterRegistry)
+                    .record(rows[0]);
+            DistributionSummary.builder("streamline.http.response.bytes")
+                    .baseUnit("bytes")
+                    .tag("uri", uri)
+                    .tag("method", request.getMethod())
+                    .register(meterRegistry)
+                    .record(countingResponse.getBytesWritten());
+        }
+    }
+
+    /**
+     * @param request a request its handler has been resolved for
+     * @return the URI pattern the request matched, as tagged by http.server.requests
+     */
+    static String uri(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return (pattern == null) ? "UNKNOWN" : pattern.toString();
+    }
+
+    /**
+     * Counts the bytes written to the response body
+     */
+    static class CountingResponse extends HttpServletResponseWrapper {
+        private CountingOutputStream outputStream;
+        private PrintWriter writer;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            super.flushBuffer();
+        }
+
+        long getBytesWritten() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return (outputStream == null) ? 0 : outputStream.count;
+        }
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+        private long count;
+
+        CountingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Counts the SQL statements each request prepares and logs the requests that look like
+ * N+1 selects or ran a slow statement, together with the endpoint they came from.
+ *
+ * A statement prepared at least streamline.sql.repeated-statement-threshold times in one
+ * request is reported as repeated, the usual sign of a collection or association loaded row
+ * by row. The statement count per request is published as streamline.http.statements.
+ */
+@Component
+public class SqlInspectionFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlInspectionFilter.class);
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${streamline.sql.slow-statement-ms:500}")
+    long slowStatementMillis;
+
+    @Value("${streamline.sql.repeated-statement-threshold:10}")
+    int repeatedStatementThreshold;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SqlStatementCounter counter = SqlStatementCounter.open();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            counter.close();
+
+            String uri = RequestMetricsFilter.uri(request);
+            DistributionSummary.builder("streamline.http.statements")
+                    .baseUnit("statements")
+                    .tag("uri", uri)
+                    .tag("method", request.getMethod())
+                    .register(meterRegistry)
+                    .record(counter.getStatementCount());
+
+            Map<String, Integer> repeated = counter.getRepeatedStatements(repeatedStatementThreshold);
+            for (Map.Entry<String, Integer> statement : repeated.entrySet()) {
+                logger.warn("Possible N+1 select in {} {}: prepared {} times of {} statements: {}",
+                        request.getMethod(), uri, statement.getValue(), counter.getStatementCount(),
+                        statement.getKey());
+            }
+            Map<String, Long> slow = counter.getSlowStatements(slowStatementMillis);
+            for (Map.Entry<String, Long> statement : slow.entrySet()) {
+                logger.warn("Slow statement in {} {}: {} ms: {}",
+                        request.getMethod(), uri, statement.getValue(), statement.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread while it is open.
+ *
+ * Counters nest, every counter open on a thread sees each of its statements, so a test can
+ * open one around a request that {@link SqlInspectionFilter} also counts:
+ *
+ * <pre>
+ * try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+ *     mockMvc.perform(get("/api/users/{id}", id));
+ *     assertTrue(counter.getStatementCount() &lt;= 3, counter::toString);
+ * }
+ * </pre>
+ *
+ * Statements are counted as they are prepared, so a JDBC batch counts once however many rows
+ * it writes. Statements sent through JdbcTemplate bypass Hibernate and are not counted.
+ */
+public class SqlStatementCounter implements AutoCloseable {
+
+    private static final ThreadLocal<Deque<SqlStatementCounter>> OPEN = new ThreadLocal<>();
+
+    /**
+     * Executions and time spent per distinct SQL string, in the order first prepared
+     */
+    private final Map<String, StatementStatistics> statements = new LinkedHashMap<>();
+    private int statementCount = 0;
+    private StatementStatistics last = null;
+
+    private SqlStatementCounter() {
+
+    }
+
+    /**
+     * Starts counting the statements of the current thread
+     * @return the counter, to be closed on the same thread
+     */
+    public static SqlStatementCounter open() {
+        Deque<SqlStatementCounter> open = OPEN.get();
+        if (open == null) {
+            open = new ArrayDeque<>();
+            OPEN.set(open);
+        }
+        SqlStatementCounter counter = new SqlStatementCounter();
+        open.push(counter);
+        return counter;
+    }
+
+    /**
+     * Counts a statement prepared on the current thread
+     * @param sql the statement
+     */
+    static void statementPrepared(String sql) {
+        Deque<SqlStatementCounter> open = OPEN.get();
+        if (open == null) {
+            return;
+        }
+        for (SqlStatementCounter counter : open) {
+            counter.statementCount++;
+            counter.last = counter.statements.computeIfAbsent(sql, s -> new StatementStatistics());
+            counter.last.count++;
+        }
+    }
+
+    /**
+     * Adds the time the last prepared statement took to execute
+     * @param nanos the execution time
+     */
+    static void statementExecuted(long nanos) {
+        Deque<SqlStatementCounter> open = OPEN.get();
+        if (open == null) {
+            return;
+        }
+        for (SqlStatementCounter counter : open) {
+            if (counter.last != null) {
+                counter.last.totalNanos += nanos;
+                counter.last.maxNanos = Math.max(counter.last.maxNanos, nanos);
+            }
+        }
+    }
+
+    /**
+     * @return the number of statements prepared since the counter was opened
+     */
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    /**
+     * @return the number of distinct SQL strings prepared since the counter was opened
+     */
+    public int getDistinctStatementCount() {
+        return statements.size();
+    }
+
+    /**
+     * Finds statements prepared over and over, typically a select run once per parent row
+     * @param minimumCount the fewest preparations reported
+     * @return the number of preparations of each statement prepared at least minimumCount times
+     */
+    public Map<String, Integer> getRepeatedStatements(int minimumCount) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        statements.forEach((sql, statistics) -> {
+            if (statistics.count >= minimumCount) {
+                repeated.put(sql, statistics.count);
+            }
+        });
+        return repeated;
+    }
+
+    /**
+     * Finds statements whose slowest execution took at least thresholdMillis
+     * @param thresholdMillis the shortest execution reported
+     * @return the slowest execution in milliseconds of each statement at or over the threshold
+     */
+    public Map<String, Long> getSlowStatements(long thresholdMillis) {
+        Map<String, Long> slow = new LinkedHashMap<>();
+        statements.forEach((sql, statistics) -> {
+            long maxMillis = TimeUnit.NANOSECONDS.toMillis(statistics.maxNanos);
+            if (maxMillis >= thresholdMillis) {
+                slow.put(sql, maxMillis);
+            }
+        });
+        return slow;
+    }
+
+    /**
+     * Stops counting, the counts remain readable
+     */
+    @Override
+    public void close() {
+        Deque<SqlStatementCounter> open = OPEN.get();
+        if (open == null) {
+            return;
+        }
+        open.remove(this);
+        if (open.isEmpty()) {
+            OPEN.remove();
+        }
+    }
+
+    /**
+     * @return the statement count followed by each distinct statement, for assertion messages
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(statementCount).append(" statements");
+        statements.forEach((sql, statistics) -> builder.append(System.lineSeparator())
+                .append("  ").append(statistics.count).append("x ")
+                .append(TimeUnit.NANOSECONDS.toMillis(statistics.totalNanos)).append(" ms: ")
+                .append(sql));
+        return builder.toString();
+    }
+
+    private static class StatementStatistics {
+        private int count;
+        private long totalNanos;
+        private long maxNanos;
+    }
+}
@@ -0,0 +1,18 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Passes every SQL statement Hibernate prepares to the {@link SqlStatementCounter}s open on
+ * the preparing thread, leaving the statement unchanged.
+ *
+ * Instantiated by Hibernate from hibernate.session_factory.statement_inspector.
+ */
+public class SqlStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        SqlStatementCounter.statementPrepared(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,35 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Times the executions of a session's statements and batches for the
+ * {@link SqlStatementCounter}s open on its thread, which charge them to the statement last
+ * prepared.
+ *
+ * Instantiated by Hibernate for every session from hibernate.session.events.auto.
+ */
+public class SqlStatementTimer extends BaseSessionEventListener {
+
+    private long startedAt;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        startedAt = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        SqlStatementCounter.statementExecuted(System.nanoTime() - startedAt);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        startedAt = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        SqlStatementCounter.statementExecuted(System.nanoTime() - startedAt);
+    }
+}
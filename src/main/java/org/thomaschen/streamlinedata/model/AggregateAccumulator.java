@@ -0,0 +1,295 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+/**
+ * Mergeable accumulator of task statistics.
+ *
+ * Keeps counts and sums instead of running averages so tasks can be added, removed and
+ * merged in O(1) without compounding rounding error. Actual durations are summed exactly
+ * as longs; estimation factors are summed with Neumaier compensated summation.
+ *
+ * Also keeps the centered sufficient statistics of a least squares fit of actual against
+ * expected duration, updated with Welford's method. Rows written before these were kept
+ * load with regressionTracked false until the aggregates are rebuilt.
+ */
+@Embeddable
+public class AggregateAccumulator {
+
+    /**
+     * Number of tasks accumulated
+     */
+    private long taskCount = 0;
+
+    /**
+     * Number of tasks completed over time
+     */
+    private long overTaskCount = 0;
+
+    /**
+     * Number of tasks completed under time
+     */
+    private long underTaskCount = 0;
+
+    /**
+     * Sum of the actual durations of the tasks
+     */
+    private long sumActualDuration = 0;
+
+    /**
+     * Sum of the estimation factors of the tasks
+     */
+    private double sumTaskEstFactor = 0.0;
+
+    /**
+     * Running compensation for the rounding error of sumTaskEstFactor
+     */
+    private double sumTaskEstFactorCompensation = 0.0;
+
+    /**
+     * Mean expected duration of the tasks
+     */
+    @Column(columnDefinition = "DOUBLE NOT NULL DEFAULT 0")
+    private double meanExpDuration = 0.0;
+
+    /**
+     * Sum of squared deviations of the expected durations from their mean
+     */
+    @Column(columnDefinition = "DOUBLE NOT NULL DEFAULT 0")
+    private double expDurationVariation = 0.0;
+
+    /**
+     * Sum of products of the expected and actual duration deviations from their means
+     */
+    @Column(columnDefinition = "DOUBLE NOT NULL DEFAULT 0")
+    private double expActualCovariation = 0.0;
+
+    /**
+     * Whether the regression statistics cover every accumulated task
+     */
+    @Column(columnDefinition = "BOOLEAN NOT NULL DEFAULT FALSE")
+    private boolean regressionTracked = true;
+
+    // No Param Constructor
+    public AggregateAccumulator() {
+
+    }
+
+    /**
+     * Full Constructor for an Aggregate Accumulator
+     * @param taskCount number of tasks
+     * @param overTaskCount number of tasks completed over time
+     * @param underTaskCount number of tasks completed under time
+     * @param sumActualDuration sum of actual durations
+     * @param sumTaskEstFactor sum of estimation factors
+     * @param sumTaskEstFactorCompensation compensation term of the estimation factor sum
+     */
+    public AggregateAccumulator(long taskCount,
+                                long overTaskCount,
+                                long underTaskCount,
+                                long sumActualDuration,
+                                double sumTaskEstFactor,
+                                double sumTaskEstFactorCompensation) {
+        this.taskCount = taskCount;
+        this.overTaskCount = overTaskCount;
+        this.underTaskCount = underTaskCount;
+        this.sumActualDuration = sumActualDuration;
+        this.sumTaskEstFactor = sumTaskEstFactor;
+        this.sumTaskEstFactorCompensation = sumTaskEstFactorCompensation;
+        this.regressionTracked = (taskCount == 0);
+    }
+
+    /**
+     * Sets the regression statistics of the accumulated tasks and starts tracking them
+     * @param meanExpDuration mean expected duration
+     * @param expDurationVariation sum of squared deviations of the expected durations
+     * @param expActualCovariation sum of products of expected and actual duration deviations
+     */
+    public void trackRegression(double meanExpDuration, double expDurationVariation, double expActualCovariation) {
+        this.meanExpDuration = meanExpDuration;
+        this.expDurationVariation = expDurationVariation;
+        this.expActualCovariation = expActualCovariation;
+        this.regressionTracked = true;
+    }
+
+    /**
+     * Adds a single task to the accumulator
+     * @param expDuration expected duration of the task
+     * @param actualDuration actual duration of the task
+     */
+    public void add(long expDuration, long actualDuration) {
+        if (regressionTracked) {
+            double deltaExp = expDuration - meanExpDuration;
+            meanExpDuration += deltaExp / (taskCount + 1);
+            double meanActual = (double) (sumActualDuration + actualDuration) / (taskCount + 1);
+            expDurationVariation += deltaExp * (expDuration - meanExpDuration);
+            expActualCovariation += deltaExp * (actualDuration - meanActual);
+        }
+
+        taskCount++;
+        sumActualDuration += actualDuration;
+        addEstFactor((double) actualDuration / (double) expDuration);
+
+        if (actualDuration > expDuration) {
+            overTaskCount++;
+        } else {
+            underTaskCount++;
+        }
+    }
+
+    /**
+     * Removes a single task from the accumulator. Removing the last task resets every sum.
+     * @param expDuration expected duration of the task
+     * @param actualDuration actual duration of the task
+     */
+    public void remove(long expDuration, long actualDuration) {
+        if (taskCount <= 1) {
+            reset();
+            return;
+        }
+
+        if (regressionTracked) {
+            double meanActual = (double) sumActualDuration / taskCount;
+            double previousMeanExp = meanExpDuration;
+            meanExpDuration = (meanExpDuration * taskCount - expDuration) / (taskCount - 1);
+            double deltaExp = expDuration - meanExpDuration;
+            expDurationVariation = Math.max(0.0, expDurationVariation - deltaExp * (expDuration - previousMeanExp));
+            expActualCovariation -= deltaExp * (actualDuration - meanActual);
+        }
+
+        taskCount--;
+        sumActualDuration -= actualDuration;
+        addEstFactor(-((double) actualDuration / (double) expDuration));
+
+        if (actualDuration > expDuration) {
+            overTaskCount--;
+        } else {
+            underTaskCount--;
+        }
+    }
+
+    /**
+     * Adds every task accumulated by another accumulator
+     * @param other the accumulator to be merged in
+     */
+    public void merge(AggregateAccumulator other) {
+        if (other.taskCount == 0) {
+            return;
+        }
+
+        if (regressionTracked && other.regressionTracked) {
+            double count = taskCount + other.taskCount;
+            double deltaExp = other.meanExpDuration - meanExpDuration;
+            double deltaActual = other.getAvgTaskTime() - getAvgTaskTime();
+            double weight = (double) taskCount * other.taskCount / count;
+
+            meanExpDuration += deltaExp * other.taskCount / count;
+            expDurationVariation += other.expDurationVariation + deltaExp * deltaExp * weight;
+            expActualCovariation += other.expActualCovariation + deltaExp * deltaActual * weight;
+        } else {
+            regressionTracked = false;
+        }
+
+        taskCount += other.taskCount;
+        overTaskCount += other.overTaskCount;
+        underTaskCount += other.underTaskCount;
+        sumActualDuration += other.sumActualDuration;
+        addEstFactor(other.sumTaskEstFactor);
+        sumTaskEstFactorCompensation += other.sumTaskEstFactorCompensation;
+    }
+
+    /**
+     * Clears the accumulator
+     */
+    public void reset() {
+        taskCount = 0;
+        overTaskCount = 0;
+        underTaskCount = 0;
+        sumActualDuration = 0;
+        sumTaskEstFactor = 0.0;
+        sumTaskEstFactorCompensation = 0.0;
+        meanExpDuration = 0.0;
+        expDurationVariation = 0.0;
+        expActualCovariation = 0.0;
+        regressionTracked = true;
+    }
+
+    /**
+     * @return the mean actual duration, 0 when empty
+     */
+    public double getAvgTaskTime() {
+        return (taskCount == 0) ? 0.0 : (double) sumActualDuration / taskCount;
+    }
+
+    /**
+     * @return the mean estimation factor, 0 when empty
+     */
+    public double getTaskEstFactor() {
+        return (taskCount == 0) ? 0.0 : (sumTaskEstFactor + sumTaskEstFactorCompensation) / taskCount;
+    }
+
+    /**
+     * @return slope of the least squares fit of actual against expected duration, 0 when undefined
+     */
+    public double getRegressionSlope() {
+        return (expDurationVariation > 0.0) ? expActualCovariation / expDurationVariation : 0.0;
+    }
+
+    /**
+     * @return intercept of the least squares fit of actual against expected duration
+     */
+    public double getRegressionIntercept() {
+        return getAvgTaskTime() - getRegressionSlope() * meanExpDuration;
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public long getOverTaskCount() {
+        return overTaskCount;
+    }
+
+    public long getUnderTaskCount() {
+        return underTaskCount;
+    }
+
+    public long getSumActualDuration() {
+        return sumActualDuration;
+    }
+
+    public double getSumTaskEstFactor() {
+        return sumTaskEstFactor;
+    }
+
+    public double getSumTaskEstFactorCompensation() {
+        return sumTaskEstFactorCompensation;
+    }
+
+    public double getMeanExpDuration() {
+        return meanExpDuration;
+    }
+
+    public double getExpDurationVariation() {
+        return expDurationVariation;
+    }
+
+    public double getExpActualCovariation() {
+        return expActualCovariation;
+    }
+
+    public boolean isRegressionTracked() {
+        return regressionTracked;
+    }
+
+    private void addEstFactor(double value) {
+        double sum = sumTaskEstFactor + value;
+        if (Math.abs(sumTaskEstFactor) >= Math.abs(value)) {
+            sumTaskEstFactorCompensation += (sumTaskEstFactor - sum) + value;
+        } else {
+            sumTaskEstFactorCompensation += (value - sum) + sumTaskEstFactor;
+        }
+        sumTaskEstFactor = sum;
+    }
+}
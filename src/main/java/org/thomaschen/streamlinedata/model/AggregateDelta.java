@@ -0,0 +1,129 @@
+package org.thomaschen.streamlinedata.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.UUID;
+
+/**
+ * A task's contribution to an aggregate that has not been applied yet.
+ * Written in the same transaction as the task row by asynchronous writes, and applied and
+ * deleted by the aggregate worker. A delta without a tag feeds the owner's aggregates and
+ * team rollups, a delta with a tag feeds the owner's statistics for that tag.
+ */
+@Entity
+@Table(name = "aggregate_deltas", indexes = {
+        @Index(name = "idx_aggregate_deltas_owner", columnList = "owner_id")
+})
+public class AggregateDelta {
+
+    /**
+     * Time ordered identifier
+     */
+    @Id
+    @GeneratedValue(generator = "uuid7")
+    @GenericGenerator(name = "uuid7", strategy = TimeOrderedUuidGenerator.STRATEGY)
+    @Column(name = "id", columnDefinition = "BINARY(16)")
+    private UUID id;
+
+    /**
+     * Position in the queue, assigned by the database on insert so that deltas written by
+     * different nodes are ordered without relying on their clocks
+     */
+    @Column(name = "sequence_number", columnDefinition = "BIGINT NOT NULL AUTO_INCREMENT UNIQUE",
+            insertable = false, updatable = false)
+    private long sequenceNumber;
+
+    /**
+     * UUID of the UserData owning the task
+     */
+    @Column(name = "owner_id", columnDefinition = "BINARY(16)", nullable = false)
+    private UUID ownerId;
+
+    /**
+     * Tag whose statistics the delta feeds, null for the owner's aggregates
+     */
+    @Column(columnDefinition = "VARCHAR(255) BINARY")
+    private String tag;
+
+    /**
+     * Expected duration of the task
+     */
+    private long expDuration;
+
+    /**
+     * Actual duration of the task
+     */
+    private long actualDuration;
+
+    /**
+     * Whether the task is added to or removed from the aggregate
+     */
+    private boolean removal;
+
+    // No Param Constructor
+    public AggregateDelta() {
+
+    }
+
+    /**
+     * Constructor for an Aggregate Delta
+     * @param ownerId the owner of the task
+     * @param tag the tag fed by the delta, or null for the owner's aggregates
+     * @param expDuration expected duration of the task
+     * @param actualDuration actual duration of the task
+     * @param removal true if the task is removed from the aggregate
+     */
+    public AggregateDelta(UUID ownerId, String tag, long expDuration, long actualDuration, boolean removal) {
+        this.ownerId = ownerId;
+        this.tag = tag;
+        this.expDuration = expDuration;
+        this.actualDuration = actualDuration;
+        this.removal = removal;
+    }
+
+    /**
+     * Adds the task to, or removes it from, an accumulator
+     * @param accumulator the accumulator to update
+     */
+    public void applyTo(AggregateAccumulator accumulator) {
+        if (removal) {
+            accumulator.remove(expDuration, actualDuration);
+        } else {
+            accumulator.add(expDuration, actualDuration);
+        }
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getExpDuration() {
+        return expDuration;
+    }
+
+    public long getActualDuration() {
+        return actualDuration;
+    }
+
+    public boolean isRemoval() {
+        return removal;
+    }
+}
@@ -0,0 +1,72 @@
+package org.thomaschen.streamlinedata.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * One page of a listing ordered by (createdAt, id), with an opaque cursor for the next page.
+ * The cursor is null once the listing is exhausted.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public KeysetPage(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Encodes the key of the last row of a page
+     * @param createdAt creation time of the row
+     * @param id id of the row
+     * @return an opaque cursor string
+     */
+    public static String encodeCursor(Calendar createdAt, UUID id) {
+        String key = createdAt.getTimeInMillis() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes the creation time held by a cursor
+     * @param cursor a cursor produced by encodeCursor
+     * @return the creation time
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static Calendar cursorCreatedAt(String cursor) {
+        Calendar createdAt = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        createdAt.setTimeInMillis(Long.parseLong(decode(cursor)[0]));
+        return createdAt;
+    }
+
+    /**
+     * Decodes the id held by a cursor
+     * @param cursor a cursor produced by encodeCursor
+     * @return the id
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static UUID cursorId(String cursor) {
+        return UUID.fromString(decode(cursor)[1]);
+    }
+
+    private static String[] decode(String cursor) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor);
+        }
+        return parts;
+    }
+}
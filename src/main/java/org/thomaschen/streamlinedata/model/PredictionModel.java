@@ -0,0 +1,76 @@
+package org.thomaschen.streamlinedata.model;
+
+/**
+ * Immutable duration predictor fitted to a set of tasks.
+ *
+ * Predicts with the least squares line of actual against expected duration once enough
+ * tasks with differing expected durations are known, scales the expected duration by the
+ * mean estimation factor before that, and returns the expected duration itself when no
+ * task is known.
+ */
+public class PredictionModel {
+
+    /**
+     * Number of tasks needed before the regression line is trusted
+     */
+    public static final long MIN_REGRESSION_TASKS = 5;
+
+    private final long taskCount;
+    private final boolean regression;
+    private final double slope;
+    private final double intercept;
+    private final double taskEstFactor;
+
+    /**
+     * Fits a model to the statistics held by an accumulator
+     * @param accumulator the statistics of the tasks
+     */
+    public PredictionModel(AggregateAccumulator accumulator) {
+        this.taskCount = accumulator.getTaskCount();
+        this.regression = accumulator.isRegressionTracked()
+                && accumulator.getTaskCount() >= MIN_REGRESSION_TASKS
+                && accumulator.getExpDurationVariation() > 0.0;
+        this.slope = accumulator.getRegressionSlope();
+        this.intercept = accumulator.getRegressionIntercept();
+        this.taskEstFactor = accumulator.getTaskEstFactor();
+    }
+
+    /**
+     * Predicts the actual duration of a task
+     * @param expDuration the expected duration of the task
+     * @return the predicted actual duration, never negative
+     */
+    public double predict(long expDuration) {
+        if (taskCount == 0) {
+            return expDuration;
+        }
+
+        if (regression) {
+            double predicted = intercept + slope * expDuration;
+            if (predicted > 0.0) {
+                return predicted;
+            }
+        }
+        return Math.max(0.0, taskEstFactor * expDuration);
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public boolean isRegression() {
+        return regression;
+    }
+
+    public double getSlope() {
+        return slope;
+    }
+
+    public double getIntercept() {
+        return intercept;
+    }
+
+    public double getTaskEstFactor() {
+        return taskEstFactor;
+    }
+}
@@ -0,0 +1,71 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A single task of a batch prediction request.
+ */
+public class PredictionRequest {
+
+    /**
+     * UUID of the UserData the task belongs to
+     */
+    @NotNull(message = "The above field must not be omitted.")
+    private UUID userId;
+
+    /**
+     * Expected duration of the task
+     */
+    @NotNull(message = "The above field must not be omitted.")
+    @Min(value = 0L, message = "The value must be positive")
+    private Long expDuration;
+
+    /**
+     * Tags of the task
+     */
+    private List<String> tags;
+
+    // No Param Constructor
+    public PredictionRequest() {
+
+    }
+
+    /**
+     * Full Constructor for a Prediction Request
+     * @param userId the UUID of the owning UserData
+     * @param expDuration expected duration of task
+     * @param tags tags for the task
+     */
+    public PredictionRequest(UUID userId, Long expDuration, List<String> tags) {
+        this.userId = userId;
+        this.expDuration = expDuration;
+        this.tags = tags;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public Long getExpDuration() {
+        return expDuration;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setUserId(UUID userId) {
+        this.userId = userId;
+    }
+
+    public void setExpDuration(Long expDuration) {
+        this.expDuration = expDuration;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+}
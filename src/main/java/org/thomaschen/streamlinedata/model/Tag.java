@@ -0,0 +1,50 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Entry of the tag dictionary. Tasks reference tags by their integer id, so each distinct
+ * tag string is stored once however many tasks carry it.
+ */
+@Entity
+@Table(name = "tags", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_tags_name", columnNames = "name")
+})
+public class Tag {
+
+    /**
+     * Dictionary id of the tag
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    /**
+     * The tag string, compared case sensitively
+     */
+    @Column(nullable = false, columnDefinition = "VARCHAR(255) BINARY")
+    private String name;
+
+    // No Param Constructor
+    public Tag() {
+
+    }
+
+    public Tag(String name) {
+        this.name = name;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,132 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embedded;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import java.util.UUID;
+
+/**
+ * Materialized aggregate statistics of a user's tasks carrying a given tag.
+ * Maintained alongside every task write so tag filtered statistics are a single row read.
+ */
+@Entity
+@Table(name = "tag_stats")
+public class TagStatistics {
+
+    /**
+     * Owner and tag the statistics belong to
+     */
+    @EmbeddedId
+    private TagStatisticsId id;
+
+    /**
+     * Counts and sums of the tasks with the tag
+     */
+    @Embedded
+    private AggregateAccumulator statistics = new AggregateAccumulator();
+
+    /**
+     * Optimistic lock version, incremented by every update of the row
+     */
+    @Version
+    @Column(columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long version;
+
+    // No Param Constructor
+    public TagStatistics() {
+
+    }
+
+    public TagStatistics(UUID ownerId, String tag) {
+        this.id = new TagStatisticsId(ownerId, tag);
+    }
+
+    /**
+     * Builds statistics from totals computed over the owner's existing tasks
+     * @param ownerId the owner of the tasks
+     * @param tag the tag the totals were computed for
+     * @param totals the totals
+     * @return statistics for the owner and tag
+     */
+    public static TagStatistics fromTotals(UUID ownerId, String tag, TaskDataTotals totals) {
+        TagStatistics stats = new TagStatistics(ownerId, tag);
+
+        if (totals != null && totals.getTaskCount() != null && totals.getTaskCount() > 0) {
+            stats.statistics = new AggregateAccumulator(
+                    totals.getTaskCount(),
+                    totals.getOverTaskCount(),
+                    totals.getTaskCount() - totals.getOverTaskCount(),
+                    totals.getSumActualDuration(),
+                    totals.getSumTaskEstFactor(),
+                    0.0);
+
+            if (totals.getSumExpDuration() != null) {
+                double count = totals.getTaskCount();
+                double meanExp = totals.getSumExpDuration() / count;
+                stats.statistics.trackRegression(meanExp,
+                        Math.max(0.0, totals.getSumExpDurationSquared() - meanExp * totals.getSumExpDuration()),
+                        totals.getSumExpTimesActual() - meanExp * totals.getSumActualDuration());
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Adds a single task's data to the tag statistics
+     * @param taskData the task data to be added
+     */
+    public void addTaskData(TaskData taskData) {
+        this.statistics.add(taskData.getExpDuration(), taskData.getActualDuration());
+    }
+
+    /**
+     * Removes a single task's data from the tag statistics
+     * @param taskData the task data to be removed
+     */
+    public void subtractTaskData(TaskData taskData) {
+        this.statistics.remove(taskData.getExpDuration(), taskData.getActualDuration());
+    }
+
+    /**
+     * Presents the tag statistics in the same shape as a user's global statistics
+     * @param statName the name to report the statistics under
+     * @return a UserData object holding the tag statistics
+     */
+    public UserData toUserData(String statName) {
+        UserData temp = new UserData(statName, 0, 0, 0, 0.0, 0.0);
+        temp.applyAccumulator(this.statistics);
+        return temp;
+    }
+
+    public TagStatisticsId getId() {
+        return id;
+    }
+
+    public AggregateAccumulator getStatistics() {
+        return statistics;
+    }
+
+    public long getTaskCount() {
+        return statistics.getTaskCount();
+    }
+
+    public long getOverTaskCount() {
+        return statistics.getOverTaskCount();
+    }
+
+    public long getUnderTaskCount() {
+        return statistics.getUnderTaskCount();
+    }
+
+    public long getSumActualDuration() {
+        return statistics.getSumActualDuration();
+    }
+
+    public double getSumTaskEstFactor() {
+        return statistics.getSumTaskEstFactor();
+    }
+}
@@ -0,0 +1,58 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Composite key of a TagStatistics row: the owning user and the tag.
+ */
+@Embeddable
+public class TagStatisticsId implements Serializable {
+
+    /**
+     * UUID of the UserData owning the tagged tasks
+     */
+    @Column(columnDefinition = "BINARY(16)")
+    private UUID ownerId;
+
+    /**
+     * Tag the statistics are aggregated over, compared case sensitively like the tag dictionary
+     */
+    @Column(nullable = false, columnDefinition = "VARCHAR(255) BINARY")
+    private String tag;
+
+    // No Param Constructor
+    public TagStatisticsId() {
+
+    }
+
+    public TagStatisticsId(UUID ownerId, String tag) {
+        this.ownerId = ownerId;
+        this.tag = tag;
+    }
+
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TagStatisticsId that = (TagStatisticsId) o;
+        return Objects.equals(ownerId, that.ownerId) &&
+                Objects.equals(tag, that.tag);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ownerId, tag);
+    }
+}
@@ -2,9 +2,11 @@ package org.thomaschen.streamlinedata.model;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import io.swagger.annotations.ApiModelProperty;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.GenericGenerator;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -13,13 +15,17 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import javax.persistence.*;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.UUID;
 
 @Entity
-@Table(name = "tasks")
+@Table(name = "tasks", indexes = {
+        @Index(name = "idx_tasks_owner_created", columnList = "owner_id, created_at"),
+        @Index(name = "idx_tasks_created_id", columnList = "created_at, task_id")
+})
 @EntityListeners(AuditingEntityListener.class)
 @EnableScheduling
 @JsonIgnoreProperties(value = {"createdAt", "owner"},
@@ -31,16 +37,16 @@ public class TaskData {
      * Unique identifier for message.
      */
     @Id
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "uuid2")
-    @Column(columnDefinition = "BINARY(16)")
+    @GeneratedValue(generator = "uuid7")
+    @GenericGenerator(name = "uuid7", strategy = TimeOrderedUuidGenerator.STRATEGY)
+    @Column(name = "task_id", columnDefinition = "BINARY(16)")
     @ApiModelProperty(hidden = true)
     private UUID taskId;
 
     /**
      * Creation Date/Time of the task.
      */
-    @Column(nullable = false, updatable = false)
+    @Column(name = "created_at", nullable = false, updatable = false)
     @Temporal(TemporalType.TIMESTAMP)
     @CreatedDate
     @ApiModelProperty(hidden = true)
@@ -50,6 +56,7 @@ public class TaskData {
      * board that owns the message
      */
     @ManyToOne
+    @JoinColumn(name = "owner_id")
     @ApiModelProperty(hidden = true)
     @JsonIdentityReference(alwaysAsId = true)
     private UserData owner;
@@ -69,9 +76,26 @@ public class TaskData {
     private Long actualDuration;
 
     /**
-     * Queue of messages that have surpassed threshhold
+     * Dictionary entries of the task's distinct tags
+     * Indexed by tag for tag filters and by task for loading and joining from tasks
      */
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.EAGER)
+    @JoinTable(name = "task_tags",
+            joinColumns = @JoinColumn(name = "task_id"),
+            inverseJoinColumns = @JoinColumn(name = "tag_id"),
+            indexes = {
+                    @Index(name = "idx_task_tags_tag_task", columnList = "tag_id, task_id"),
+                    @Index(name = "idx_task_tags_task_tag", columnList = "task_id, tag_id")
+            })
+    @BatchSize(size = 50)
+    @JsonIgnore
+    @ApiModelProperty(hidden = true)
+    private List<Tag> tagEntries;
+
+    /**
+     * Tags of a task built from a request or by hand, before they are looked up in the tag dictionary
+     */
+    @Transient
     private List<String> tags;
 
     // No Param Constructor
@@ -87,7 +111,7 @@ public class TaskData {
      * @param tags tags for the task
      */
     public TaskData(UserData owner, Long expDuration, Long actualDuration, List<String> tags) {
-        this.taskId = UUID.randomUUID();
+        this.taskId = TimeOrderedUuidGenerator.nextUuid();
         this.owner = owner;
         this.expDuration = expDuration;
         this.actualDuration = actualDuration;
@@ -116,8 +140,23 @@ public class TaskData {
         return actualDuration;
     }
 
+    /**
+     * @return the tags set on this instance, or else the names of its tag dictionary entries
+     */
     public List<String> getTags() {
-        return tags;
+        if (tags != null || tagEntries == null) {
+            return tags;
+        }
+
+        List<String> names = new ArrayList<>(tagEntries.size());
+        for (Tag tag : tagEntries) {
+            names.add(tag.getName());
+        }
+        return names;
+    }
+
+    public List<Tag> getTagEntries() {
+        return tagEntries;
     }
 
     public void setCreatedAt(Calendar createdAt) {
@@ -139,4 +178,8 @@ public class TaskData {
     public void setTags(List<String> tags) {
         this.tags = tags;
     }
+
+    public void setTagEntries(List<Tag> tagEntries) {
+        this.tagEntries = tagEntries;
+    }
 }
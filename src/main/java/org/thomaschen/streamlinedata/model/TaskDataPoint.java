@@ -0,0 +1,15 @@
+package org.thomaschen.streamlinedata.model;
+
+import java.util.Calendar;
+
+/**
+ * Read-only projection of the TaskData columns needed to plot a time series.
+ */
+public interface TaskDataPoint {
+
+    Calendar getCreatedAt();
+
+    Long getExpDuration();
+
+    Long getActualDuration();
+}
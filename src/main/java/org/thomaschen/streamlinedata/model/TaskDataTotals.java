@@ -0,0 +1,22 @@
+package org.thomaschen.streamlinedata.model;
+
+/**
+ * Projection of the sums needed to rebuild aggregate statistics over a set of tasks.
+ * Sums are null when the set is empty.
+ */
+public interface TaskDataTotals {
+
+    Long getTaskCount();
+
+    Long getOverTaskCount();
+
+    Long getSumActualDuration();
+
+    Double getSumTaskEstFactor();
+
+    Long getSumExpDuration();
+
+    Double getSumExpDurationSquared();
+
+    Double getSumExpTimesActual();
+}
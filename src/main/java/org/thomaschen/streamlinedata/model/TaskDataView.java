@@ -0,0 +1,64 @@
+package org.thomaschen.streamlinedata.model;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Read model of a TaskData, selected column by column without joining its owner.
+ * Serializes to the same JSON fields as TaskData.
+ */
+public class TaskDataView {
+
+    private final UUID taskId;
+    private final Calendar createdAt;
+    private final UUID owner;
+    private final Long expDuration;
+    private final Long actualDuration;
+    private final List<String> tags = new ArrayList<>();
+
+    /**
+     * Full Constructor for a Task Data View, tags are added afterwards
+     * @param taskId the UUID of the task
+     * @param createdAt creation date/time of the task
+     * @param owner the UUID of the owning UserData
+     * @param expDuration expected duration of task
+     * @param actualDuration actual duration
+     */
+    public TaskDataView(UUID taskId, Calendar createdAt, UUID owner, Long expDuration, Long actualDuration) {
+        this.taskId = taskId;
+        this.createdAt = createdAt;
+        this.owner = owner;
+        this.expDuration = expDuration;
+        this.actualDuration = actualDuration;
+    }
+
+    public UUID getTaskId() {
+        return taskId;
+    }
+
+    public Calendar getCreatedAt() {
+        return createdAt;
+    }
+
+    public UUID getOwner() {
+        return owner;
+    }
+
+    public Long getExpDuration() {
+        return expDuration;
+    }
+
+    public Long getActualDuration() {
+        return actualDuration;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void addTag(String tag) {
+        tags.add(tag);
+    }
+}
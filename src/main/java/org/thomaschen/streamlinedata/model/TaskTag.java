@@ -0,0 +1,13 @@
+package org.thomaschen.streamlinedata.model;
+
+import java.util.UUID;
+
+/**
+ * Read-only projection of a single (task, tag) row of the task tags collection.
+ */
+public interface TaskTag {
+
+    UUID getTaskId();
+
+    String getTag();
+}
@@ -0,0 +1,45 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.UUID;
+
+/**
+ * Membership of a user in a team. Indexed by member so task writes can find the teams
+ * whose rollups they feed.
+ */
+@Entity
+@Table(name = "team_members", indexes = {
+        @Index(name = "idx_team_members_member", columnList = "member_id, team_id")
+})
+public class TeamMembership {
+
+    /**
+     * Team and member of the membership
+     */
+    @EmbeddedId
+    private TeamMembershipId id;
+
+    // No Param Constructor
+    public TeamMembership() {
+
+    }
+
+    public TeamMembership(UUID teamId, UUID memberId) {
+        this.id = new TeamMembershipId(teamId, memberId);
+    }
+
+    public TeamMembershipId getId() {
+        return id;
+    }
+
+    public UUID getTeamId() {
+        return id.getTeamId();
+    }
+
+    public UUID getMemberId() {
+        return id.getMemberId();
+    }
+}
@@ -0,0 +1,58 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Composite key of a TeamMembership row: the team and the member.
+ */
+@Embeddable
+public class TeamMembershipId implements Serializable {
+
+    /**
+     * UUID of the UserData representing the team
+     */
+    @Column(name = "team_id", columnDefinition = "BINARY(16)")
+    private UUID teamId;
+
+    /**
+     * UUID of the member UserData
+     */
+    @Column(name = "member_id", columnDefinition = "BINARY(16)")
+    private UUID memberId;
+
+    // No Param Constructor
+    public TeamMembershipId() {
+
+    }
+
+    public TeamMembershipId(UUID teamId, UUID memberId) {
+        this.teamId = teamId;
+        this.memberId = memberId;
+    }
+
+    public UUID getTeamId() {
+        return teamId;
+    }
+
+    public UUID getMemberId() {
+        return memberId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TeamMembershipId that = (TeamMembershipId) o;
+        return Objects.equals(teamId, that.teamId) &&
+                Objects.equals(memberId, that.memberId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(teamId, memberId);
+    }
+}
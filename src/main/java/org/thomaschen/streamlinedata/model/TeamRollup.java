@@ -0,0 +1,94 @@
+package org.thomaschen.streamlinedata.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import java.util.UUID;
+
+/**
+ * Materialized aggregate statistics over every task of a team's members.
+ * Maintained alongside every member task write so team statistics are a single row read.
+ */
+@Entity
+@Table(name = "team_rollups")
+public class TeamRollup {
+
+    /**
+     * UUID of the UserData representing the team
+     */
+    @Id
+    @Column(name = "team_id", columnDefinition = "BINARY(16)")
+    private UUID teamId;
+
+    /**
+     * Number of members rolled up
+     */
+    private int memberCount = 0;
+
+    /**
+     * Counts and sums of the members' tasks
+     */
+    @Embedded
+    private AggregateAccumulator statistics = new AggregateAccumulator();
+
+    /**
+     * Optimistic lock version, incremented by every update of the row
+     */
+    @Version
+    @Column(columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long version;
+
+    // No Param Constructor
+    public TeamRollup() {
+
+    }
+
+    public TeamRollup(UUID teamId) {
+        this.teamId = teamId;
+    }
+
+    /**
+     * Adds a member's tasks to the rollup
+     * @param member statistics of every task of the member
+     */
+    public void addMember(AggregateAccumulator member) {
+        this.memberCount++;
+        this.statistics.merge(member);
+    }
+
+    /**
+     * Replaces the rollup with statistics recomputed over every member
+     * @param memberCount number of members
+     * @param statistics statistics of every task of every member
+     */
+    public void replace(int memberCount, AggregateAccumulator statistics) {
+        this.memberCount = memberCount;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Presents the rollup in the same shape as a user's global statistics
+     * @param statName the name to report the statistics under
+     * @return a UserData object holding the rollup statistics
+     */
+    public UserData toUserData(String statName) {
+        UserData temp = new UserData(statName, 0, 0, 0, 0.0, 0.0);
+        temp.applyAccumulator(this.statistics);
+        return temp;
+    }
+
+    public UUID getTeamId() {
+        return teamId;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    public AggregateAccumulator getStatistics() {
+        return statistics;
+    }
+}
@@ -1,9 +1,11 @@
 package org.thomaschen.streamlinedata.model;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import io.swagger.annotations.ApiModelProperty;
+import org.hibernate.Hibernate;
 import org.hibernate.annotations.GenericGenerator;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
@@ -16,7 +18,9 @@ import javax.validation.constraints.NotNull;
 import java.util.*;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_created_id", columnList = "created_at, id")
+})
 @EntityListeners(AuditingEntityListener.class)
 @EnableScheduling
 @JsonIgnoreProperties(value = {"createdAt", "updatedAt"},
@@ -28,9 +32,9 @@ public class UserData {
      * Unique identifier for a user.
      */
     @Id
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "uuid2")
-    @Column(columnDefinition = "BINARY(16)")
+    @GeneratedValue(generator = "uuid7")
+    @GenericGenerator(name = "uuid7", strategy = TimeOrderedUuidGenerator.STRATEGY)
+    @Column(name = "id", columnDefinition = "BINARY(16)")
     @ApiModelProperty(hidden = true)
     private UUID id;
 
@@ -44,7 +48,7 @@ public class UserData {
     /**
      * Creation Date/Time of the task.
      */
-    @Column(nullable = false, updatable = false)
+    @Column(name = "created_at", nullable = false, updatable = false)
     @Temporal(TemporalType.TIMESTAMP)
     @CreatedDate
     @ApiModelProperty(hidden = true)
@@ -93,9 +97,49 @@ public class UserData {
     private Double avgTaskTime = 0.0;
 
     /**
-     * Hashmap of all messages currently on Board
+     * Sum of the actual durations of all tasks, null while only the average is known
      */
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "owner", fetch = FetchType.EAGER)
+    private Long sumTaskTime;
+
+    /**
+     * Sum of the estimation factors of all tasks, null while only the average is known
+     */
+    private Double sumTaskEstFactor;
+
+    /**
+     * Rounding compensation of sumTaskEstFactor
+     */
+    private Double sumTaskEstFactorCompensation;
+
+    /**
+     * Mean expected duration of all tasks, null while the regression statistics are unknown
+     */
+    private Double meanExpDuration;
+
+    /**
+     * Sum of squared deviations of the expected durations, null while unknown
+     */
+    private Double expDurationVariation;
+
+    /**
+     * Sum of products of expected and actual duration deviations, null while unknown
+     */
+    private Double expActualCovariation;
+
+    /**
+     * Optimistic lock version, incremented by every update of the row
+     */
+    @Version
+    @Column(columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    @JsonIgnore
+    @ApiModelProperty(hidden = true)
+    private Long version;
+
+    /**
+     * Hashmap of all messages currently on Board, loaded only when accessed.
+     * Use the paged task queries in TaskDataRepository to read a user's tasks.
+     */
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "owner", fetch = FetchType.LAZY)
     @MapKey(name = "taskId")
     private Map<UUID, TaskData> tasks;
 
@@ -120,7 +164,7 @@ public class UserData {
                     Integer totalOverTasks,
                     Double taskEstFactor,
                     Double avgTaskTime) {
-        this.id = UUID.randomUUID();
+        this.id = TimeOrderedUuidGenerator.nextUuid();
 
         this.userId = userId;
         this.totalTasksCompleted = totalTasksCompleted;
@@ -142,11 +186,13 @@ public class UserData {
      */
     public static UserData calcUserData(List<TaskData> tasks, String statName) {
         UserData temp = new UserData(statName, 0,0,0,0.0,0.0);
+        AggregateAccumulator accumulator = new AggregateAccumulator();
 
         for (TaskData task : tasks) {
-            temp.addTaskData(task);
+            accumulator.add(task.getExpDuration(), task.getActualDuration());
         }
 
+        temp.applyAccumulator(accumulator);
         return temp;
     }
 
@@ -155,24 +201,9 @@ public class UserData {
      * @param taskData the task data to be added
      */
     public void addTaskData(TaskData taskData) {
-        // Calculate new average task completion time
-        Double lastSumTime = this.totalTasksCompleted * this.avgTaskTime;
-        this.avgTaskTime = (lastSumTime + taskData.getActualDuration()) / (this.totalTasksCompleted + 1);
-
-        Double currTaskEstFactor = (double) taskData.getActualDuration() / (double) taskData.getExpDuration();
-
-        this.taskEstFactor = (this.taskEstFactor * this.totalTasksCompleted + currTaskEstFactor) /
-                (this.totalTasksCompleted + 1);
-
-
-        if (taskData.getActualDuration() > taskData.getExpDuration()) {
-            this.totalOverTasks++;
-        } else {
-            this.totalUnderTasks++;
-        }
-
-        this.totalTasksCompleted++;
-
+        AggregateAccumulator accumulator = this.toAccumulator();
+        accumulator.add(taskData.getExpDuration(), taskData.getActualDuration());
+        this.applyAccumulator(accumulator);
     }
 
     /**
@@ -180,31 +211,67 @@ public class UserData {
      * @param taskData the task data to be removed
      */
     public void subtractTaskData(TaskData taskData) {
-        if (this.totalTasksCompleted == 1) {
-            this.avgTaskTime = 0.0;
-            this.totalUnderTasks = 0;
-            this.totalOverTasks = 0;
-            this.taskEstFactor = 0.0;
-            this.totalTasksCompleted--;
-
-            return;
-        }
-
-        Double lastAvgTimeSum = this.avgTaskTime * (double) this.totalTasksCompleted;
-        this.avgTaskTime = (lastAvgTimeSum - taskData.getActualDuration()) / (this.totalTasksCompleted - 1);
+        AggregateAccumulator accumulator = this.toAccumulator();
+        accumulator.remove(taskData.getExpDuration(), taskData.getActualDuration());
+        this.applyAccumulator(accumulator);
+    }
 
-        Double lastTaskEstFactorSum = this.taskEstFactor * (double) this.totalTasksCompleted;
-        this.taskEstFactor = (lastTaskEstFactorSum - ((double) taskData.getActualDuration()/ (double)taskData.getExpDuration())) /
-                (this.totalTasksCompleted - 1);
-        this.taskEstFactor = Math.floor(this.taskEstFactor * 10000) / 10000;
+    /**
+     * Builds an accumulator from the stored counts and sums. Sums missing from older rows,
+     * or cleared by overwriting an average, are derived from the stored averages.
+     * @return an accumulator holding this user's statistics
+     */
+    public AggregateAccumulator toAccumulator() {
+        long sumTime = (this.sumTaskTime != null)
+                ? this.sumTaskTime
+                : Math.round(this.avgTaskTime * this.totalTasksCompleted);
+        double sumEstFactor = (this.sumTaskEstFactor != null)
+                ? this.sumTaskEstFactor
+                : this.taskEstFactor * this.totalTasksCompleted;
+        double compensation = (this.sumTaskEstFactor != null && this.sumTaskEstFactorCompensation != null)
+                ? this.sumTaskEstFactorCompensation
+                : 0.0;
+
+        AggregateAccumulator accumulator = new AggregateAccumulator(this.totalTasksCompleted,
+                this.totalOverTasks,
+                this.totalUnderTasks,
+                sumTime,
+                sumEstFactor,
+                compensation);
+
+        if (this.meanExpDuration != null && this.expDurationVariation != null && this.expActualCovariation != null) {
+            accumulator.trackRegression(this.meanExpDuration, this.expDurationVariation, this.expActualCovariation);
+        }
+        return accumulator;
+    }
 
-        if (taskData.getActualDuration() > taskData.getExpDuration()) {
-            this.totalOverTasks--;
+    /**
+     * Overwrites the aggregate statistics with those held by an accumulator
+     * @param accumulator the accumulator to copy from
+     */
+    public void applyAccumulator(AggregateAccumulator accumulator) {
+        this.totalTasksCompleted = (int) accumulator.getTaskCount();
+        this.totalOverTasks = (int) accumulator.getOverTaskCount();
+        this.totalUnderTasks = (int) accumulator.getUnderTaskCount();
+        this.sumTaskTime = accumulator.getSumActualDuration();
+        this.sumTaskEstFactor = accumulator.getSumTaskEstFactor();
+        this.sumTaskEstFactorCompensation = accumulator.getSumTaskEstFactorCompensation();
+        this.avgTaskTime = accumulator.getAvgTaskTime();
+        this.taskEstFactor = accumulator.getTaskEstFactor();
+
+        if (accumulator.isRegressionTracked()) {
+            this.meanExpDuration = accumulator.getMeanExpDuration();
+            this.expDurationVariation = accumulator.getExpDurationVariation();
+            this.expActualCovariation = accumulator.getExpActualCovariation();
         } else {
-            this.totalUnderTasks--;
+            clearRegression();
         }
+    }
 
-        this.totalTasksCompleted--;
+    private void clearRegression() {
+        this.meanExpDuration = null;
+        this.expDurationVariation = null;
+        this.expActualCovariation = null;
     }
 
     /**
@@ -213,7 +280,11 @@ public class UserData {
      */
     public void removeTaskData(TaskData taskData) {
         this.subtractTaskData(taskData);
-        this.tasks.remove(taskData.getTaskId());
+
+        // Avoid loading every task just to drop one from an unloaded collection
+        if (this.tasks != null && Hibernate.isInitialized(this.tasks)) {
+            this.tasks.remove(taskData.getTaskId());
+        }
     }
 
     public UUID getId() {
@@ -224,6 +295,10 @@ public class UserData {
         return userId;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public Calendar getCreatedAt() {
         return createdAt;
     }
@@ -262,6 +337,9 @@ public class UserData {
 
     public void setTotalTasksCompleted(Integer totalTasksCompleted) {
         this.totalTasksCompleted = totalTasksCompleted;
+        this.sumTaskTime = null;
+        this.sumTaskEstFactor = null;
+        clearRegression();
     }
 
     public void setTotalUnderTasks(Integer totalUnderTasks) {
@@ -274,10 +352,13 @@ public class UserData {
 
     public void setTaskEstFactor(Double taskEstFactor) {
         this.taskEstFactor = taskEstFactor;
+        this.sumTaskEstFactor = null;
     }
 
     public void setAvgTaskTime(Double avgTaskTime) {
         this.avgTaskTime = avgTaskTime;
+        this.sumTaskTime = null;
+        clearRegression();
     }
 
     @Override
@@ -304,7 +385,6 @@ public class UserData {
                 ",\n totalOverTasks=" + totalOverTasks +
                 ",\n taskEstFactor=" + taskEstFactor +
                 ",\n avgTaskTime=" + avgTaskTime +
-                ",\n tasks=" + tasks +
                 '}';
     }
 }
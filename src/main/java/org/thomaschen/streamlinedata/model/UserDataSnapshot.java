@@ -0,0 +1,122 @@
+package org.thomaschen.streamlinedata.model;
+
+import java.util.Calendar;
+import java.util.UUID;
+
+/**
+ * Immutable copy of the aggregate statistics of a UserData, without its tasks.
+ * Serializes to the same JSON fields as UserData.
+ */
+public class UserDataSnapshot {
+
+    private final UUID id;
+    private final String userId;
+    private final Calendar createdAt;
+    private final Calendar updatedAt;
+    private final Integer totalTasksCompleted;
+    private final Integer totalUnderTasks;
+    private final Integer totalOverTasks;
+    private final Double taskEstFactor;
+    private final Double avgTaskTime;
+
+    /**
+     * Copies the aggregate statistics of a UserData
+     * @param userData the UserData to be copied
+     */
+    public UserDataSnapshot(UserData userData) {
+        this(userData.getId(),
+                userData.getUserId(),
+                userData.getCreatedAt(),
+                userData.getUpdatedAt(),
+                userData.getTotalTasksCompleted(),
+                userData.getTotalUnderTasks(),
+                userData.getTotalOverTasks(),
+                userData.getTaskEstFactor(),
+                userData.getAvgTaskTime());
+    }
+
+    /**
+     * Full Constructor for a UserData Snapshot
+     * @param id the UUID of the UserData
+     * @param userId the streamline userId of the user
+     * @param createdAt creation date/time of the user
+     * @param updatedAt last modified date/time of the user
+     * @param totalTasksCompleted total number tasks completed by user
+     * @param totalUnderTasks total number of tasks completed under time by user
+     * @param totalOverTasks total number of tasks completed over time by user
+     * @param taskEstFactor global estimation rating for user
+     * @param avgTaskTime mean actual duration of the user's tasks
+     */
+    public UserDataSnapshot(UUID id,
+                            String userId,
+                            Calendar createdAt,
+                            Calendar updatedAt,
+                            Integer totalTasksCompleted,
+                            Integer totalUnderTasks,
+                            Integer totalOverTasks,
+                            Double taskEstFactor,
+                            Double avgTaskTime) {
+        this.id = id;
+        this.userId = userId;
+        this.createdAt = copy(createdAt);
+        this.updatedAt = copy(updatedAt);
+        this.totalTasksCompleted = totalTasksCompleted;
+        this.totalUnderTasks = totalUnderTasks;
+        this.totalOverTasks = totalOverTasks;
+        this.taskEstFactor = taskEstFactor;
+        this.avgTaskTime = avgTaskTime;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Calendar getCreatedAt() {
+        return copy(createdAt);
+    }
+
+    public Calendar getUpdatedAt() {
+        return copy(updatedAt);
+    }
+
+    public Integer getTotalTasksCompleted() {
+        return totalTasksCompleted;
+    }
+
+    public Integer getTotalUnderTasks() {
+        return totalUnderTasks;
+    }
+
+    public Integer getTotalOverTasks() {
+        return totalOverTasks;
+    }
+
+    public Double getTaskEstFactor() {
+        return taskEstFactor;
+    }
+
+    public Double getAvgTaskTime() {
+        return avgTaskTime;
+    }
+
+    private static Calendar copy(Calendar calendar) {
+        return (calendar == null) ? null : (Calendar) calendar.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "UserDataSnapshot{" +
+                "id=" + id +
+                ",\n userId='" + userId + '\'' +
+                ",\n totalTasksCompleted=" + totalTasksCompleted +
+                ",\n totalUnderTasks=" + totalUnderTasks +
+                ",\n totalOverTasks=" + totalOverTasks +
+                ",\n taskEstFactor=" + taskEstFactor +
+                ",\n avgTaskTime=" + avgTaskTime +
+                '}';
+    }
+}
@@ -0,0 +1,13 @@
+package org.thomaschen.streamlinedata.model;
+
+import java.util.UUID;
+
+/**
+ * Read-only projection pairing a streamline userId with the UUID of its UserData.
+ */
+public interface UserIdentity {
+
+    String getUserId();
+
+    UUID getId();
+}
@@ -0,0 +1,23 @@
+package org.thomaschen.streamlinedata.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import org.thomaschen.streamlinedata.model.AggregateDelta;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.UUID;
+
+public interface AggregateDeltaRepository extends JpaRepository<AggregateDelta, UUID> {
+
+    /**
+     * Oldest pending deltas first, in insert sequence, locked until the transaction ends so that
+     * drains on other nodes wait for them to be applied instead of applying them again.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d from AggregateDelta d order by d.sequenceNumber")
+    public List<AggregateDelta> findOldest(Pageable limit);
+}
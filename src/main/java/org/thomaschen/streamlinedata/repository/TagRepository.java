@@ -0,0 +1,16 @@
+package org.thomaschen.streamlinedata.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import org.thomaschen.streamlinedata.model.Tag;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface TagRepository extends JpaRepository<Tag, Integer> {
+
+    public Optional<Tag> findByName(String name);
+
+    public List<Tag> findByNameIn(Collection<String> names);
+}
@@ -0,0 +1,9 @@
+package org.thomaschen.streamlinedata.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TagStatisticsId;
+
+public interface TagStatisticsRepository extends JpaRepository<TagStatistics, TagStatisticsId> {
+}
@@ -1,18 +1,130 @@
 package org.thomaschen.streamlinedata.repository;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import org.thomaschen.streamlinedata.model.TaskData;
-import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.model.TaskDataPoint;
+import org.thomaschen.streamlinedata.model.TaskDataTotals;
+import org.thomaschen.streamlinedata.model.TaskDataView;
+import org.thomaschen.streamlinedata.model.TaskTag;
 
+import javax.persistence.QueryHint;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
 
 public interface TaskDataRepository extends JpaRepository<TaskData, UUID> {
-    public List<TaskData> findAllByOwner(UserData owner);
-    public List<TaskData> findAllByOwnerAndTags(UserData owner, String tag);
-    public List<TaskData> findAllByOwnerOrderByCreatedAt(UserData owner);
-    public List<TaskData> findAllByOwnerAndTagsOrderByCreatedAt(UserData owner, String tag);
+    String SELECT_VIEW = "select new org.thomaschen.streamlinedata.model.TaskDataView(" +
+            "t.taskId, t.createdAt, t.owner.id, t.expDuration, t.actualDuration) from TaskData t ";
+
+    /**
+     * Columns of the tasks owned by a user, without their tags, oldest first.
+     */
+    @Query(SELECT_VIEW + "where t.owner.id = :ownerId order by t.createdAt")
+    public List<TaskDataView> findViewsByOwnerId(@Param("ownerId") UUID ownerId);
+
+    /**
+     * Columns of the tasks owned by a user with a given tag id, without their tags, oldest first.
+     */
+    @Query(SELECT_VIEW + "join t.tagEntries tag where t.owner.id = :ownerId and tag.id = :tagId order by t.createdAt")
+    public List<TaskDataView> findViewsByOwnerIdAndTagId(@Param("ownerId") UUID ownerId, @Param("tagId") int tagId);
+
+    @Query(value = SELECT_VIEW + "where t.owner.id = :ownerId",
+            countQuery = "select count(t) from TaskData t where t.owner.id = :ownerId")
+    public Page<TaskDataView> findViewsByOwnerId(@Param("ownerId") UUID ownerId, Pageable pageable);
+
+    @Query(value = SELECT_VIEW + "join t.tagEntries tag where t.owner.id = :ownerId and tag.id = :tagId",
+            countQuery = "select count(t) from TaskData t join t.tagEntries tag " +
+                    "where t.owner.id = :ownerId and tag.id = :tagId")
+    public Page<TaskDataView> findViewsByOwnerIdAndTagId(@Param("ownerId") UUID ownerId,
+                                                         @Param("tagId") int tagId,
+                                                         Pageable pageable);
+
+    /**
+     * First page of task columns in (createdAt, taskId) order.
+     */
+    @Query(SELECT_VIEW + "order by t.createdAt, t.taskId")
+    public List<TaskDataView> findFirstViewPage(Pageable limit);
+
+    /**
+     * Page of task columns following the (createdAt, taskId) key of the last task of the previous page.
+     */
+    @Query(SELECT_VIEW + "where t.createdAt > :createdAt " +
+            "or (t.createdAt = :createdAt and t.taskId > :taskId) order by t.createdAt, t.taskId")
+    public List<TaskDataView> findViewPageAfter(@Param("createdAt") Calendar createdAt,
+                                                @Param("taskId") UUID taskId,
+                                                Pageable limit);
+
+    /**
+     * (task, tag) rows of the given tasks, selecting only the task id and tag name columns.
+     */
+    @Query("select t.taskId as taskId, tag.name as tag from TaskData t join t.tagEntries tag where t.taskId in :taskIds")
+    public List<TaskTag> findTagsByTaskIdIn(@Param("taskIds") Collection<UUID> taskIds);
+
+    /**
+     * (task, tag) rows of every task owned by a user, selecting only the task id and tag name columns.
+     */
+    @Query("select t.taskId as taskId, tag.name as tag from TaskData t join t.tagEntries tag where t.owner.id = :ownerId")
+    public List<TaskTag> findTagsByOwnerId(@Param("ownerId") UUID ownerId);
+
+    /**
+     * Streams every task in (createdAt, taskId) order. Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("select t from TaskData t order by t.createdAt, t.taskId")
+    public Stream<TaskData> streamAllOrderByCreatedAt();
+
+    /**
+     * Streams the time series columns of every task owned by a user, oldest first.
+     * A fetch size of Integer.MIN_VALUE makes the MySQL driver stream rows instead of buffering the result.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("select t.createdAt as createdAt, t.expDuration as expDuration, t.actualDuration as actualDuration " +
+            "from TaskData t where t.owner.id = :ownerId order by t.createdAt")
+    public Stream<TaskDataPoint> streamPointsByOwnerId(@Param("ownerId") UUID ownerId);
+
+    /**
+     * Streams the time series columns of every task owned by a user with a given tag id, oldest first.
+     */
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("select t.createdAt as createdAt, t.expDuration as expDuration, t.actualDuration as actualDuration " +
+            "from TaskData t join t.tagEntries tag where t.owner.id = :ownerId and tag.id = :tagId order by t.createdAt")
+    public Stream<TaskDataPoint> streamPointsByOwnerIdAndTagId(@Param("ownerId") UUID ownerId,
+                                                               @Param("tagId") int tagId);
+
+    /**
+     * UUID of the owner of a task, without loading the task or its owner.
+     */
+    @Query("select t.owner.id from TaskData t where t.taskId = :taskId")
+    public Optional<UUID> findOwnerIdByTaskId(@Param("taskId") UUID taskId);
+
+    public long countByOwnerId(UUID ownerId);
+
+    @Query("select count(t) from TaskData t join t.tagEntries tag where t.owner.id = :ownerId and tag.id = :tagId")
+    public long countByOwnerIdAndTagId(@Param("ownerId") UUID ownerId, @Param("tagId") int tagId);
 
+    /**
+     * Sums the statistics of every task owned by a user with a given tag id without loading the tasks.
+     */
+    @Query("select count(t) as taskCount, " +
+            "sum(case when t.actualDuration > t.expDuration then 1 else 0 end) as overTaskCount, " +
+            "sum(t.actualDuration) as sumActualDuration, " +
+            "sum(t.actualDuration * 1.0 / t.expDuration) as sumTaskEstFactor, " +
+            "sum(t.expDuration) as sumExpDuration, " +
+            "sum(t.expDuration * 1.0 * t.expDuration) as sumExpDurationSquared, " +
+            "sum(t.expDuration * 1.0 * t.actualDuration) as sumExpTimesActual " +
+            "from TaskData t join t.tagEntries tag where t.owner.id = :ownerId and tag.id = :tagId")
+    public TaskDataTotals sumTotalsByOwnerIdAndTagId(@Param("ownerId") UUID ownerId, @Param("tagId") int tagId);
 }
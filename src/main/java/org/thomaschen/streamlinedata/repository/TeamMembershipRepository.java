@@ -0,0 +1,23 @@
+package org.thomaschen.streamlinedata.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import org.thomaschen.streamlinedata.model.TeamMembership;
+import org.thomaschen.streamlinedata.model.TeamMembershipId;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface TeamMembershipRepository extends JpaRepository<TeamMembership, TeamMembershipId> {
+
+    @Query("select m.id.memberId from TeamMembership m where m.id.teamId = :teamId")
+    public List<UUID> findMemberIdsByTeamId(@Param("teamId") UUID teamId);
+
+    @Query("select distinct m.id.teamId from TeamMembership m")
+    public List<UUID> findTeamIds();
+
+    @Query("select m.id.teamId from TeamMembership m where m.id.memberId = :memberId")
+    public List<UUID> findTeamIdsByMemberId(@Param("memberId") UUID memberId);
+}
@@ -0,0 +1,22 @@
+package org.thomaschen.streamlinedata.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import org.thomaschen.streamlinedata.model.TeamRollup;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface TeamRollupRepository extends JpaRepository<TeamRollup, UUID> {
+
+    /**
+     * A team's rollup, locked for update. Unlike a plain read, sees rows committed after the transaction began.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from TeamRollup r where r.teamId = :teamId")
+    public Optional<TeamRollup> findByIdForUpdate(@Param("teamId") UUID teamId);
+}
@@ -1,15 +1,96 @@
 package org.thomaschen.streamlinedata.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import org.thomaschen.streamlinedata.model.TaskData;
 import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.model.UserDataSnapshot;
+import org.thomaschen.streamlinedata.model.UserIdentity;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
 
 public interface UserDataRepository extends JpaRepository<UserData, UUID> {
+    String SELECT_SNAPSHOT = "select new org.thomaschen.streamlinedata.model.UserDataSnapshot(" +
+            "u.id, u.userId, u.createdAt, u.updatedAt, u.totalTasksCompleted, u.totalUnderTasks, " +
+            "u.totalOverTasks, u.taskEstFactor, u.avgTaskTime) from UserData u ";
+
     public List<UserData> findByUserIdAndId(String userId, UUID id);
     public UserData findByUserId(String userId);
+
+    /**
+     * UUID of the user with a streamline userId, without loading the user.
+     */
+    @Query("select u.id from UserData u where u.userId = :userId")
+    public Optional<UUID> findIdByUserId(@Param("userId") String userId);
+
+    /**
+     * (userId, UUID) pairs of every user whose streamline userId is in the collection.
+     */
+    @Query("select u.userId as userId, u.id as id from UserData u where u.userId in :userIds")
+    public List<UserIdentity> findIdentitiesByUserIdIn(@Param("userIds") Collection<String> userIds);
+
+    /**
+     * Users with the given UUIDs, locked for update in id order with their versions incremented,
+     * so a concurrent write to any of them fails its version check. The collection must not be empty.
+     */
+    @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
+    @Query("select u from UserData u where u.id in :ids order by u.id")
+    public List<UserData> findAllByIdForUpdate(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * User with the given UUID, share locked until the transaction ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("select u from UserData u where u.id = :id")
+    public Optional<UserData> findByIdForShare(@Param("id") UUID id);
+
+    /**
+     * Users with the given UUIDs, share locked until the transaction ends. The collection must not be empty.
+     */
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("select u from UserData u where u.id in :ids order by u.id")
+    public List<UserData> findAllByIdForShare(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Aggregate columns of a user, without loading the entity.
+     */
+    @Query(SELECT_SNAPSHOT + "where u.id = :id")
+    public Optional<UserDataSnapshot> findSnapshotById(@Param("id") UUID id);
+
+    /**
+     * First page of user aggregates in (createdAt, id) order.
+     */
+    @Query(SELECT_SNAPSHOT + "order by u.createdAt, u.id")
+    public List<UserDataSnapshot> findFirstSnapshotPage(Pageable limit);
+
+    /**
+     * Page of user aggregates following the (createdAt, id) key of the last user of the previous page.
+     */
+    @Query(SELECT_SNAPSHOT + "where u.createdAt > :createdAt or (u.createdAt = :createdAt and u.id > :id) " +
+            "order by u.createdAt, u.id")
+    public List<UserDataSnapshot> findSnapshotPageAfter(@Param("createdAt") Calendar createdAt,
+                                                        @Param("id") UUID id,
+                                                        Pageable limit);
+
+    /**
+     * Streams every user in (createdAt, id) order. Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("select u from UserData u order by u.createdAt, u.id")
+    public Stream<UserData> streamAllOrderByCreatedAt();
 }
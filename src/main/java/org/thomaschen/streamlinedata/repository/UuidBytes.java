@@ -0,0 +1,27 @@
+package org.thomaschen.streamlinedata.repository;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Conversions between UUIDs and the BINARY(16) layout Hibernate stores them in,
+ * for queries issued through plain JDBC.
+ */
+public final class UuidBytes {
+
+    private UuidBytes() {
+
+    }
+
+    public static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
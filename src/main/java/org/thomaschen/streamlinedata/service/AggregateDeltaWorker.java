@@ -0,0 +1,216 @@
+package org.thomaschen.streamlinedata.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.AggregateDelta;
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TagStatisticsId;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.AggregateDeltaRepository;
+import org.thomaschen.streamlinedata.repository.TagStatisticsRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background half of the asynchronous write path.
+ *
+ * Asynchronous task writes only insert the task row and its deltas, so concurrent writes for
+ * the same user never wait on that user's aggregate row. This worker periodically takes the
+ * oldest pending deltas, coalesces them per user and per (user, tag), and applies each group
+ * as a single update of the UserData, tag statistics and team rollup rows, deleting the
+ * deltas in the same transaction. Pending deltas survive restarts and are applied on startup.
+ *
+ * Deltas are taken in the sequence the database assigned them on insert, and locked until
+ * their batch commits. Drains on other nodes wait for the locked batch and then find its deltas
+ * deleted, so every delta is applied once. The batches are read committed, so their locks cover
+ * the deltas read and not the gaps around them, where asynchronous writes insert new deltas.
+ * Within a node only one drain runs at a time.
+ */
+@Service
+public class AggregateDeltaWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregateDeltaWorker.class);
+
+    @Autowired
+    AggregateDeltaRepository aggregateDeltaRepository;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TagStatisticsRepository tagStatisticsRepository;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    PredictionService predictionService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${streamline.writes.async:false}")
+    boolean async;
+
+    @Value("${streamline.writes.async-batch-size:5000}")
+    int batchSize;
+
+    /**
+     * Records the deltas of a task added to or removed from its owner's aggregates.
+     * Must be called in the transaction writing the task row.
+     * @param ownerId the UUID of the owning UserData
+     * @param taskData the task
+     * @param removal true if the task is removed from the aggregates
+     */
+    public void record(UUID ownerId, TaskData taskData, boolean removal) {
+        List<AggregateDelta> deltas = new ArrayList<>();
+        deltas.add(new AggregateDelta(ownerId, null,
+                taskData.getExpDuration(), taskData.getActualDuration(), removal));
+
+        // A null tag marks a delta of the owner's row, so null tags must not get one
+        for (String tag : TagDictionary.distinct(taskData.getTags())) {
+            deltas.add(new AggregateDelta(ownerId, tag,
+                    taskData.getExpDuration(), taskData.getActualDuration(), removal));
+        }
+        aggregateDeltaRepository.saveAll(deltas);
+    }
+
+    /**
+     * @return the number of deltas waiting to be applied
+     */
+    public long getPendingCount() {
+        return aggregateDeltaRepository.count();
+    }
+
+    /**
+     * Applies deltas left over from before a restart, including when asynchronous writes
+     * have since been disabled
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void drainOnStartup() {
+        drain();
+    }
+
+    /**
+     * Applies pending deltas on the configured interval while asynchronous writes are enabled
+     */
+    @Scheduled(fixedDelayString = "${streamline.writes.async-flush-interval-ms:200}")
+    public void scheduledDrain() {
+        if (async) {
+            drain();
+        }
+    }
+
+    /**
+     * Applies pending deltas in batches until none are left
+     * @return the number of deltas applied
+     */
+    public synchronized long drain() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        long applied = 0;
+        try {
+            int count;
+            do {
+                long started = System.nanoTime();
+                count = transaction.execute(status -> applyOldest(batchSize));
+                applied += count;
+                if (count > 0) {
+                    meterRegistry.timer("streamline.aggregates.deltas.batches")
+                            .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            } while (count == batchSize);
+        } catch (ConcurrencyFailureException e) {
+            // A rebuild or a drain on another node got to the same rows first
+            logger.debug("Aggregate deltas were updated concurrently, pending deltas are retried on the next drain", e);
+        } catch (RuntimeException e) {
+            logger.error("Applying aggregate deltas failed, pending deltas are retried on the next drain", e);
+        }
+        meterRegistry.counter("streamline.aggregates.deltas.applied").increment(applied);
+        return applied;
+    }
+
+    /**
+     * Locks, applies and deletes the oldest pending deltas in the current transaction
+     * @param limit maximum number of deltas to apply
+     * @return the number of deltas applied
+     */
+    int applyOldest(int limit) {
+        List<AggregateDelta> deltas = aggregateDeltaRepository.findOldest(PageRequest.of(0, limit));
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+
+        Map<UUID, List<AggregateDelta>> perUser = new LinkedHashMap<>();
+        Map<TagStatisticsId, List<AggregateDelta>> perTag = new LinkedHashMap<>();
+        for (AggregateDelta delta : deltas) {
+            if (delta.getTag() == null) {
+                perUser.computeIfAbsent(delta.getOwnerId(), key -> new ArrayList<>()).add(delta);
+            } else {
+                perTag.computeIfAbsent(new TagStatisticsId(delta.getOwnerId(), delta.getTag()),
+                        key -> new ArrayList<>()).add(delta);
+            }
+        }
+
+        // Users deleted since the write have no row left and their deltas are dropped
+        List<UserData> users = userDataRepository.findAllById(perUser.keySet());
+        for (UserData userData : users) {
+            List<AggregateDelta> userDeltas = perUser.get(userData.getId());
+
+            AggregateAccumulator accumulator = userData.toAccumulator();
+            applyAll(userDeltas, accumulator);
+            userData.applyAccumulator(accumulator);
+
+            teamRollupService.applyToRollups(userData.getId(), statistics -> applyAll(userDeltas, statistics));
+        }
+        userDataRepository.saveAll(users);
+
+        // Tag rows are seeded by the write, before its task row, so a missing row means a deleted user
+        List<TagStatistics> tagStatistics = tagStatisticsRepository.findAllById(perTag.keySet());
+        for (TagStatistics stats : tagStatistics) {
+            applyAll(perTag.get(stats.getId()), stats.getStatistics());
+            predictionService.evictTag(stats.getId().getOwnerId(), stats.getId().getTag());
+        }
+        tagStatisticsRepository.saveAll(tagStatistics);
+
+        aggregateDeltaRepository.deleteInBatch(deltas);
+        userDataCache.evictAll(new ArrayList<>(perUser.keySet()));
+
+        logger.debug("Applied {} aggregate deltas to {} users and {} tags",
+                deltas.size(), perUser.size(), perTag.size());
+        return deltas.size();
+    }
+
+    private static void applyAll(List<AggregateDelta> deltas, AggregateAccumulator accumulator) {
+        for (AggregateDelta delta : deltas) {
+            delta.applyTo(accumulator);
+        }
+    }
+}
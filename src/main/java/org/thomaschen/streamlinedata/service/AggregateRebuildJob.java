@@ -0,0 +1,283 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.repository.UuidBytes;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recomputes the aggregate statistics of every UserData from its tasks.
+ *
+ * Users are partitioned across a fork-join pool. Each leaf locks the users rows of a slice of
+ * users, streams their tasks from one query, accumulates them per user and writes the results
+ * back in a single JDBC batch, all in one transaction. Partial accumulators are merged up
+ * the tree into database-wide totals. Every running leaf holds a connection, so the pool
+ * never runs more leaves than the connection pool has connections.
+ *
+ * Synchronous task writes update their owner's row in the same transaction as the task, so
+ * a task write committed before a slice's lock is read by the slice, and one still
+ * uncommitted fails its version check against the rebuilt row and is replayed over the
+ * rebuilt aggregates.
+ *
+ * Asynchronous task writes leave the owner's row alone, but share lock it before inserting a
+ * task, and the slice reads the tasks with share locks. Under the slice's locks its users' tasks
+ * therefore cannot change, and the slice deletes their pending owner deltas along with reading
+ * the tasks they describe, so no task is counted twice.
+ */
+@Service
+public class AggregateRebuildJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregateRebuildJob.class);
+
+    private static final String SELECT_USER_IDS = "select id from users";
+
+    private static final String UPDATE_USER_AGGREGATES = "update users set " +
+            "total_tasks_completed = ?, total_over_tasks = ?, total_under_tasks = ?, " +
+            "sum_task_time = ?, sum_task_est_factor = ?, sum_task_est_factor_compensation = ?, " +
+            "avg_task_time = ?, task_est_factor = ?, " +
+            "mean_exp_duration = ?, exp_duration_variation = ?, exp_actual_covariation = ?, " +
+            "version = version + 1 " +
+            "where id = ?";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDataWriteExecutor userDataWriteExecutor;
+
+    @Value("${streamline.rebuild.parallelism:0}")
+    int parallelism;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    int maximumPoolSize;
+
+    @Value("${streamline.rebuild.batch-size:500}")
+    int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong usersProcessed = new AtomicLong();
+    private final AtomicLong tasksProcessed = new AtomicLong();
+    private volatile long totalUsers = 0;
+    private volatile long startedAt = 0;
+    private volatile long finishedAt = 0;
+    private volatile String failure = null;
+
+    /**
+     * Runs a rebuild on the configured schedule, disabled unless streamline.rebuild.cron is set
+     */
+    @Scheduled(cron = "${streamline.rebuild.cron:-}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * Starts a rebuild on a background thread unless one is already running
+     * @return the status of the rebuild
+     */
+    public RebuildStatus startRebuild() {
+        if (!running.get()) {
+            Thread worker = new Thread(this::rebuild, "aggregate-rebuild");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return getStatus();
+    }
+
+    /**
+     * @return the progress of the current or most recent rebuild
+     */
+    public RebuildStatus getStatus() {
+        return new RebuildStatus(running.get(),
+                startedAt,
+                finishedAt,
+                totalUsers,
+                usersProcessed.get(),
+                tasksProcessed.get(),
+                failure);
+    }
+
+    /**
+     * Recomputes every user's aggregates, blocking until done. Returns immediately if a rebuild is running.
+     * @return database-wide totals over every task, or null if a rebuild was already running
+     */
+    public AggregateAccumulator rebuild() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+
+        usersProcessed.set(0);
+        tasksProcessed.set(0);
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        failure = null;
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(maximumPoolSize, parallelism > 0
+                ? parallelism
+                : Runtime.getRuntime().availableProcessors()));
+        try {
+            List<byte[]> userIds = jdbcTemplate.query(SELECT_USER_IDS, (rs, rowNum) -> rs.getBytes(1));
+            totalUsers = userIds.size();
+            logger.info("Rebuilding aggregates for {} users", totalUsers);
+
+            AggregateAccumulator totals = pool.invoke(new RebuildSlice(userIds, 0, userIds.size()));
+            for (UUID teamId : teamRollupService.getTeamIds()) {
+                userDataWriteExecutor.execute(teamId, () -> teamRollupService.recompute(teamId));
+            }
+            userDataCache.clear();
+
+            RebuildStatus status = getStatus();
+            logger.info("Rebuilt aggregates for {} users and {} tasks in {} ms ({} tasks/s)",
+                    status.getUsersProcessed(),
+                    status.getTasksProcessed(),
+                    status.getElapsedMillis(),
+                    Math.round(status.getTasksPerSecond()));
+            return totals;
+        } catch (RuntimeException e) {
+            failure = e.toString();
+            logger.error("Aggregate rebuild failed", e);
+            throw e;
+        } finally {
+            pool.shutdown();
+            finishedAt = System.currentTimeMillis();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Fork-join task rebuilding the users in [from, to) of the id list.
+     */
+    private class RebuildSlice extends RecursiveTask<AggregateAccumulator> {
+
+        private final List<byte[]> userIds;
+        private final int from;
+        private final int to;
+
+        RebuildSlice(List<byte[]> userIds, int from, int to) {
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected AggregateAccumulator compute() {
+            if (to - from <= batchSize) {
+                return rebuildUsers(userIds.subList(from, to));
+            }
+
+            int middle = (from + to) >>> 1;
+            RebuildSlice left = new RebuildSlice(userIds, from, middle);
+            RebuildSlice right = new RebuildSlice(userIds, middle, to);
+            left.fork();
+
+            AggregateAccumulator totals = right.compute();
+            totals.merge(left.join());
+            return totals;
+        }
+    }
+
+    private AggregateAccumulator rebuildUsers(List<byte[]> userIds) {
+        // An empty in () list is a syntax error
+        if (userIds.isEmpty()) {
+            return new AggregateAccumulator();
+        }
+
+        // Locked by row, not by the executor's stripes, most of which every slice would hold
+        Map<UUID, AggregateAccumulator> perUser = userDataWriteExecutor.execute(Collections.<UUID>emptySet(),
+                () -> rebuildLocked(userIds));
+
+        AggregateAccumulator totals = new AggregateAccumulator();
+        for (AggregateAccumulator accumulator : perUser.values()) {
+            totals.merge(accumulator);
+        }
+
+        long processed = usersProcessed.addAndGet(userIds.size());
+        tasksProcessed.addAndGet(totals.getTaskCount());
+        if (processed % (batchSize * 20L) < userIds.size()) {
+            logger.info("Rebuilt {} of {} users", processed, totalUsers);
+        }
+
+        return totals;
+    }
+
+    private Map<UUID, AggregateAccumulator> rebuildLocked(List<byte[]> userIds) {
+        String placeholders = String.join(",", Collections.nCopies(userIds.size(), "?"));
+        jdbcTemplate.query("select id from users where id in (" + placeholders + ") order by id for update",
+                userIds.toArray(),
+                rs -> { });
+
+        Map<UUID, AggregateAccumulator> perUser = new HashMap<>();
+        for (byte[] userId : userIds) {
+            perUser.put(UuidBytes.fromBytes(userId), new AggregateAccumulator());
+        }
+
+        // Share locks hold back updates and deletes of the tasks read until the slice commits.
+        // A fetch size of Integer.MIN_VALUE makes the MySQL driver stream rows instead of buffering the result.
+        jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            "select owner_id, exp_duration, actual_duration from tasks " +
+                                    "where owner_id in (" + placeholders + ") lock in share mode",
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    statement.setFetchSize(Integer.MIN_VALUE);
+                    for (int i = 0; i < userIds.size(); i++) {
+                        statement.setBytes(i + 1, userIds.get(i));
+                    }
+                    return statement;
+                },
+                rs -> {
+                    AggregateAccumulator accumulator = perUser.get(UuidBytes.fromBytes(rs.getBytes(1)));
+                    accumulator.add(rs.getLong(2), rs.getLong(3));
+                });
+
+        // The tasks read include those of pending owner deltas, applying the deltas as well would
+        // count them twice. Tag deltas are kept, tag statistics are not rebuilt.
+        jdbcTemplate.update("delete from aggregate_deltas where tag is null and owner_id in (" + placeholders + ")",
+                userIds.toArray());
+
+        List<Object[]> updates = new ArrayList<>(userIds.size());
+        for (Map.Entry<UUID, AggregateAccumulator> entry : perUser.entrySet()) {
+            AggregateAccumulator accumulator = entry.getValue();
+            updates.add(new Object[]{
+                    accumulator.getTaskCount(),
+                    accumulator.getOverTaskCount(),
+                    accumulator.getUnderTaskCount(),
+                    accumulator.getSumActualDuration(),
+                    accumulator.getSumTaskEstFactor(),
+                    accumulator.getSumTaskEstFactorCompensation(),
+                    accumulator.getAvgTaskTime(),
+                    accumulator.getTaskEstFactor(),
+                    accumulator.getMeanExpDuration(),
+                    accumulator.getExpDurationVariation(),
+                    accumulator.getExpActualCovariation(),
+                    UuidBytes.toBytes(entry.getKey())
+            });
+        }
+        jdbcTemplate.batchUpdate(UPDATE_USER_AGGREGATES, updates);
+
+        return perUser;
+    }
+}
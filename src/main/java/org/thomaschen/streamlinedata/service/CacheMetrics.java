@@ -0,0 +1,33 @@
+package org.thomaschen.streamlinedata.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes size, hit, miss and eviction counts of the in-process caches, as the cache.*
+ * meters tagged with the cache name.
+ */
+@Component
+public class CacheMetrics implements MeterBinder {
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    PredictionService predictionService;
+
+    @Autowired
+    TaskTagIndexService taskTagIndexService;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, userDataCache.getSnapshots(), UserDataCache.SNAPSHOTS);
+        CaffeineCacheMetrics.monitor(registry, userDataCache.getIds(), UserDataCache.IDS);
+        CaffeineCacheMetrics.monitor(registry, predictionService.getUserModels().getCache(), PredictionService.USER_MODELS);
+        CaffeineCacheMetrics.monitor(registry, predictionService.getTagModels().getCache(), PredictionService.TAG_MODELS);
+        CaffeineCacheMetrics.monitor(registry, taskTagIndexService.getIndexes(), TaskTagIndexService.INDEXES);
+    }
+}
@@ -0,0 +1,141 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams whole tables as newline delimited JSON (one entity per line).
+ * Rows are read through a database cursor and the persistence context is cleared
+ * periodically, so memory stays bounded regardless of table size.
+ *
+ * A complete export is empty or ends with a newline. An export failing before any rows were
+ * sent sends nothing, so the failure surfaces as an error status. Once rows were sent the status
+ * cannot change, and the export instead ends with an error line without a newline after it.
+ */
+@Service
+@Transactional(readOnly = true)
+public class ExportService {
+
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    private static final int CLEAR_INTERVAL = 1000;
+
+    private static final byte[] INCOMPLETE_LINE =
+            "\n{\"error\":\"export incomplete\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /**
+     * Writes every UserData in (createdAt, id) order
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeUsers(OutputStream out) throws IOException {
+        try (Stream<?> users = userDataRepository.streamAllOrderByCreatedAt()) {
+            writeLines(users, out);
+        }
+    }
+
+    /**
+     * Writes every TaskData in (createdAt, taskId) order
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTasks(OutputStream out) throws IOException {
+        try (Stream<?> tasks = taskDataRepository.streamAllOrderByCreatedAt()) {
+            writeLines(tasks, out);
+        }
+    }
+
+    private void writeLines(Stream<?> rows, OutputStream out) throws IOException {
+        // A fresh serializer provider per row keeps object id tracking from growing across rows
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        // Closed only on success, so the rows still buffered by a failed export are dropped
+        CountingOutputStream counted = new CountingOutputStream(out);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(counted);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+
+        long written = 0;
+        try {
+            Iterator<?> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, iterator.next());
+
+                if (++written % CLEAR_INTERVAL == 0) {
+                    entityManager.clear();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (counted.count > 0) {
+                markIncomplete(out, e);
+            }
+            throw e;
+        }
+
+        if (written > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.close();
+    }
+
+    private static void markIncomplete(OutputStream out, Exception failure) {
+        try {
+            out.write(INCOMPLETE_LINE);
+            out.flush();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Counts the bytes passed on to the client, which the generator only does when its buffer fills
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
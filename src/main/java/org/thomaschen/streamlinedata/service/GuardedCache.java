@@ -0,0 +1,133 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A Caffeine cache whose misses are loaded outside the cache's locks.
+ *
+ * Cache.get runs its loader inside ConcurrentHashMap.compute, holding the lock of the key's
+ * bin. A loader waiting for a pooled connection then blocks every writer evicting a key in
+ * that bin while it holds a connection of its own, and once the pool is drained the
+ * service deadlocks. Here the loader runs unlocked instead, and its value is only cached
+ * if no eviction of the key started meanwhile, so a load that raced a write still cannot
+ * leave the old value cached. Concurrent misses on one key may each load it.
+ */
+class GuardedCache<K, V> {
+
+    private static final int STRIPES = 1024;
+
+    private final Cache<K, V> cache;
+
+    /**
+     * Evictions started per stripe of keys, bumped before the entries are removed
+     */
+    private final AtomicLongArray evictions = new AtomicLongArray(STRIPES);
+
+    GuardedCache(Cache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Gets a value, loading it on a miss
+     * @param key the key
+     * @param loader loads the value of a missing key, returning null to cache nothing
+     * @return the value, or null if the loader returned null
+     */
+    V get(K key, Function<? super K, ? extends V> loader) {
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+
+        int stripe = stripe(key);
+        long evictionsBefore = evictions.get(stripe);
+        V loaded = loader.apply(key);
+        if (loaded != null) {
+            // Checked under the bin lock that a racing invalidate must take after bumping the stripe
+            cache.asMap().compute(key, (k, current) ->
+                    (evictions.get(stripe) == evictionsBefore) ? loaded : current);
+        }
+        return loaded;
+    }
+
+    /**
+     * Caches a value read together with others, unless an eviction of its key started after
+     * the read began
+     * @param key the key
+     * @param value the value
+     * @param evictionsBefore the result of {@link #evictionStamp(Object)} taken before the read
+     */
+    void putIfNotEvicted(K key, V value, long evictionsBefore) {
+        int stripe = stripe(key);
+        cache.asMap().compute(key, (k, current) ->
+                (evictions.get(stripe) == evictionsBefore) ? value : current);
+    }
+
+    /**
+     * @param key the key
+     * @return a stamp to pass to {@link #putIfNotEvicted(Object, Object, long)}
+     */
+    long evictionStamp(K key) {
+        return evictions.get(stripe(key));
+    }
+
+    /**
+     * Changes the cached value of a key in place, and keeps loads of the key already running
+     * from being cached, since they may have read the data from before the change
+     * @param key the key
+     * @param update returns the changed value, or null to evict the key
+     */
+    void update(K key, BiFunction<? super K, ? super V, ? extends V> update) {
+        evictions.incrementAndGet(stripe(key));
+        cache.asMap().computeIfPresent(key, update);
+    }
+
+    void invalidate(K key) {
+        evictions.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    void invalidateAll(Iterable<? extends K> keys) {
+        for (K key : keys) {
+            evictions.incrementAndGet(stripe(key));
+        }
+        cache.invalidateAll(keys);
+    }
+
+    /**
+     * Evicts every entry whose key matches, and keeps loads of any key already running from being cached
+     * @param predicate selects the keys evicted
+     */
+    void invalidateIf(Predicate<? super K> predicate) {
+        bumpAll();
+        cache.asMap().keySet().removeIf(predicate);
+    }
+
+    void invalidateAll() {
+        bumpAll();
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return the underlying cache, for statistics and reads of present entries
+     */
+    Cache<K, V> getCache() {
+        return cache;
+    }
+
+    private void bumpAll() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            evictions.incrementAndGet(stripe);
+        }
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,38 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes points as a JSON array of {"value": value, "name": timestamp} objects.
+ */
+public class JsonTimeSeriesSink implements TimeSeriesSink {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneOffset.UTC);
+
+    private final JsonGenerator generator;
+
+    public JsonTimeSeriesSink(JsonGenerator generator) throws IOException {
+        this.generator = generator;
+        this.generator.writeStartArray();
+    }
+
+    @Override
+    public void accept(long timestamp, double value) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("value", value);
+        generator.writeStringField("name", TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(timestamp)));
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        generator.writeEndArray();
+        generator.flush();
+    }
+}
@@ -0,0 +1,159 @@
+package org.thomaschen.streamlinedata.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming Largest-Triangle-Three-Buckets downsampler. Keeps the first and last point and
+ * picks one point per bucket in between, choosing the point that forms the largest triangle
+ * with the previously selected point and the average of the following bucket.
+ *
+ * Only two buckets of points are buffered at any time, so memory is proportional to
+ * totalPoints / maxPoints rather than totalPoints.
+ */
+public class LargestTriangleThreeBucketsSink implements TimeSeriesSink {
+
+    private final TimeSeriesSink downstream;
+    private final boolean passThrough;
+    private final int middleBuckets;
+    private final double bucketSize;
+
+    private long index = 0;
+    private int fillingBucket = 0;
+    private long fillingBucketEnd;
+
+    private Bucket pending = new Bucket();
+    private Bucket filling = new Bucket();
+
+    private double selectedX;
+    private double selectedY;
+
+    /**
+     * @param totalPoints the number of points the series is expected to contain
+     * @param maxPoints the maximum number of points to pass downstream, at least 3
+     * @param downstream the sink receiving the selected points
+     */
+    public LargestTriangleThreeBucketsSink(long totalPoints, int maxPoints, TimeSeriesSink downstream) {
+        this.downstream = downstream;
+        this.passThrough = maxPoints < 3 || totalPoints <= maxPoints;
+        this.middleBuckets = maxPoints - 2;
+        this.bucketSize = passThrough ? 1.0 : (double) (totalPoints - 2) / middleBuckets;
+        this.fillingBucketEnd = (long) Math.floor(bucketSize) + 1;
+    }
+
+    @Override
+    public void accept(long timestamp, double value) throws IOException {
+        if (passThrough) {
+            downstream.accept(timestamp, value);
+            return;
+        }
+
+        if (index == 0) {
+            downstream.accept(timestamp, value);
+            selectedX = timestamp;
+            selectedY = value;
+            index++;
+            return;
+        }
+
+        // Extra points beyond the expected total all land in the last bucket
+        if (index >= fillingBucketEnd && fillingBucket < middleBuckets - 1) {
+            if (pending.size > 0) {
+                select(pending, filling.averageX(), filling.averageY());
+            }
+
+            Bucket emptied = pending;
+            pending = filling;
+            filling = emptied;
+            filling.clear();
+
+            fillingBucket++;
+            fillingBucketEnd = (long) Math.floor((fillingBucket + 1) * bucketSize) + 1;
+        }
+
+        filling.add(timestamp, value);
+        index++;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (!passThrough && index > 1) {
+            // The most recent point is the last point of the series and is always kept
+            Bucket holdingLast = (filling.size > 0) ? filling : pending;
+            long lastX = (long) holdingLast.x[holdingLast.size - 1];
+            double lastY = holdingLast.y[holdingLast.size - 1];
+            holdingLast.size--;
+
+            if (pending.size > 0) {
+                if (filling.size > 0) {
+                    select(pending, filling.averageX(), filling.averageY());
+                } else {
+                    select(pending, lastX, lastY);
+                }
+            }
+            if (filling.size > 0) {
+                select(filling, lastX, lastY);
+            }
+
+            downstream.accept(lastX, lastY);
+        }
+        downstream.finish();
+    }
+
+    private void select(Bucket bucket, double nextX, double nextY) throws IOException {
+        int best = 0;
+        double bestArea = -1.0;
+
+        for (int i = 0; i < bucket.size; i++) {
+            double area = Math.abs((selectedX - nextX) * (bucket.y[i] - selectedY)
+                    - (selectedX - bucket.x[i]) * (nextY - selectedY));
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+
+        selectedX = bucket.x[best];
+        selectedY = bucket.y[best];
+        downstream.accept((long) selectedX, selectedY);
+    }
+
+    /**
+     * Growable primitive buffer holding the points of a single bucket.
+     */
+    private static final class Bucket {
+        private double[] x = new double[16];
+        private double[] y = new double[16];
+        private int size = 0;
+
+        void add(double px, double py) {
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+            }
+            x[size] = px;
+            y[size] = py;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double averageX() {
+            double sum = 0.0;
+            for (int i = 0; i < size; i++) {
+                sum += x[i];
+            }
+            return sum / size;
+        }
+
+        double averageY() {
+            double sum = 0.0;
+            for (int i = 0; i < size; i++) {
+                sum += y[i];
+            }
+            return sum / size;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.PredictionModel;
+import org.thomaschen.streamlinedata.model.PredictionRequest;
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TagStatisticsId;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TagStatisticsRepository;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.annotation.PostConstruct;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Predicts task durations from per-user and per-(user, tag) prediction models.
+ *
+ * Models are fitted from the regression statistics kept on UserData and TagStatistics rows
+ * and cached in process, so a prediction is a cache lookup and a multiply-add. Writers
+ * evict the models they change, now and again after commit.
+ */
+@Service
+public class PredictionService {
+
+    public static final String USER_MODELS = "userPredictionModels";
+    public static final String TAG_MODELS = "tagPredictionModels";
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TagStatisticsRepository tagStatisticsRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    TagDictionary tagDictionary;
+
+    @Autowired
+    Validator validator;
+
+    @Value("${streamline.predictions.parallel-threshold:1000}")
+    int parallelThreshold;
+
+    @Value("${streamline.cache.predictions.maximum-size:100000}")
+    long maximumSize;
+
+    @Value("${streamline.cache.predictions.expire-after-write-seconds:300}")
+    long expireAfterWriteSeconds;
+
+    private GuardedCache<UUID, PredictionModel> userModels;
+    private GuardedCache<TagStatisticsId, PredictionModel> tagModels;
+
+    @PostConstruct
+    void init() {
+        userModels = new GuardedCache<>(Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .<UUID, PredictionModel>build());
+        tagModels = new GuardedCache<>(Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .<TagStatisticsId, PredictionModel>build());
+    }
+
+    /**
+     * Predicts the actual duration of a new task. With tags, the models of the tags the user
+     * has completed tasks with are averaged, weighted by their task counts. Without such tags
+     * the user's overall model is used.
+     * @param userId the UUID of the UserData
+     * @param expDuration the expected duration of the task
+     * @param tags the tags of the task, may be null
+     * @return the predicted actual duration
+     */
+    public double predict(UUID userId, long expDuration, Collection<String> tags) {
+        PredictionModel userModel = getUserModel(userId);
+        if (userModel == null) {
+            throw new ResourceNotFoundException("UserData", "id", userId);
+        }
+
+        List<PredictionModel> tagModels = new ArrayList<>();
+        for (String tag : TagDictionary.distinct(tags)) {
+            tagModels.add(getTagModel(userId, tag));
+        }
+        return combine(userModel, tagModels, expDuration);
+    }
+
+    /**
+     * Predicts the actual durations of many tasks across many users. The model of each
+     * distinct user and (user, tag) is looked up once, cache misses are loaded in bulk, and
+     * large batches are evaluated in parallel.
+     * @param requests the tasks to predict
+     * @return the predicted actual durations, in request order
+     */
+    public List<Double> predictBatch(List<PredictionRequest> requests) {
+        Set<UUID> userIds = new HashSet<>();
+        Set<TagStatisticsId> tagIds = new HashSet<>();
+        for (PredictionRequest request : requests) {
+            validate(request);
+            userIds.add(request.getUserId());
+            for (String tag : TagDictionary.distinct(request.getTags())) {
+                tagIds.add(new TagStatisticsId(request.getUserId(), tag));
+            }
+        }
+
+        Map<UUID, PredictionModel> users = loadUserModels(userIds);
+        Map<TagStatisticsId, PredictionModel> tags = loadTagModels(tagIds);
+
+        Stream<PredictionRequest> stream = (requests.size() >= parallelThreshold)
+                ? requests.parallelStream()
+                : requests.stream();
+        return stream.map(request -> {
+            List<PredictionModel> tagModels = new ArrayList<>();
+            for (String tag : TagDictionary.distinct(request.getTags())) {
+                tagModels.add(tags.get(new TagStatisticsId(request.getUserId(), tag)));
+            }
+            return combine(users.get(request.getUserId()), tagModels, request.getExpDuration());
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * @param userId the UUID of the UserData
+     * @return the model of every task of the user, or null if no such user exists
+     */
+    public PredictionModel getUserModel(UUID userId) {
+        return userModels.get(userId, key -> userDataRepository.findById(key)
+                .map(userData -> new PredictionModel(userData.toAccumulator()))
+                .orElse(null));
+    }
+
+    /**
+     * @param userId the UUID of the UserData
+     * @param tag the tag
+     * @return the model of the user's tasks with the tag
+     */
+    public PredictionModel getTagModel(UUID userId, String tag) {
+        return tagModels.get(new TagStatisticsId(userId, tag), key -> {
+            TagStatistics stats = tagStatisticsRepository.findById(key)
+                    .orElseGet(() -> TagStatistics.fromTotals(userId, tag,
+                            taskDataRepository.sumTotalsByOwnerIdAndTagId(userId, tagDictionary.getId(tag))));
+            return new PredictionModel(stats.getStatistics());
+        });
+    }
+
+    /**
+     * Evicts the models of users whose aggregates changed, now and after the current transaction commits
+     * @param userIds the UUIDs of the UserDatas
+     */
+    public void evictUsers(Collection<UUID> userIds) {
+        userModels.invalidateAll(userIds);
+        TransactionCallbacks.afterCommit(() -> userModels.invalidateAll(userIds));
+    }
+
+    /**
+     * Evicts the model of a user's tasks with a tag, now and after the current transaction commits
+     * @param userId the UUID of the UserData
+     * @param tag the tag
+     */
+    public void evictTag(UUID userId, String tag) {
+        TagStatisticsId id = new TagStatisticsId(userId, tag);
+        tagModels.invalidate(id);
+        TransactionCallbacks.afterCommit(() -> tagModels.invalidate(id));
+    }
+
+    /**
+     * Evicts every model of a deleted user
+     * @param userId the UUID of the UserData
+     */
+    public void evictDeleted(UUID userId) {
+        evictUsers(Arrays.asList(userId));
+        evictOwnerTags(userId);
+        TransactionCallbacks.afterCommit(() -> evictOwnerTags(userId));
+    }
+
+    /**
+     * Evicts every model
+     */
+    public void clear() {
+        invalidateAll();
+        TransactionCallbacks.afterCommit(this::invalidateAll);
+    }
+
+    /**
+     * @return size and hit statistics of the user and tag model caches
+     */
+    public List<CacheStatus> getStatus() {
+        return Arrays.asList(new CacheStatus(USER_MODELS, userModels.getCache()),
+                new CacheStatus(TAG_MODELS, tagModels.getCache()));
+    }
+
+    GuardedCache<UUID, PredictionModel> getUserModels() {
+        return userModels;
+    }
+
+    GuardedCache<TagStatisticsId, PredictionModel> getTagModels() {
+        return tagModels;
+    }
+
+    private Map<UUID, PredictionModel> loadUserModels(Set<UUID> userIds) {
+        Map<UUID, PredictionModel> models = new HashMap<>(userModels.getCache().getAllPresent(userIds));
+
+        Map<UUID, Long> missing = new HashMap<>();
+        for (UUID userId : userIds) {
+            if (!models.containsKey(userId)) {
+                missing.put(userId, userModels.evictionStamp(userId));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (UserData userData : userDataRepository.findAllById(missing.keySet())) {
+                PredictionModel model = new PredictionModel(userData.toAccumulator());
+                userModels.putIfNotEvicted(userData.getId(), model, missing.get(userData.getId()));
+                models.put(userData.getId(), model);
+            }
+        }
+
+        for (UUID userId : userIds) {
+            if (!models.containsKey(userId)) {
+                throw new ResourceNotFoundException("UserData", "id", userId);
+            }
+        }
+        return models;
+    }
+
+    private Map<TagStatisticsId, PredictionModel> loadTagModels(Set<TagStatisticsId> tagIds) {
+        Map<TagStatisticsId, PredictionModel> models = new HashMap<>(tagModels.getCache().getAllPresent(tagIds));
+
+        Map<TagStatisticsId, Long> missing = new HashMap<>();
+        for (TagStatisticsId tagId : tagIds) {
+            if (!models.containsKey(tagId)) {
+                missing.put(tagId, tagModels.evictionStamp(tagId));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (TagStatistics stats : tagStatisticsRepository.findAllById(missing.keySet())) {
+                PredictionModel model = new PredictionModel(stats.getStatistics());
+                tagModels.putIfNotEvicted(stats.getId(), model, missing.get(stats.getId()));
+                models.put(stats.getId(), model);
+            }
+        }
+
+        // Tags without a statistics row yet are rare, fall back to one model at a time
+        for (TagStatisticsId tagId : tagIds) {
+            if (!models.containsKey(tagId)) {
+                models.put(tagId, getTagModel(tagId.getOwnerId(), tagId.getTag()));
+            }
+        }
+        return models;
+    }
+
+    private void validate(PredictionRequest request) {
+        Set<ConstraintViolation<PredictionRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<PredictionRequest> violation = violations.iterator().next();
+            throw new InvalidParameterException(violation.getPropertyPath().toString(), violation.getInvalidValue());
+        }
+    }
+
+    private static double combine(PredictionModel userModel, List<PredictionModel> tagModels, long expDuration) {
+        double weightedSum = 0.0;
+        long weight = 0;
+        for (PredictionModel tagModel : tagModels) {
+            weightedSum += tagModel.predict(expDuration) * tagModel.getTaskCount();
+            weight += tagModel.getTaskCount();
+        }
+        return (weight > 0) ? weightedSum / weight : userModel.predict(expDuration);
+    }
+
+    private void evictOwnerTags(UUID userId) {
+        tagModels.invalidateIf(id -> userId.equals(id.getOwnerId()));
+    }
+
+    private void invalidateAll() {
+        userModels.invalidateAll();
+        tagModels.invalidateAll();
+    }
+}
@@ -0,0 +1,76 @@
+package org.thomaschen.streamlinedata.service;
+
+/**
+ * Point-in-time progress report of an aggregate rebuild.
+ */
+public class RebuildStatus {
+
+    private final boolean running;
+    private final long startedAt;
+    private final long finishedAt;
+    private final long totalUsers;
+    private final long usersProcessed;
+    private final long tasksProcessed;
+    private final String failure;
+
+    public RebuildStatus(boolean running,
+                         long startedAt,
+                         long finishedAt,
+                         long totalUsers,
+                         long usersProcessed,
+                         long tasksProcessed,
+                         String failure) {
+        this.running = running;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.totalUsers = totalUsers;
+        this.usersProcessed = usersProcessed;
+        this.tasksProcessed = tasksProcessed;
+        this.failure = failure;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getTotalUsers() {
+        return totalUsers;
+    }
+
+    public long getUsersProcessed() {
+        return usersProcessed;
+    }
+
+    public long getTasksProcessed() {
+        return tasksProcessed;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public long getElapsedMillis() {
+        if (startedAt == 0) {
+            return 0;
+        }
+        return (running ? System.currentTimeMillis() : finishedAt) - startedAt;
+    }
+
+    public double getUsersPerSecond() {
+        long elapsed = getElapsedMillis();
+        return (elapsed == 0) ? 0.0 : usersProcessed * 1000.0 / elapsed;
+    }
+
+    public double getTasksPerSecond() {
+        long elapsed = getElapsedMillis();
+        return (elapsed == 0) ? 0.0 : tasksProcessed * 1000.0 / elapsed;
+    }
+}
@@ -0,0 +1,162 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.model.Tag;
+import org.thomaschen.streamlinedata.repository.TagRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps tag strings to the integer ids tasks reference them by.
+ *
+ * Tags are only ever added to the dictionary, so every id read is cached for the lifetime of
+ * the process. New tags are inserted and committed in a transaction of their own before
+ * their ids are cached, so a cached id never points at a row rolled back with the write
+ * that introduced it.
+ */
+@Service
+public class TagDictionary {
+
+    /**
+     * Id no tag has, so a filter on a tag missing from the dictionary matches nothing
+     */
+    public static final int UNKNOWN_TAG_ID = 0;
+
+    /**
+     * Attempts to insert new tags while other nodes insert some of the same tags
+     */
+    private static final int MAX_INTERN_ATTEMPTS = 3;
+
+    @Autowired
+    TagRepository tagRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the id of a tag, for tag filters
+     * @param name the tag
+     * @return the id of the tag, or UNKNOWN_TAG_ID if no task was ever given the tag
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        // Unknown tags are not cached, a task may be given the tag later
+        return tagRepository.findByName(name)
+                .map(tag -> {
+                    ids.putIfAbsent(tag.getName(), tag.getId());
+                    return tag.getId();
+                })
+                .orElse(UNKNOWN_TAG_ID);
+    }
+
+    /**
+     * Gets the ids of tags, adding those missing to the dictionary. Call it before the
+     * transaction writing the tasks starts, so new tags do not need a second connection.
+     * @param names the tags, may be null or contain nulls
+     * @return the id of each distinct non-null tag
+     */
+    public Map<String, Integer> intern(Collection<String> names) {
+        Map<String, Integer> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String name : distinct(names)) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                missing.add(name);
+            } else {
+                found.put(name, id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        List<Tag> tags;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                tags = newTransaction.execute(status -> insertMissing(missing));
+                break;
+            } catch (DataIntegrityViolationException e) {
+                // Another node inserted one of the tags first, the next attempt reads it
+                if (attempt == MAX_INTERN_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+
+        for (Tag tag : tags) {
+            ids.putIfAbsent(tag.getName(), tag.getId());
+            found.put(tag.getName(), tag.getId());
+        }
+        return found;
+    }
+
+    private List<Tag> insertMissing(Set<String> names) {
+        List<Tag> tags = new ArrayList<>(tagRepository.findByNameIn(names));
+        Set<String> absent = new LinkedHashSet<>(names);
+        for (Tag tag : tags) {
+            absent.remove(tag.getName());
+        }
+        for (String name : absent) {
+            tags.add(tagRepository.saveAndFlush(new Tag(name)));
+        }
+        return tags;
+    }
+
+    /**
+     * Gets the dictionary entries of a task's tags, adding tags missing from the dictionary.
+     * Must be called inside the transaction that saves the task.
+     * @param names the tags of the task, may be null or contain nulls
+     * @return references to the entries of each distinct non-null tag, in order
+     */
+    public List<Tag> getReferences(Collection<String> names) {
+        List<String> distinctNames = distinct(names);
+        Map<String, Integer> tagIds = intern(distinctNames);
+
+        List<Tag> references = new ArrayList<>(distinctNames.size());
+        for (String name : distinctNames) {
+            references.add(entityManager.getReference(Tag.class, tagIds.get(name)));
+        }
+        return references;
+    }
+
+    /**
+     * @param names tags, may be null or contain nulls
+     * @return the distinct non-null tags, in order
+     */
+    static List<String> distinct(Collection<String> names) {
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        Set<String> distinct = new LinkedHashSet<>(names);
+        distinct.remove(null);
+        return new ArrayList<>(distinct);
+    }
+}
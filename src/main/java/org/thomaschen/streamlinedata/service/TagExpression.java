@@ -0,0 +1,275 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A boolean combination of tags, parsed from the tags request parameter.
+ *
+ * Tags are combined with the keywords AND, OR and NOT, in upper case, and grouped with
+ * parentheses. NOT binds tighter than AND, which binds tighter than OR. A tag holding
+ * whitespace, a parenthesis or a keyword is written in double quotes, with \" and \\ as
+ * escapes. A value without keywords, parentheses or quotes is a single tag as it stands,
+ * so every value accepted before expressions existed still selects the same tasks.
+ */
+public abstract class TagExpression {
+
+    private static final String PARAMETER = "tags";
+
+    private static final String AND = "AND";
+    private static final String OR = "OR";
+    private static final String NOT = "NOT";
+
+    TagExpression() {
+
+    }
+
+    /**
+     * Parses a tags request parameter
+     * @param value the parameter value
+     * @return the expression
+     * @throws InvalidParameterException if the value is not a valid expression
+     */
+    public static TagExpression parse(String value) {
+        List<String> tokens = tokenize(value);
+        if (isLiteral(value, tokens)) {
+            return new Single(value);
+        }
+
+        Parser parser = new Parser(value, tokens);
+        TagExpression expression = parser.parseOr();
+        if (parser.position != tokens.size()) {
+            throw new InvalidParameterException(PARAMETER, value);
+        }
+        return expression;
+    }
+
+    /**
+     * @return the tag, if this expression is a single tag, otherwise null
+     */
+    public String getTag() {
+        return null;
+    }
+
+    /**
+     * Evaluates the expression over bitmaps of task ordinals. The bitmaps passed in are
+     * never modified, and may be returned as the result.
+     * @param tagBitmaps the ordinals of the tasks with a tag, an empty bitmap for an unknown tag
+     * @param all the ordinals of every task, which NOT selects from
+     * @return the ordinals of the tasks selected
+     */
+    abstract RoaringBitmap evaluate(Function<String, RoaringBitmap> tagBitmaps, RoaringBitmap all);
+
+    private static boolean isLiteral(String value, List<String> tokens) {
+        if (value.indexOf('(') >= 0 || value.indexOf(')') >= 0 || value.indexOf('"') >= 0) {
+            return false;
+        }
+        for (String token : tokens) {
+            if (token.equals(AND) || token.equals(OR) || token.equals(NOT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Quoted tags are returned with their opening quote and without escapes, so they never equal a keyword
+    private static List<String> tokenize(String value) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                StringBuilder tag = new StringBuilder("\"");
+                i++;
+                while (i < value.length() && value.charAt(i) != '"') {
+                    if (value.charAt(i) == '\\' && i + 1 < value.length()) {
+                        i++;
+                    }
+                    tag.append(value.charAt(i++));
+                }
+                if (i == value.length()) {
+                    throw new InvalidParameterException(PARAMETER, value);
+                }
+                tokens.add(tag.toString());
+                i++;
+            } else {
+                int start = i;
+                while (i < value.length() && !Character.isWhitespace(value.charAt(i))
+                        && "()\"".indexOf(value.charAt(i)) < 0) {
+                    i++;
+                }
+                tokens.add(value.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Recursive descent over the tokens, one method per precedence level
+     */
+    private static final class Parser {
+        private final String value;
+        private final List<String> tokens;
+        private int position = 0;
+
+        Parser(String value, List<String> tokens) {
+            this.value = value;
+            this.tokens = tokens;
+        }
+
+        TagExpression parseOr() {
+            TagExpression left = parseAnd();
+            while (accept(OR)) {
+                left = new Or(left, parseAnd());
+            }
+            return left;
+        }
+
+        TagExpression parseAnd() {
+            TagExpression left = parseNot();
+            while (accept(AND)) {
+                left = new And(left, parseNot());
+            }
+            return left;
+        }
+
+        TagExpression parseNot() {
+            if (accept(NOT)) {
+                return new Not(parseNot());
+            }
+            return parsePrimary();
+        }
+
+        TagExpression parsePrimary() {
+            if (accept("(")) {
+                TagExpression inner = parseOr();
+                expect(")");
+                return inner;
+            }
+
+            if (position == tokens.size()) {
+                throw new InvalidParameterException(PARAMETER, value);
+            }
+            String token = tokens.get(position);
+            if (token.equals(")") || token.equals(AND) || token.equals(OR)) {
+                throw new InvalidParameterException(PARAMETER, value);
+            }
+            position++;
+            return new Single(token.startsWith("\"") ? token.substring(1) : token);
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw new InvalidParameterException(PARAMETER, value);
+            }
+        }
+    }
+
+    private static final class Single extends TagExpression {
+        private final String tag;
+
+        Single(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public String getTag() {
+            return tag;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Function<String, RoaringBitmap> tagBitmaps, RoaringBitmap all) {
+            return tagBitmaps.apply(tag);
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + tag.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+    }
+
+    private static final class And extends TagExpression {
+        private final TagExpression left;
+        private final TagExpression right;
+
+        And(TagExpression left, TagExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Function<String, RoaringBitmap> tagBitmaps, RoaringBitmap all) {
+            // a AND NOT b is a difference, without complementing b against every task first
+            if (right instanceof Not) {
+                return RoaringBitmap.andNot(left.evaluate(tagBitmaps, all),
+                        ((Not) right).operand.evaluate(tagBitmaps, all));
+            }
+            if (left instanceof Not) {
+                return RoaringBitmap.andNot(right.evaluate(tagBitmaps, all),
+                        ((Not) left).operand.evaluate(tagBitmaps, all));
+            }
+            return RoaringBitmap.and(left.evaluate(tagBitmaps, all), right.evaluate(tagBitmaps, all));
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " AND " + right + ")";
+        }
+    }
+
+    private static final class Or extends TagExpression {
+        private final TagExpression left;
+        private final TagExpression right;
+
+        Or(TagExpression left, TagExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Function<String, RoaringBitmap> tagBitmaps, RoaringBitmap all) {
+            return RoaringBitmap.or(left.evaluate(tagBitmaps, all), right.evaluate(tagBitmaps, all));
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " OR " + right + ")";
+        }
+    }
+
+    private static final class Not extends TagExpression {
+        private final TagExpression operand;
+
+        Not(TagExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Function<String, RoaringBitmap> tagBitmaps, RoaringBitmap all) {
+            return RoaringBitmap.andNot(all, operand.evaluate(tagBitmaps, all));
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+}
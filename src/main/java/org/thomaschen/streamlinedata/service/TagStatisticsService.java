@@ -0,0 +1,125 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TagStatisticsId;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.repository.TagStatisticsRepository;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Maintains the per-(owner, tag) statistics table.
+ *
+ * Rows that do not exist yet are seeded from the owner's tasks already in the database the
+ * first time a write touches them, so callers must apply a change here before the change itself
+ * is flushed to the tasks table. Reads of a missing row compute it the same way without storing it.
+ */
+@Service
+@Transactional
+public class TagStatisticsService {
+
+    @Autowired
+    TagStatisticsRepository tagStatisticsRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    PredictionService predictionService;
+
+    @Autowired
+    TagDictionary tagDictionary;
+
+    /**
+     * Gets the statistics of a user's tasks with a tag, computing them from the tasks without storing them if the row does not exist
+     * @param ownerId the UUID of the owning UserData
+     * @param tag the tag
+     * @return the statistics for the owner and tag
+     */
+    @Transactional(readOnly = true)
+    public TagStatistics getTagStatistics(UUID ownerId, String tag) {
+        return tagStatisticsRepository.findById(new TagStatisticsId(ownerId, tag))
+                .orElseGet(() -> computeTagStatistics(ownerId, tag));
+    }
+
+    /**
+     * Seeds the statistics rows of a task's tags that do not exist yet, without applying the task
+     * @param ownerId the UUID of the owning UserData
+     * @param taskData the task whose tags are seeded
+     */
+    public void seedTagStatistics(UUID ownerId, TaskData taskData) {
+        for (String tag : TagDictionary.distinct(taskData.getTags())) {
+            getSeededTagStatistics(ownerId, tag);
+        }
+    }
+
+    /**
+     * Adds a task's data to the statistics of each of its tags
+     * @param ownerId the UUID of the owning UserData
+     * @param taskData the task data to be added
+     */
+    public void addTaskData(UUID ownerId, TaskData taskData) {
+        for (String tag : TagDictionary.distinct(taskData.getTags())) {
+            TagStatistics stats = getSeededTagStatistics(ownerId, tag);
+            stats.addTaskData(taskData);
+            tagStatisticsRepository.save(stats);
+            predictionService.evictTag(ownerId, tag);
+        }
+    }
+
+    /**
+     * Removes a task's data from the statistics of each of its tags
+     * @param ownerId the UUID of the owning UserData
+     * @param taskData the task data to be removed
+     */
+    public void subtractTaskData(UUID ownerId, TaskData taskData) {
+        for (String tag : TagDictionary.distinct(taskData.getTags())) {
+            TagStatistics stats = getSeededTagStatistics(ownerId, tag);
+            stats.subtractTaskData(taskData);
+            tagStatisticsRepository.save(stats);
+            predictionService.evictTag(ownerId, tag);
+        }
+    }
+
+    /**
+     * Adds many tasks of one owner, updating each tag's statistics once
+     * @param ownerId the UUID of the owning UserData
+     * @param tasks the task data to be added
+     */
+    public void addTaskDataBatch(UUID ownerId, List<TaskData> tasks) {
+        Map<String, AggregateAccumulator> perTag = new HashMap<>();
+        for (TaskData taskData : tasks) {
+            for (String tag : TagDictionary.distinct(taskData.getTags())) {
+                perTag.computeIfAbsent(tag, key -> new AggregateAccumulator())
+                        .add(taskData.getExpDuration(), taskData.getActualDuration());
+            }
+        }
+
+        for (Map.Entry<String, AggregateAccumulator> entry : perTag.entrySet()) {
+            TagStatistics stats = getSeededTagStatistics(ownerId, entry.getKey());
+            stats.getStatistics().merge(entry.getValue());
+            tagStatisticsRepository.save(stats);
+            predictionService.evictTag(ownerId, entry.getKey());
+        }
+    }
+
+    private TagStatistics getSeededTagStatistics(UUID ownerId, String tag) {
+        return tagStatisticsRepository.findById(new TagStatisticsId(ownerId, tag))
+                .orElseGet(() -> UserDataWriteExecutor.insertContended(tagStatisticsRepository,
+                        computeTagStatistics(ownerId, tag)));
+    }
+
+    private TagStatistics computeTagStatistics(UUID ownerId, String tag) {
+        return TagStatistics.fromTotals(ownerId, tag,
+                taskDataRepository.sumTotalsByOwnerIdAndTagId(ownerId, tagDictionary.getId(tag)));
+    }
+}
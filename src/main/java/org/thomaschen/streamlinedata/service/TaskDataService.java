@@ -0,0 +1,367 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import org.thomaschen.streamlinedata.exceptions.InvalidArithmeticException;
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Task write paths. Each write updates the task, its owner's aggregates, the owner's tag
+ * statistics and the rollups of the owner's teams in a single transaction, and evicts the
+ * owner's cached aggregates. Writes run through UserDataWriteExecutor, which serializes writes
+ * for the same owner on this node and replays a write whose aggregate rows were concurrently
+ * updated elsewhere, so callers must not hold a transaction of their own.
+ *
+ * Tags are added to the tag dictionary before a write's transaction starts, and tasks store
+ * references to their distinct tags' dictionary entries. Committed writes are applied to
+ * the owner's tag index, if one is loaded.
+ *
+ * With streamline.writes.async enabled, writes only save the task row and record its
+ * aggregate deltas, which AggregateDeltaWorker applies in the background. Aggregates then
+ * trail task writes by up to one flush interval.
+ */
+@Service
+public class TaskDataService {
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    TagStatisticsService tagStatisticsService;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    AggregateDeltaWorker aggregateDeltaWorker;
+
+    @Autowired
+    UserDataWriteExecutor userDataWriteExecutor;
+
+    @Autowired
+    TagDictionary tagDictionary;
+
+    @Autowired
+    TaskTagIndexService taskTagIndexService;
+
+    @Autowired
+    Validator validator;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+    int batchSize;
+
+    @Value("${streamline.writes.async:false}")
+    boolean async;
+
+    /**
+     * Creates a new task for a user
+     * @param ownerId the UUID of the owning UserData
+     * @param taskData the task to be created
+     * @return the saved task
+     */
+    public TaskData createTaskData(UUID ownerId, TaskData taskData) {
+        tagDictionary.intern(taskData.getTags());
+        return userDataWriteExecutor.execute(lockedUsers(ownerId), () -> insertTaskData(ownerId, copyOf(taskData)));
+    }
+
+    private TaskData insertTaskData(UUID ownerId, TaskData taskData) {
+        // Asynchronous writes leave the owner's row alone, share locking it keeps an aggregate
+        // rebuild from reading the owner's tasks until this one is committed
+        UserData userData = (async ? userDataRepository.findByIdForShare(ownerId) : userDataRepository.findById(ownerId))
+                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", ownerId));
+
+        if (taskData.getExpDuration() == 0) {
+            throw new InvalidArithmeticException("TaskData", "expDuration", "0");
+        }
+
+        if (async) {
+            tagStatisticsService.seedTagStatistics(ownerId, taskData);
+            taskData.setOwner(userData);
+
+            TaskData newTaskData = taskDataRepository.save(taskData);
+            aggregateDeltaWorker.record(ownerId, newTaskData, false);
+            taskTagIndexService.tasksSaved(ownerId, Collections.singletonList(newTaskData));
+            return newTaskData;
+        }
+
+        tagStatisticsService.addTaskData(ownerId, taskData);
+        teamRollupService.addTaskData(ownerId, taskData);
+
+        userData.addTaskData(taskData);
+        taskData.setOwner(userData);
+
+        TaskData newTaskData = taskDataRepository.save(taskData);
+        userDataRepository.save(userData);
+        userDataCache.evict(ownerId);
+        taskTagIndexService.tasksSaved(ownerId, Collections.singletonList(newTaskData));
+
+        return newTaskData;
+    }
+
+    /**
+     * Creates many tasks across many users. Each owner's aggregates and tag statistics are
+     * updated once for all of its tasks, and the task rows are inserted in JDBC batches.
+     * @param tasksByOwner new tasks grouped by the UUID of their owning UserData
+     * @return the UUIDs of the created tasks grouped by owner
+     * @throws InvalidParameterException if an owner's task list is null or contains null
+     */
+    public Map<UUID, List<UUID>> createTaskDataBatch(Map<UUID, List<TaskData>> tasksByOwner) {
+        Set<String> tags = new HashSet<>();
+        for (Map.Entry<UUID, List<TaskData>> entry : tasksByOwner.entrySet()) {
+            if (entry.getValue() == null || entry.getValue().contains(null)) {
+                throw new InvalidParameterException(entry.getKey().toString(), entry.getValue());
+            }
+            for (TaskData taskData : entry.getValue()) {
+                validate(taskData);
+                if (taskData.getTags() != null) {
+                    tags.addAll(taskData.getTags());
+                }
+            }
+        }
+        tagDictionary.intern(tags);
+
+        Collection<UUID> lockedUsers = async ? Collections.<UUID>emptySet() : tasksByOwner.keySet();
+        return userDataWriteExecutor.execute(lockedUsers, () -> {
+            Map<UUID, List<TaskData>> copies = new LinkedHashMap<>();
+            for (Map.Entry<UUID, List<TaskData>> entry : tasksByOwner.entrySet()) {
+                List<TaskData> tasks = new ArrayList<>(entry.getValue().size());
+                for (TaskData taskData : entry.getValue()) {
+                    tasks.add(copyOf(taskData));
+                }
+                copies.put(entry.getKey(), tasks);
+            }
+            return insertTaskDataBatch(copies);
+        });
+    }
+
+    private Map<UUID, List<UUID>> insertTaskDataBatch(Map<UUID, List<TaskData>> tasksByOwner) {
+        Map<UUID, UserData> owners = new HashMap<>();
+        List<UserData> found = async && !tasksByOwner.isEmpty()
+                ? userDataRepository.findAllByIdForShare(tasksByOwner.keySet())
+                : userDataRepository.findAllById(tasksByOwner.keySet());
+        for (UserData userData : found) {
+            owners.put(userData.getId(), userData);
+        }
+        for (UUID ownerId : tasksByOwner.keySet()) {
+            if (!owners.containsKey(ownerId)) {
+                throw new ResourceNotFoundException("UserData", "id", ownerId);
+            }
+        }
+
+        // Aggregates first, while no new task row has been flushed
+        for (Map.Entry<UUID, List<TaskData>> entry : tasksByOwner.entrySet()) {
+            if (async) {
+                for (TaskData taskData : entry.getValue()) {
+                    tagStatisticsService.seedTagStatistics(entry.getKey(), taskData);
+                }
+                continue;
+            }
+
+            UserData userData = owners.get(entry.getKey());
+            tagStatisticsService.addTaskDataBatch(entry.getKey(), entry.getValue());
+
+            AggregateAccumulator added = new AggregateAccumulator();
+            for (TaskData taskData : entry.getValue()) {
+                added.add(taskData.getExpDuration(), taskData.getActualDuration());
+            }
+            teamRollupService.addTaskDataBatch(entry.getKey(), added);
+
+            AggregateAccumulator accumulator = userData.toAccumulator();
+            accumulator.merge(added);
+            userData.applyAccumulator(accumulator);
+        }
+        userDataCache.evictAll(new ArrayList<>(owners.keySet()));
+
+        Map<UUID, List<UUID>> createdIds = new HashMap<>();
+        int pending = 0;
+        for (Map.Entry<UUID, List<TaskData>> entry : tasksByOwner.entrySet()) {
+            List<UUID> ids = new ArrayList<>(entry.getValue().size());
+            for (TaskData taskData : entry.getValue()) {
+                taskData.setOwner(entityManager.getReference(UserData.class, entry.getKey()));
+                entityManager.persist(taskData);
+                ids.add(taskData.getTaskId());
+                if (async) {
+                    aggregateDeltaWorker.record(entry.getKey(), taskData, false);
+                }
+
+                // Keep the persistence context small, each flush is sent as JDBC batches
+                if (++pending % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            createdIds.put(entry.getKey(), ids);
+            taskTagIndexService.tasksSaved(entry.getKey(), entry.getValue());
+        }
+
+        return createdIds;
+    }
+
+    /**
+     * Replaces the durations and tags of an existing task
+     * @param id the UUID of the task
+     * @param taskDataDetails the new task values
+     * @return the updated task
+     */
+    public TaskData updateTaskData(UUID id, TaskData taskDataDetails) {
+        UUID ownerId = findOwnerId(id);
+        tagDictionary.intern(taskDataDetails.getTags());
+        return userDataWriteExecutor.execute(lockedUsers(ownerId), () -> replaceTaskData(id, copyOf(taskDataDetails)));
+    }
+
+    private TaskData replaceTaskData(UUID id, TaskData taskDataDetails) {
+        TaskData taskData = taskDataRepository.findById(id)
+                .orElseThrow( () -> new ResourceNotFoundException("TaskData", "id", id));
+
+        UserData userData = userDataRepository.findById(taskData.getOwner().getId())
+                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
+
+        if (taskDataDetails.getExpDuration() == 0) {
+            throw new InvalidArithmeticException("TaskData", "expDuration", "0");
+        }
+
+        if (async) {
+            // Seed tag rows while the task row still holds its old values
+            tagStatisticsService.seedTagStatistics(userData.getId(), taskData);
+            tagStatisticsService.seedTagStatistics(userData.getId(), taskDataDetails);
+            aggregateDeltaWorker.record(userData.getId(), taskData, true);
+            aggregateDeltaWorker.record(userData.getId(), taskDataDetails, false);
+
+            taskData.setActualDuration(taskDataDetails.getActualDuration());
+            taskData.setExpDuration(taskDataDetails.getExpDuration());
+            setTags(taskData, taskDataDetails.getTags());
+            TaskData updatedTaskData = taskDataRepository.save(taskData);
+            taskTagIndexService.tasksSaved(userData.getId(), Collections.singletonList(updatedTaskData));
+            return updatedTaskData;
+        }
+
+        // Swap tag statistics before the task row changes
+        tagStatisticsService.subtractTaskData(userData.getId(), taskData);
+        tagStatisticsService.addTaskData(userData.getId(), taskDataDetails);
+        teamRollupService.subtractTaskData(userData.getId(), taskData);
+        teamRollupService.addTaskData(userData.getId(), taskDataDetails);
+
+        // Remove old taskData impact on userData
+        userData.subtractTaskData(taskData);
+
+        taskData.setActualDuration(taskDataDetails.getActualDuration());
+        taskData.setExpDuration(taskDataDetails.getExpDuration());
+        taskData.setOwner(userData);
+        setTags(taskData, taskDataDetails.getTags());
+
+        // Add new taskData impact on userData
+        userData.addTaskData(taskData);
+
+        userDataRepository.save(userData);
+        userDataCache.evict(userData.getId());
+        TaskData updatedTaskData = taskDataRepository.save(taskData);
+        taskTagIndexService.tasksSaved(userData.getId(), Collections.singletonList(updatedTaskData));
+        return updatedTaskData;
+    }
+
+    private UUID findOwnerId(UUID taskId) {
+        return taskDataRepository.findOwnerIdByTaskId(taskId)
+                .orElseThrow( () -> new ResourceNotFoundException("TaskData", "id", taskId));
+    }
+
+    // Asynchronous writes never update the owner's row, so they need no lock
+    private Collection<UUID> lockedUsers(UUID ownerId) {
+        return async ? Collections.<UUID>emptySet() : Collections.singleton(ownerId);
+    }
+
+    // A retried write starts again from the request, not from entities of the rolled back attempt
+    private TaskData copyOf(TaskData taskData) {
+        TaskData copy = new TaskData();
+        copy.setExpDuration(taskData.getExpDuration());
+        copy.setActualDuration(taskData.getActualDuration());
+        setTags(copy, taskData.getTags());
+        return copy;
+    }
+
+    private void setTags(TaskData taskData, List<String> tags) {
+        taskData.setTags((tags == null) ? null : TagDictionary.distinct(tags));
+        taskData.setTagEntries(tagDictionary.getReferences(tags));
+    }
+
+    private void validate(TaskData taskData) {
+        Set<ConstraintViolation<TaskData>> violations = validator.validate(taskData);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<TaskData> violation = violations.iterator().next();
+            throw new InvalidParameterException(violation.getPropertyPath().toString(), violation.getInvalidValue());
+        }
+
+        if (taskData.getExpDuration() == 0) {
+            throw new InvalidArithmeticException("TaskData", "expDuration", "0");
+        }
+    }
+
+    /**
+     * Deletes a task and removes it from its owner's aggregates
+     * @param id the UUID of the task
+     */
+    public void deleteTaskData(UUID id) {
+        UUID ownerId = findOwnerId(id);
+        userDataWriteExecutor.execute(lockedUsers(ownerId), () -> {
+            removeTaskData(id);
+            return null;
+        });
+    }
+
+    private void removeTaskData(UUID id) {
+        TaskData taskData = taskDataRepository.findById(id)
+                .orElseThrow( () -> new ResourceNotFoundException("TaskData", "id", id));
+
+        UserData userData = userDataRepository.findById(taskData.getOwner().getId())
+                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", id));
+
+        if (async) {
+            tagStatisticsService.seedTagStatistics(userData.getId(), taskData);
+            aggregateDeltaWorker.record(userData.getId(), taskData, true);
+            taskDataRepository.delete(taskData);
+            taskTagIndexService.taskDeleted(userData.getId(), id);
+            return;
+        }
+
+        tagStatisticsService.subtractTaskData(userData.getId(), taskData);
+        teamRollupService.subtractTaskData(userData.getId(), taskData);
+
+        userData.removeTaskData(taskData);
+
+        userDataRepository.save(userData);
+        userDataCache.evict(userData.getId());
+        taskDataRepository.delete(taskData);
+        taskTagIndexService.taskDeleted(userData.getId(), id);
+    }
+}
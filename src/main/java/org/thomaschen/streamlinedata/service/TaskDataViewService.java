@@ -0,0 +1,49 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import org.thomaschen.streamlinedata.model.TaskDataView;
+import org.thomaschen.streamlinedata.model.TaskTag;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Completes task read models with their tags. Tags of a whole list of tasks are loaded
+ * with one query per chunk instead of one collection load per task.
+ */
+@Service
+@Transactional(readOnly = true)
+public class TaskDataViewService {
+
+    static final int TAG_QUERY_CHUNK = 1000;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    /**
+     * Adds each task's tags to its view
+     * @param views task views without tags
+     * @return the same views
+     */
+    public List<TaskDataView> withTags(List<TaskDataView> views) {
+        for (int from = 0; from < views.size(); from += TAG_QUERY_CHUNK) {
+            List<TaskDataView> chunk = views.subList(from, Math.min(from + TAG_QUERY_CHUNK, views.size()));
+
+            Map<UUID, TaskDataView> byId = new HashMap<>();
+            for (TaskDataView view : chunk) {
+                byId.put(view.getTaskId(), view);
+            }
+
+            for (TaskTag taskTag : taskDataRepository.findTagsByTaskIdIn(byId.keySet())) {
+                byId.get(taskTag.getTaskId()).addTag(taskTag.getTag());
+            }
+        }
+        return views;
+    }
+}
@@ -0,0 +1,277 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TaskDataView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * In-memory index of one user's tasks, for evaluating tag expressions.
+ *
+ * Tasks are numbered in createdAt order, and their columns are kept in arrays indexed by
+ * that ordinal. Each tag maps to a compressed bitmap of the ordinals of its tasks, so an
+ * expression is evaluated as intersections, unions and differences of bitmaps, and the
+ * tasks it selects are read back oldest first. A deleted task keeps its ordinal and is only
+ * cleared from the bitmaps, until the index is next loaded.
+ */
+final class TaskTagIndex {
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private UUID[] taskIds;
+    private long[] createdAt;
+    private long[] expDurations;
+    private long[] actualDurations;
+    private int size = 0;
+
+    private final Map<UUID, Integer> ordinals;
+
+    /**
+     * Ordinals of the tasks not deleted
+     */
+    private final RoaringBitmap live = new RoaringBitmap();
+
+    /**
+     * Ordinals of the tasks with each tag, sorted by tag so views list their tags in order
+     */
+    private final Map<String, RoaringBitmap> tagBitmaps = new TreeMap<>();
+
+    TaskTagIndex(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        taskIds = new UUID[capacity];
+        createdAt = new long[capacity];
+        expDurations = new long[capacity];
+        actualDurations = new long[capacity];
+        ordinals = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * Appends a task newer than every indexed task, without tags
+     * @param taskId the UUID of the task
+     * @param createdAt creation time of the task in epoch milliseconds
+     * @param expDuration expected duration of the task
+     * @param actualDuration actual duration of the task
+     */
+    synchronized void append(UUID taskId, long createdAt, long expDuration, long actualDuration) {
+        if (size == taskIds.length) {
+            int capacity = size + (size >> 1);
+            taskIds = Arrays.copyOf(taskIds, capacity);
+            this.createdAt = Arrays.copyOf(this.createdAt, capacity);
+            expDurations = Arrays.copyOf(expDurations, capacity);
+            actualDurations = Arrays.copyOf(actualDurations, capacity);
+        }
+
+        taskIds[size] = taskId;
+        this.createdAt[size] = createdAt;
+        expDurations[size] = expDuration;
+        actualDurations[size] = actualDuration;
+        ordinals.put(taskId, size);
+        live.add(size);
+        size++;
+    }
+
+    /**
+     * Adds a tag to an indexed task
+     * @param taskId the UUID of the task, ignored if not indexed
+     * @param tag the tag
+     */
+    synchronized void addTag(UUID taskId, String tag) {
+        Integer ordinal = ordinals.get(taskId);
+        if (ordinal != null) {
+            tagBitmaps.computeIfAbsent(tag, key -> new RoaringBitmap()).add(ordinal);
+        }
+    }
+
+    /**
+     * Adds a new task, or replaces the durations and tags of an indexed one
+     * @param task the task
+     * @return false if the task is new but older than the newest indexed task, so cannot be added in order
+     */
+    synchronized boolean put(IndexedTask task) {
+        Integer ordinal = ordinals.get(task.taskId);
+        if (ordinal == null) {
+            if (size > 0 && task.createdAt < createdAt[size - 1]) {
+                return false;
+            }
+            append(task.taskId, task.createdAt, task.expDuration, task.actualDuration);
+        } else {
+            expDurations[ordinal] = task.expDuration;
+            actualDurations[ordinal] = task.actualDuration;
+            untag(ordinal);
+        }
+
+        for (String tag : task.tags) {
+            addTag(task.taskId, tag);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a task
+     * @param taskId the UUID of the task, ignored if not indexed
+     */
+    synchronized void remove(UUID taskId) {
+        Integer ordinal = ordinals.remove(taskId);
+        if (ordinal != null) {
+            live.remove(ordinal);
+            untag(ordinal);
+        }
+    }
+
+    /**
+     * @return the number of ordinals held, including those of deleted tasks
+     */
+    synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Sums the statistics of the tasks an expression selects
+     * @param expression the tag expression
+     * @return the accumulated statistics
+     */
+    synchronized AggregateAccumulator accumulate(TagExpression expression) {
+        AggregateAccumulator accumulator = new AggregateAccumulator();
+        IntIterator selected = evaluate(expression).getIntIterator();
+        while (selected.hasNext()) {
+            int ordinal = selected.next();
+            accumulator.add(expDurations[ordinal], actualDurations[ordinal]);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Copies the time series columns of the tasks an expression selects, so they can be
+     * written without holding the index
+     * @param expression the tag expression
+     * @return the selected tasks, oldest first
+     */
+    synchronized Selection select(TagExpression expression) {
+        RoaringBitmap selected = evaluate(expression);
+        Selection selection = new Selection(selected.getCardinality());
+
+        IntIterator ordinals = selected.getIntIterator();
+        for (int i = 0; ordinals.hasNext(); i++) {
+            int ordinal = ordinals.next();
+            selection.createdAt[i] = createdAt[ordinal];
+            selection.expDurations[i] = expDurations[ordinal];
+            selection.actualDurations[i] = actualDurations[ordinal];
+        }
+        return selection;
+    }
+
+    /**
+     * Builds the views of the tasks an expression selects, with their tags
+     * @param ownerId the UUID of the owning UserData
+     * @param expression the tag expression
+     * @return the selected tasks, oldest first
+     */
+    synchronized List<TaskDataView> views(UUID ownerId, TagExpression expression) {
+        RoaringBitmap selected = evaluate(expression);
+        List<TaskDataView> views = new ArrayList<>(selected.getCardinality());
+
+        IntIterator ordinals = selected.getIntIterator();
+        while (ordinals.hasNext()) {
+            int ordinal = ordinals.next();
+            Calendar created = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            created.setTimeInMillis(createdAt[ordinal]);
+            views.add(new TaskDataView(taskIds[ordinal], created, ownerId,
+                    expDurations[ordinal], actualDurations[ordinal]));
+        }
+
+        for (Map.Entry<String, RoaringBitmap> entry : tagBitmaps.entrySet()) {
+            IntIterator tagged = RoaringBitmap.and(entry.getValue(), selected).getIntIterator();
+            while (tagged.hasNext()) {
+                // rank counts the selected ordinals up to and including this one
+                views.get(selected.rank(tagged.next()) - 1).addTag(entry.getKey());
+            }
+        }
+        return views;
+    }
+
+    private RoaringBitmap evaluate(TagExpression expression) {
+        return expression.evaluate(tag -> tagBitmaps.getOrDefault(tag, EMPTY), live);
+    }
+
+    private void untag(int ordinal) {
+        Iterator<RoaringBitmap> bitmaps = tagBitmaps.values().iterator();
+        while (bitmaps.hasNext()) {
+            RoaringBitmap bitmap = bitmaps.next();
+            if (bitmap.checkedRemove(ordinal) && bitmap.isEmpty()) {
+                bitmaps.remove();
+            }
+        }
+    }
+
+    /**
+     * Index columns of a task, copied when the task is written
+     */
+    static final class IndexedTask {
+        private final UUID taskId;
+        private final long createdAt;
+        private final long expDuration;
+        private final long actualDuration;
+        private final List<String> tags;
+
+        IndexedTask(UUID taskId, long createdAt, long expDuration, long actualDuration, List<String> tags) {
+            this.taskId = taskId;
+            this.createdAt = createdAt;
+            this.expDuration = expDuration;
+            this.actualDuration = actualDuration;
+            this.tags = tags;
+        }
+
+        static IndexedTask of(TaskData taskData) {
+            List<String> tags = (taskData.getTags() == null)
+                    ? Collections.<String>emptyList()
+                    : new ArrayList<>(taskData.getTags());
+            return new IndexedTask(taskData.getTaskId(), taskData.getCreatedAt().getTimeInMillis(),
+                    taskData.getExpDuration(), taskData.getActualDuration(), tags);
+        }
+    }
+
+    /**
+     * Time series columns of selected tasks, oldest first
+     */
+    static final class Selection {
+        private final long[] createdAt;
+        private final long[] expDurations;
+        private final long[] actualDurations;
+
+        Selection(int size) {
+            createdAt = new long[size];
+            expDurations = new long[size];
+            actualDurations = new long[size];
+        }
+
+        int size() {
+            return createdAt.length;
+        }
+
+        long getCreatedAt(int i) {
+            return createdAt[i];
+        }
+
+        long getExpDuration(int i) {
+            return expDurations[i];
+        }
+
+        long getActualDuration(int i) {
+            return actualDurations[i];
+        }
+    }
+}
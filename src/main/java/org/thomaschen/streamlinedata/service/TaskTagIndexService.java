@@ -0,0 +1,192 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TaskDataView;
+import org.thomaschen.streamlinedata.model.TaskTag;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates tag expressions over bounded in-process indexes of users' tasks, see TaskTagIndex.
+ *
+ * An index is loaded with two queries on the first expression evaluated for its user, and
+ * task writes on this node are applied to a loaded index once they commit. A write the
+ * index cannot apply in place evicts it instead. Writes made on other nodes are picked up
+ * when the index expires, a fixed time after it was loaded.
+ */
+@Service
+public class TaskTagIndexService {
+
+    public static final String INDEXES = "taskTagIndexes";
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${streamline.cache.tag-index.maximum-tasks:1000000}")
+    long maximumTasks;
+
+    @Value("${streamline.cache.tag-index.expire-after-load-seconds:300}")
+    long expireAfterLoadSeconds;
+
+    private GuardedCache<UUID, TaskTagIndex> indexes;
+
+    @PostConstruct
+    void init() {
+        long expireAfterLoadNanos = TimeUnit.SECONDS.toNanos(expireAfterLoadSeconds);
+        indexes = new GuardedCache<>(Caffeine.newBuilder()
+                .maximumWeight(maximumTasks)
+                .<UUID, TaskTagIndex>weigher((ownerId, index) -> index.getSize() + 1)
+                .expireAfter(new Expiry<UUID, TaskTagIndex>() {
+                    @Override
+                    public long expireAfterCreate(UUID ownerId, TaskTagIndex index, long currentTime) {
+                        return expireAfterLoadNanos;
+                    }
+
+                    // Applying a write must not extend the life of an index, or writes from other nodes are never seen
+                    @Override
+                    public long expireAfterUpdate(UUID ownerId, TaskTagIndex index, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID ownerId, TaskTagIndex index, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build());
+    }
+
+    /**
+     * Sums the statistics of a user's tasks selected by a tag expression
+     * @param ownerId the UUID of the owning UserData
+     * @param expression the tag expression
+     * @return the accumulated statistics
+     */
+    public AggregateAccumulator accumulate(UUID ownerId, TagExpression expression) {
+        return getIndex(ownerId).accumulate(expression);
+    }
+
+    /**
+     * Finds a user's tasks selected by a tag expression
+     * @param ownerId the UUID of the owning UserData
+     * @param expression the tag expression
+     * @return views of the selected tasks with their tags, oldest first
+     */
+    public List<TaskDataView> findViews(UUID ownerId, TagExpression expression) {
+        return getIndex(ownerId).views(ownerId, expression);
+    }
+
+    /**
+     * Copies the time series columns of a user's tasks selected by a tag expression
+     * @param ownerId the UUID of the owning UserData
+     * @param expression the tag expression
+     * @return the selected tasks, oldest first
+     */
+    TaskTagIndex.Selection select(UUID ownerId, TagExpression expression) {
+        return getIndex(ownerId).select(expression);
+    }
+
+    /**
+     * Applies created or updated tasks to their owner's index once the current transaction commits
+     * @param ownerId the UUID of the owning UserData
+     * @param tasks the saved tasks
+     */
+    public void tasksSaved(UUID ownerId, Collection<TaskData> tasks) {
+        // Copied now, the entities may be changed or cleared before the commit
+        List<TaskTagIndex.IndexedTask> indexed = new ArrayList<>(tasks.size());
+        for (TaskData taskData : tasks) {
+            indexed.add(TaskTagIndex.IndexedTask.of(taskData));
+        }
+
+        TransactionCallbacks.afterCommit(() -> indexes.update(ownerId, (key, index) -> {
+            for (TaskTagIndex.IndexedTask task : indexed) {
+                if (!index.put(task)) {
+                    return null;
+                }
+            }
+            return index;
+        }));
+    }
+
+    /**
+     * Removes a deleted task from its owner's index once the current transaction commits
+     * @param ownerId the UUID of the owning UserData
+     * @param taskId the UUID of the deleted task
+     */
+    public void taskDeleted(UUID ownerId, UUID taskId) {
+        TransactionCallbacks.afterCommit(() -> indexes.update(ownerId, (key, index) -> {
+            index.remove(taskId);
+            return index;
+        }));
+    }
+
+    /**
+     * Evicts the index of a deleted user
+     * @param ownerId the UUID of the UserData
+     */
+    public void evict(UUID ownerId) {
+        indexes.invalidate(ownerId);
+        TransactionCallbacks.afterCommit(() -> indexes.invalidate(ownerId));
+    }
+
+    /**
+     * Evicts every index, used after bulk deletes
+     */
+    public void clear() {
+        indexes.invalidateAll();
+        TransactionCallbacks.afterCommit(indexes::invalidateAll);
+    }
+
+    /**
+     * @return size and hit statistics of the index cache
+     */
+    public CacheStatus getStatus() {
+        return new CacheStatus(INDEXES, indexes.getCache());
+    }
+
+    Cache<UUID, TaskTagIndex> getIndexes() {
+        return indexes.getCache();
+    }
+
+    private TaskTagIndex getIndex(UUID ownerId) {
+        return indexes.get(ownerId, this::load);
+    }
+
+    // Both queries read one snapshot, so no tag row refers to a task the first query missed
+    private TaskTagIndex load(UUID ownerId) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> {
+            List<TaskDataView> views = taskDataRepository.findViewsByOwnerId(ownerId);
+            TaskTagIndex index = new TaskTagIndex(views.size());
+            for (TaskDataView view : views) {
+                index.append(view.getTaskId(), view.getCreatedAt().getTimeInMillis(),
+                        view.getExpDuration(), view.getActualDuration());
+            }
+            for (TaskTag taskTag : taskDataRepository.findTagsByOwnerId(ownerId)) {
+                index.addTag(taskTag.getTaskId(), taskTag.getTag());
+            }
+            return index;
+        });
+    }
+}
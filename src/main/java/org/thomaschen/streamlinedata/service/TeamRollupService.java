@@ -0,0 +1,228 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TeamMembership;
+import org.thomaschen.streamlinedata.model.TeamMembershipId;
+import org.thomaschen.streamlinedata.model.TeamRollup;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TeamMembershipRepository;
+import org.thomaschen.streamlinedata.repository.TeamRollupRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Maintains team memberships and the per-team rollup of every member's tasks.
+ *
+ * Member task writes are applied to the rollups of the member's teams as deltas. Changes
+ * that cannot be expressed as a delta, such as removing a member or overwriting a member's
+ * averages, recompute the affected rollups from the member rows. Rollups that do not exist
+ * are computed from the member rows when read, and stored by the next write that recomputes them.
+ *
+ * Membership changes and recomputes lock the member rows and increment their versions, so a
+ * concurrent member task write that looked up the member's rollups before the change fails its
+ * version check and is replayed against the new memberships.
+ */
+@Service
+@Transactional
+public class TeamRollupService {
+
+    @Autowired
+    TeamMembershipRepository teamMembershipRepository;
+
+    @Autowired
+    TeamRollupRepository teamRollupRepository;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    /**
+     * @param teamId the UUID of the team
+     * @return the UUIDs of the team's members
+     */
+    public List<UUID> getMemberIds(UUID teamId) {
+        findTeam(teamId);
+        return teamMembershipRepository.findMemberIdsByTeamId(teamId);
+    }
+
+    /**
+     * Adds a user to a team and its tasks to the team's rollup
+     * @param teamId the UUID of the team
+     * @param memberId the UUID of the new member
+     * @return the team's rollup
+     */
+    public TeamRollup addMember(UUID teamId, UUID memberId) {
+        findTeam(teamId);
+        if (teamId.equals(memberId)) {
+            throw new InvalidParameterException("memberId", memberId);
+        }
+        TeamMembershipId id = new TeamMembershipId(teamId, memberId);
+        if (teamMembershipRepository.existsById(id)) {
+            return getRollup(teamId);
+        }
+
+        UserData member = lockMembers(Collections.singletonList(memberId)).stream()
+                .findFirst()
+                .orElseThrow( () -> new ResourceNotFoundException("UserData", "id", memberId));
+        UserDataWriteExecutor.insertContended(teamMembershipRepository, new TeamMembership(teamId, memberId));
+
+        TeamRollup rollup = teamRollupRepository.findByIdForUpdate(teamId).orElse(null);
+        if (rollup == null) {
+            return recompute(teamId);
+        }
+        rollup.addMember(member.toAccumulator());
+        return teamRollupRepository.save(rollup);
+    }
+
+    /**
+     * Removes a user from a team and recomputes the team's rollup
+     * @param teamId the UUID of the team
+     * @param memberId the UUID of the member
+     */
+    public void removeMember(UUID teamId, UUID memberId) {
+        TeamMembershipId id = new TeamMembershipId(teamId, memberId);
+        if (!teamMembershipRepository.existsById(id)) {
+            throw new ResourceNotFoundException("TeamMembership", "memberId", memberId);
+        }
+
+        teamMembershipRepository.deleteById(id);
+        recompute(teamId);
+    }
+
+    /**
+     * Gets a team's rollup, computing it from the member rows without storing it if it does not exist
+     * @param teamId the UUID of the team
+     * @return the team's rollup
+     */
+    @Transactional(readOnly = true)
+    public TeamRollup getRollup(UUID teamId) {
+        findTeam(teamId);
+        return teamRollupRepository.findById(teamId).orElseGet(() -> {
+            List<UUID> memberIds = teamMembershipRepository.findMemberIdsByTeamId(teamId);
+            TeamRollup rollup = new TeamRollup(teamId);
+            rollup.replace(memberIds.size(), sum(userDataRepository.findAllById(memberIds)));
+            return rollup;
+        });
+    }
+
+    /**
+     * Adds a member's new task to the rollups of the member's teams
+     * @param memberId the UUID of the owning UserData
+     * @param taskData the task data to be added
+     */
+    public void addTaskData(UUID memberId, TaskData taskData) {
+        for (TeamRollup rollup : findRollups(memberId)) {
+            rollup.getStatistics().add(taskData.getExpDuration(), taskData.getActualDuration());
+            teamRollupRepository.save(rollup);
+        }
+    }
+
+    /**
+     * Removes a member's task from the rollups of the member's teams
+     * @param memberId the UUID of the owning UserData
+     * @param taskData the task data to be removed
+     */
+    public void subtractTaskData(UUID memberId, TaskData taskData) {
+        for (TeamRollup rollup : findRollups(memberId)) {
+            rollup.getStatistics().remove(taskData.getExpDuration(), taskData.getActualDuration());
+            teamRollupRepository.save(rollup);
+        }
+    }
+
+    /**
+     * Adds many new tasks of one member to the rollups of the member's teams
+     * @param memberId the UUID of the owning UserData
+     * @param tasks statistics of the new tasks
+     */
+    public void addTaskDataBatch(UUID memberId, AggregateAccumulator tasks) {
+        for (TeamRollup rollup : findRollups(memberId)) {
+            rollup.getStatistics().merge(tasks);
+            teamRollupRepository.save(rollup);
+        }
+    }
+
+    /**
+     * Applies an update to the existing rollups of a member's teams
+     * @param memberId the UUID of the owning UserData
+     * @param update the change to apply to each rollup's statistics
+     */
+    public void applyToRollups(UUID memberId, Consumer<AggregateAccumulator> update) {
+        for (TeamRollup rollup : findRollups(memberId)) {
+            update.accept(rollup.getStatistics());
+            teamRollupRepository.save(rollup);
+        }
+    }
+
+    /**
+     * Recomputes the rollups of a member's teams after its aggregates were overwritten
+     * @param memberId the UUID of the member
+     */
+    public void memberChanged(UUID memberId) {
+        for (UUID teamId : teamMembershipRepository.findTeamIdsByMemberId(memberId)) {
+            recompute(teamId);
+        }
+    }
+
+    /**
+     * @return the UUIDs of every team with at least one member
+     */
+    @Transactional(readOnly = true)
+    public List<UUID> getTeamIds() {
+        return teamMembershipRepository.findTeamIds();
+    }
+
+    /**
+     * Recomputes a team's rollup from the member rows, storing it if it did not exist
+     * @param teamId the UUID of the team
+     * @return the team's rollup
+     */
+    public TeamRollup recompute(UUID teamId) {
+        List<UUID> memberIds = teamMembershipRepository.findMemberIdsByTeamId(teamId);
+        AggregateAccumulator statistics = sum(lockMembers(memberIds));
+
+        // A locking read sees a rollup another recompute inserted after this transaction began
+        TeamRollup rollup = teamRollupRepository.findByIdForUpdate(teamId).orElse(null);
+        if (rollup == null) {
+            rollup = new TeamRollup(teamId);
+            rollup.replace(memberIds.size(), statistics);
+            return UserDataWriteExecutor.insertContended(teamRollupRepository, rollup);
+        }
+        rollup.replace(memberIds.size(), statistics);
+        return teamRollupRepository.save(rollup);
+    }
+
+    private List<UserData> lockMembers(List<UUID> memberIds) {
+        if (memberIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return userDataRepository.findAllByIdForUpdate(memberIds);
+    }
+
+    private static AggregateAccumulator sum(Iterable<UserData> members) {
+        AggregateAccumulator statistics = new AggregateAccumulator();
+        for (UserData member : members) {
+            statistics.merge(member.toAccumulator());
+        }
+        return statistics;
+    }
+
+    private List<TeamRollup> findRollups(UUID memberId) {
+        return teamRollupRepository.findAllById(teamMembershipRepository.findTeamIdsByMemberId(memberId));
+    }
+
+    private void findTeam(UUID teamId) {
+        if (!userDataRepository.existsById(teamId)) {
+            throw new ResourceNotFoundException("Team", "id", teamId);
+        }
+    }
+}
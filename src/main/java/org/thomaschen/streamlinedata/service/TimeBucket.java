@@ -0,0 +1,47 @@
+package org.thomaschen.streamlinedata.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calendar buckets (UTC) a time series can be aggregated into.
+ */
+public enum TimeBucket {
+    HOUR,
+    DAY,
+    WEEK;
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Finds the start of the bucket containing a timestamp. Weeks start on Monday.
+     * @param timestamp epoch milliseconds
+     * @return epoch milliseconds of the bucket start
+     */
+    public long bucketStart(long timestamp) {
+        switch (this) {
+            case HOUR:
+                return Math.floorDiv(timestamp, HOUR_MILLIS) * HOUR_MILLIS;
+            case DAY:
+                return Math.floorDiv(timestamp, DAY_MILLIS) * DAY_MILLIS;
+            default:
+                // 1970-01-01 was a Thursday, shift by 3 days so weeks begin on Monday
+                long epochDay = Math.floorDiv(timestamp, DAY_MILLIS);
+                return (Math.floorDiv(epochDay + 3, 7) * 7 - 3) * DAY_MILLIS;
+        }
+    }
+
+    /**
+     * Parses a bucket name case-insensitively
+     * @param name hour, day or week
+     * @return the matching bucket, or null if the name is unknown
+     */
+    public static TimeBucket fromName(String name) {
+        for (TimeBucket bucket : values()) {
+            if (bucket.name().equalsIgnoreCase(name)) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+}
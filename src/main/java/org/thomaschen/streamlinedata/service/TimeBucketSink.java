@@ -0,0 +1,44 @@
+package org.thomaschen.streamlinedata.service;
+
+import java.io.IOException;
+
+/**
+ * Collapses a running series into one point per time bucket. Each bucket is reported at
+ * its start time with the last value seen inside it, which for a running average is the
+ * value at the end of that bucket.
+ */
+public class TimeBucketSink implements TimeSeriesSink {
+
+    private final TimeBucket bucket;
+    private final TimeSeriesSink downstream;
+
+    private boolean hasPoint = false;
+    private long currentBucketStart;
+    private double currentValue;
+
+    public TimeBucketSink(TimeBucket bucket, TimeSeriesSink downstream) {
+        this.bucket = bucket;
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void accept(long timestamp, double value) throws IOException {
+        long bucketStart = bucket.bucketStart(timestamp);
+
+        if (hasPoint && bucketStart != currentBucketStart) {
+            downstream.accept(currentBucketStart, currentValue);
+        }
+
+        hasPoint = true;
+        currentBucketStart = bucketStart;
+        currentValue = value;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (hasPoint) {
+            downstream.accept(currentBucketStart, currentValue);
+        }
+        downstream.finish();
+    }
+}
@@ -0,0 +1,112 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import org.thomaschen.streamlinedata.model.TaskDataPoint;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Writes the running task estimation factor of a user as a JSON time series.
+ * Rows are streamed from the database and written straight to the output, so memory
+ * use does not depend on how many tasks the user owns. Series filtered by a tag expression
+ * combining several tags are read from the user's tag index instead.
+ */
+@Service
+public class TimeSeriesService {
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    TagDictionary tagDictionary;
+
+    @Autowired
+    TaskTagIndexService taskTagIndexService;
+
+    /**
+     * Writes [{"value": runningEstFactor, "name": createdAt}, ...] for the user's tasks, oldest first
+     * @param ownerId the UUID of the owning UserData
+     * @param tags optional tag expression to restrict the series to, null for all tasks
+     * @param bucket optional calendar bucket to aggregate points into, null for one point per task
+     * @param maxPoints optional upper bound on the number of points written, null for no limit
+     * @param out the stream the JSON array is written to
+     * @throws IOException if writing to the output fails
+     */
+    @Transactional(readOnly = true)
+    public void writeTimeSeries(UUID ownerId, TagExpression tags, TimeBucket bucket, Integer maxPoints,
+                                OutputStream out) throws IOException {
+        // Closed only on success: closing would end the array, turning a failed query into a valid, short series
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        TimeSeriesSink sink = new JsonTimeSeriesSink(generator);
+
+        // Single tags are filtered by the database, combinations of tags by the tag index
+        TaskTagIndex.Selection selection = (tags != null && tags.getTag() == null)
+                ? taskTagIndexService.select(ownerId, tags)
+                : null;
+        Integer tagId = (tags == null || selection != null) ? null : tagDictionary.getId(tags.getTag());
+
+        if (bucket != null) {
+            sink = new TimeBucketSink(bucket, sink);
+        } else if (maxPoints != null) {
+            long totalPoints;
+            if (selection != null) {
+                totalPoints = selection.size();
+            } else if (tagId == null) {
+                totalPoints = taskDataRepository.countByOwnerId(ownerId);
+            } else {
+                totalPoints = taskDataRepository.countByOwnerIdAndTagId(ownerId, tagId);
+            }
+            sink = new LargestTriangleThreeBucketsSink(totalPoints, maxPoints, sink);
+        }
+
+        if (selection != null) {
+            writeRunningEstFactor(selection, sink);
+        } else {
+            writeRunningEstFactor(ownerId, tagId, sink);
+        }
+        generator.close();
+    }
+
+    private void writeRunningEstFactor(UUID ownerId, Integer tagId, TimeSeriesSink sink) throws IOException {
+        try (Stream<TaskDataPoint> points = (tagId == null)
+                ? taskDataRepository.streamPointsByOwnerId(ownerId)
+                : taskDataRepository.streamPointsByOwnerIdAndTagId(ownerId, tagId)) {
+
+            double estFactorSum = 0.0;
+            long totalTasks = 0;
+
+            Iterator<TaskDataPoint> iterator = points.iterator();
+            while (iterator.hasNext()) {
+                TaskDataPoint point = iterator.next();
+
+                estFactorSum += (double) point.getActualDuration() / (double) point.getExpDuration();
+                totalTasks++;
+
+                sink.accept(point.getCreatedAt().getTimeInMillis(), estFactorSum / totalTasks);
+            }
+        }
+        sink.finish();
+    }
+
+    private void writeRunningEstFactor(TaskTagIndex.Selection selection, TimeSeriesSink sink) throws IOException {
+        double estFactorSum = 0.0;
+        for (int i = 0; i < selection.size(); i++) {
+            estFactorSum += (double) selection.getActualDuration(i) / (double) selection.getExpDuration(i);
+            sink.accept(selection.getCreatedAt(i), estFactorSum / (i + 1));
+        }
+        sink.finish();
+    }
+}
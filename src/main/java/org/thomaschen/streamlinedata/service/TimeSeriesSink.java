@@ -0,0 +1,23 @@
+package org.thomaschen.streamlinedata.service;
+
+import java.io.IOException;
+
+/**
+ * Consumer of (timestamp, value) points produced in timestamp order.
+ */
+public interface TimeSeriesSink {
+
+    /**
+     * Accepts the next point of the series
+     * @param timestamp epoch milliseconds of the point
+     * @param value value of the point
+     * @throws IOException if the point cannot be written
+     */
+    void accept(long timestamp, double value) throws IOException;
+
+    /**
+     * Signals the end of the series, flushing any buffered points downstream
+     * @throws IOException if the remaining points cannot be written
+     */
+    void finish() throws IOException;
+}
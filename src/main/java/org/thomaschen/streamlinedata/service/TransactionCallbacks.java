@@ -0,0 +1,29 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Helpers for running cache maintenance at transaction boundaries.
+ */
+final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+
+    }
+
+    /**
+     * Runs an action after the current transaction commits, or not at all outside a transaction
+     * @param action the action to run
+     */
+    static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import org.thomaschen.streamlinedata.model.UserDataSnapshot;
+import org.thomaschen.streamlinedata.model.UserIdentity;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-process cache of UserData aggregate snapshots, keyed by UUID, with a
+ * userId to UUID index in front of it.
+ *
+ * Writers evict the users they change. Inside a transaction the entry is evicted again
+ * after commit, so a read that raced the write cannot leave the old aggregates cached.
+ */
+@Service
+public class UserDataCache {
+
+    public static final String SNAPSHOTS = "userDataSnapshots";
+    public static final String IDS = "userDataIds";
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    PredictionService predictionService;
+
+    @Autowired
+    TaskTagIndexService taskTagIndexService;
+
+    @Value("${streamline.cache.users.maximum-size:10000}")
+    long maximumSize;
+
+    @Value("${streamline.cache.users.expire-after-write-seconds:60}")
+    long expireAfterWriteSeconds;
+
+    private GuardedCache<UUID, UserDataSnapshot> snapshots;
+    private GuardedCache<String, UUID> ids;
+
+    @PostConstruct
+    void init() {
+        snapshots = new GuardedCache<>(Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .<UUID, UserDataSnapshot>build());
+        ids = new GuardedCache<>(Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .<String, UUID>build());
+    }
+
+    /**
+     * Gets the aggregate snapshot of a user, loading it on a miss
+     * @param id the UUID of the UserData
+     * @return the snapshot, or null if no such user exists
+     */
+    public UserDataSnapshot getById(UUID id) {
+        long evictionsBefore = snapshots.evictionStamp(id);
+        return snapshots.get(id, key -> userDataRepository.findSnapshotById(key)
+                .map(snapshot -> index(snapshot, evictionsBefore))
+                .orElse(null));
+    }
+
+    /**
+     * Gets the aggregate snapshot of a user by its streamline userId, loading it on a miss
+     * @param userId the streamline userId
+     * @return the snapshot, or null if no such user exists
+     */
+    public UserDataSnapshot getByUserId(String userId) {
+        UUID id = resolveId(userId);
+        return (id == null) ? null : getById(id);
+    }
+
+    /**
+     * Resolves a streamline userId to the UUID of its UserData, querying only the id on a miss
+     * @param userId the streamline userId
+     * @return the UUID, or null if no such user exists
+     */
+    public UUID resolveId(String userId) {
+        return ids.get(userId, key -> userDataRepository.findIdByUserId(key).orElse(null));
+    }
+
+    /**
+     * Resolves many streamline userIds, querying every missing userId in one statement
+     * @param userIds the streamline userIds
+     * @return the UUIDs of the userIds that exist, keyed by userId
+     */
+    public Map<String, UUID> resolveIds(Iterable<String> userIds) {
+        Map<String, UUID> resolved = new HashMap<>(ids.getCache().getAllPresent(userIds));
+
+        Map<String, Long> missing = new HashMap<>();
+        for (String userId : userIds) {
+            if (!resolved.containsKey(userId)) {
+                missing.put(userId, ids.evictionStamp(userId));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (UserIdentity identity : userDataRepository.findIdentitiesByUserIdIn(missing.keySet())) {
+                ids.putIfNotEvicted(identity.getUserId(), identity.getId(), missing.get(identity.getUserId()));
+                resolved.put(identity.getUserId(), identity.getId());
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Evicts the snapshot and prediction models of a user whose aggregates changed, now and after the current transaction commits
+     * @param id the UUID of the UserData
+     */
+    public void evict(UUID id) {
+        evictAll(Arrays.asList(id));
+    }
+
+    /**
+     * Evicts the snapshots of many users, now and after the current transaction commits
+     * @param ids the UUIDs of the UserDatas
+     */
+    public void evictAll(List<UUID> ids) {
+        snapshots.invalidateAll(ids);
+        TransactionCallbacks.afterCommit(() -> snapshots.invalidateAll(ids));
+        predictionService.evictUsers(ids);
+    }
+
+    /**
+     * Evicts a deleted user, including its userId entry and tag index
+     * @param id the UUID of the UserData
+     * @param userId the streamline userId of the UserData
+     */
+    public void evictDeleted(UUID id, String userId) {
+        // The snapshot goes first, index relies on it
+        snapshots.invalidate(id);
+        ids.invalidate(userId);
+        TransactionCallbacks.afterCommit(() -> {
+            snapshots.invalidate(id);
+            ids.invalidate(userId);
+        });
+        predictionService.evictDeleted(id);
+        taskTagIndexService.evict(id);
+    }
+
+    /**
+     * Evicts every entry, used after bulk deletes and rebuilds
+     */
+    public void clear() {
+        invalidateAll();
+        TransactionCallbacks.afterCommit(this::invalidateAll);
+        predictionService.clear();
+        taskTagIndexService.clear();
+    }
+
+    /**
+     * @return size and hit statistics of the snapshot and userId caches
+     */
+    public List<CacheStatus> getStatus() {
+        return Arrays.asList(new CacheStatus(SNAPSHOTS, snapshots.getCache()), new CacheStatus(IDS, ids.getCache()));
+    }
+
+    Cache<UUID, UserDataSnapshot> getSnapshots() {
+        return snapshots.getCache();
+    }
+
+    Cache<String, UUID> getIds() {
+        return ids.getCache();
+    }
+
+    private void invalidateAll() {
+        snapshots.invalidateAll();
+        ids.invalidateAll();
+    }
+
+    /**
+     * Caches the userId of a loaded snapshot, unless the user was evicted since the load began.
+     * evictDeleted evicts the snapshot before the userId, so a deletion racing the load either
+     * changed the snapshot's stamp already, or evicts the userId after its stamp was taken here.
+     * @param snapshot the loaded snapshot
+     * @param evictionsBefore the snapshot's eviction stamp taken before the load
+     * @return the snapshot
+     */
+    private UserDataSnapshot index(UserDataSnapshot snapshot, long evictionsBefore) {
+        long idEvictionsBefore = ids.evictionStamp(snapshot.getUserId());
+        if (snapshots.evictionStamp(snapshot.getId()) == evictionsBefore) {
+            ids.putIfNotEvicted(snapshot.getUserId(), snapshot.getId(), idEvictionsBefore);
+        }
+        return snapshot;
+    }
+}
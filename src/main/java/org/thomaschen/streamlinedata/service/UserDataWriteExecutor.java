@@ -0,0 +1,169 @@
+package org.thomaschen.streamlinedata.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.exceptions.ConcurrentUpdateException;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs writes to UserData aggregates in their own transaction, retried on lock conflicts.
+ *
+ * Aggregate rows carry a version, so a write that read a row another writer has since updated
+ * fails at flush instead of silently overwriting it, and is replayed from the start. A write that
+ * times out or deadlocks waiting for a row lock, or loses a race to insert the same row through
+ * insertContended, is replayed too. Other constraint violations are not retried. Writes for the
+ * same user on this node are serialized by a striped lock first, so conflicts only arise between
+ * nodes, with team rollups shared by several users, or with the aggregate rebuild and membership
+ * changes.
+ */
+@Service
+public class UserDataWriteExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDataWriteExecutor.class);
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${streamline.writes.lock-stripes:1024}")
+    int stripeCount;
+
+    @Value("${streamline.writes.max-attempts:5}")
+    int maxAttempts;
+
+    private ReentrantLock[] stripes;
+
+    @PostConstruct
+    void init() {
+        stripes = new ReentrantLock[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs a write to one user's aggregates
+     * @param userId the UUID of the UserData written
+     * @param write the write, replayed from the start on a conflict
+     * @param <T> the result type
+     * @return the result of the write
+     */
+    public <T> T execute(UUID userId, Supplier<T> write) {
+        return execute(Collections.singleton(userId), write);
+    }
+
+    /**
+     * Runs a write to many users' aggregates, holding the lock of every user
+     * @param userIds the UUIDs of the UserDatas written, empty to run without locking
+     * @param write the write, replayed from the start on a conflict
+     * @param <T> the result type
+     * @return the result of the write
+     */
+    public <T> T execute(Collection<UUID> userIds, Supplier<T> write) {
+        // Inside a caller's transaction a conflict can only be retried by the caller
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return write.get();
+        }
+
+        long started = System.nanoTime();
+        String outcome = "error";
+
+        // Stripes are always taken in ascending order so multi-user writes cannot deadlock
+        TreeSet<Integer> held = new TreeSet<>();
+        for (UUID userId : userIds) {
+            held.add(stripe(userId));
+        }
+        for (int stripe : held) {
+            stripes[stripe].lock();
+        }
+        meterRegistry.timer("streamline.aggregates.writes.lock.wait")
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        try {
+            T result = executeWithRetry(userIds, write);
+            outcome = "success";
+            return result;
+        } catch (ConcurrentUpdateException e) {
+            outcome = "conflict";
+            throw e;
+        } finally {
+            Timer.builder("streamline.aggregates.writes")
+                    .description("Writes to UserData aggregates, including lock waits and retries")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            for (int stripe : held.descendingSet()) {
+                stripes[stripe].unlock();
+            }
+        }
+    }
+
+    private <T> T executeWithRetry(Collection<UUID> userIds, Supplier<T> write) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.execute(status -> write.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw new ConcurrentUpdateException("UserData", "id", userIds, e);
+                }
+                logger.debug("Concurrent update of {}, retrying (attempt {} of {})", userIds, attempt, maxAttempts);
+                meterRegistry.counter("streamline.aggregates.writes.retries").increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Inserts a row a concurrent write may insert first, such as the first statistics of a tag,
+     * so that losing the race fails as a conflict the write is replayed on. Pending changes are
+     * flushed beforehand, so their own constraint violations are not mistaken for the race.
+     * @param repository the repository of the row
+     * @param row the new row
+     * @param <T> the entity type
+     * @return the inserted row
+     */
+    public static <T> T insertContended(JpaRepository<T, ?> repository, T row) {
+        repository.flush();
+        try {
+            return repository.saveAndFlush(row);
+        } catch (DataIntegrityViolationException e) {
+            throw new ConcurrencyFailureException("Row inserted by a concurrent write", e);
+        }
+    }
+
+    int stripe(UUID userId) {
+        return (userId.hashCode() & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 1L << Math.min(attempt + 1, 8)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying a concurrent update", e);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.repository.UuidBytes;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deletes users and everything hanging off them with set-based statements.
+ *
+ * Nothing is loaded into the persistence context: rows are removed child tables first with
+ * DELETE statements limited to a fixed number of rows, each in its own short transaction, so
+ * memory use and lock time stay bounded however many users and tasks are deleted. A deletion
+ * interrupted part way leaves only whole users behind and can simply be run again.
+ */
+@Service
+public class UserDeletionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDeletionService.class);
+
+    /**
+     * Every table holding user data, children before the tables they reference. The tag
+     * dictionary is shared by all users and kept.
+     */
+    private static final List<String> TABLES = Arrays.asList(
+            "task_tags", "tasks", "tag_stats", "aggregate_deltas", "team_members", "team_rollups", "users");
+
+    private static final char LIKE_ESCAPE = '!';
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDataWriteExecutor userDataWriteExecutor;
+
+    @Value("${streamline.delete.batch-size:10000}")
+    int batchSize;
+
+    @Value("${streamline.delete.user-batch-size:100}")
+    int userBatchSize;
+
+    /**
+     * Deletes every user, task, tag and aggregate
+     * @return the number of users deleted
+     */
+    public long deleteAll() {
+        long users = 0;
+        for (String table : TABLES) {
+            long deleted = deleteInBatches("delete from " + table + " limit " + batchSize);
+            logger.info("Deleted {} rows from {}", deleted, table);
+            if (table.equals("users")) {
+                users = deleted;
+            }
+        }
+        userDataCache.clear();
+        return users;
+    }
+
+    /**
+     * Deletes one user with its tasks, tags and aggregates, then recomputes the rollups of the
+     * teams it belonged to
+     * @param id the UUID of the UserData
+     * @return false if no such user exists
+     */
+    public boolean deleteUser(UUID id) {
+        byte[] userId = UuidBytes.toBytes(id);
+        List<String> names = jdbcTemplate.queryForList("select user_id from users where id = ?", String.class, userId);
+        if (names.isEmpty()) {
+            return false;
+        }
+        List<UUID> teamIds = jdbcTemplate.query("select team_id from team_members where member_id = ?",
+                new Object[] {userId}, (rs, rowNum) -> UuidBytes.fromBytes(rs.getBytes(1)));
+
+        deleteUsers(Collections.singletonList(userId));
+        userDataCache.evictDeleted(id, names.get(0));
+
+        for (UUID teamId : teamIds) {
+            userDataWriteExecutor.execute(teamId, () -> teamRollupService.recompute(teamId));
+        }
+        logger.info("Deleted user {} and recomputed the rollups of {} teams", id, teamIds.size());
+        return true;
+    }
+
+    /**
+     * Deletes the users matching every given filter, with their tasks, tags and aggregates.
+     * The rollups of teams losing members are dropped, and computed from the member rows when read
+     * until a write recomputes them.
+     * @param createdFrom earliest creation time, inclusive, or null
+     * @param createdTo latest creation time, exclusive, or null
+     * @param userIdPrefix prefix of the streamline userId, or null
+     * @return the number of users deleted
+     */
+    public long deleteMatching(Calendar createdFrom, Calendar createdTo, String userIdPrefix) {
+        StringBuilder where = new StringBuilder(" where 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (createdFrom != null) {
+            where.append(" and created_at >= ?");
+            args.add(new Timestamp(createdFrom.getTimeInMillis()));
+        }
+        if (createdTo != null) {
+            where.append(" and created_at < ?");
+            args.add(new Timestamp(createdTo.getTimeInMillis()));
+        }
+        if (userIdPrefix != null) {
+            where.append(" and user_id like ? escape '").append(LIKE_ESCAPE).append("'");
+            args.add(escapeLike(userIdPrefix) + "%");
+        }
+        String selectIds = "select id from users" + where + " order by id limit " + userBatchSize;
+
+        long deleted = 0;
+        List<byte[]> userIds;
+        do {
+            // Deleted users drop out of the filter, so each query returns the next batch
+            userIds = jdbcTemplate.query(selectIds, args.toArray(), (rs, rowNum) -> rs.getBytes(1));
+            if (!userIds.isEmpty()) {
+                deleteUsers(userIds);
+                deleted += userIds.size();
+            }
+        } while (userIds.size() == userBatchSize);
+
+        logger.info("Deleted {} users matching createdFrom={}, createdTo={}, userIdPrefix={}",
+                deleted,
+                (createdFrom == null) ? null : createdFrom.toInstant(),
+                (createdTo == null) ? null : createdTo.toInstant(),
+                userIdPrefix);
+        userDataCache.clear();
+        return deleted;
+    }
+
+    private void deleteUsers(List<byte[]> userIds) {
+        String in = "(" + String.join(",", Collections.nCopies(userIds.size(), "?")) + ")";
+        Object[] ids = userIds.toArray();
+        Object[] idsTwice = new Object[2 * ids.length];
+        System.arraycopy(ids, 0, idsTwice, 0, ids.length);
+        System.arraycopy(ids, 0, idsTwice, ids.length, ids.length);
+
+        String deleteTags = "delete from task_tags where task_id in " +
+                "(select task_id from tasks where owner_id in " + in + ")";
+        String deleteTasks = "delete from tasks where owner_id in " + in;
+
+        // The bulk of the rows go in bounded batches outside the final transaction
+        deleteInBatches(deleteTags + " limit " + batchSize, ids);
+        deleteInBatches(deleteTasks + " limit " + batchSize, ids);
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            // Tasks written since the batches above
+            jdbcTemplate.update(deleteTags, ids);
+            jdbcTemplate.update(deleteTasks, ids);
+
+            jdbcTemplate.update("delete from tag_stats where owner_id in " + in, ids);
+            jdbcTemplate.update("delete from aggregate_deltas where owner_id in " + in, ids);
+            jdbcTemplate.update("delete from team_rollups where team_id in " + in +
+                    " or team_id in (select team_id from team_members where member_id in " + in + ")", idsTwice);
+            jdbcTemplate.update("delete from team_members where team_id in " + in +
+                    " or member_id in " + in, idsTwice);
+            return jdbcTemplate.update("delete from users where id in " + in, ids);
+        });
+    }
+
+    private long deleteInBatches(String sql, Object... args) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long deleted = 0;
+        int count;
+        do {
+            count = transaction.execute(status -> jdbcTemplate.update(sql, args));
+            deleted += count;
+        } while (count == batchSize);
+        return deleted;
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,7 @@
+-- Compares the tags of tag statistics and pending deltas case sensitively, like the tag dictionary.
+-- Run once against MySQL while no writes are in flight and the aggregate delta queue is drained.
+-- Rows merged under the old collation are dropped, each is seeded again from the tasks on its next write.
+alter table aggregate_deltas modify tag varchar(255) binary;
+
+delete from tag_stats;
+alter table tag_stats modify tag varchar(255) binary not null;
@@ -0,0 +1,10 @@
+-- Moves task tags from the task_data_tags string collection into the tag dictionary.
+-- Run once against MySQL after the application has created the tags and task_tags tables.
+insert ignore into tags (name)
+    select distinct tags from task_data_tags where tags is not null;
+
+insert into task_tags (task_id, tag_id)
+    select distinct tt.task_data_task_id, t.id
+    from task_data_tags tt join tags t on t.name = tt.tags;
+
+drop table task_data_tags;
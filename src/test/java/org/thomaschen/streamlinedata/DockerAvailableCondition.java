@@ -0,0 +1,22 @@
+package org.thomaschen.streamlinedata;
+
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.testcontainers.DockerClientFactory;
+
+/**
+ * Disables integration tests that need a Testcontainers MySQL instance when Docker is not running.
+ */
+public class DockerAvailableCondition implements ExecutionCondition {
+
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+        try {
+            DockerClientFactory.instance().client();
+            return ConditionEvaluationResult.enabled("Docker is available");
+        } catch (Throwable e) {
+            return ConditionEvaluationResult.disabled("Docker is not available: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RepositoryMetricsAspectTest {
+    private SimpleMeterRegistry meterRegistry;
+    private UserDataRepository target;
+    private UserDataRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        RepositoryMetricsAspect aspect = new RepositoryMetricsAspect();
+        aspect.meterRegistry = meterRegistry;
+
+        target = mock(UserDataRepository.class);
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addInterface(UserDataRepository.class);
+        factory.addAspect(aspect);
+        repository = factory.getProxy();
+    }
+
+    @Test
+    void timesInheritedQueries() {
+        UserData userData = new UserData("user1", 0, 0, 0, 0.0, 0.0);
+        when(target.findById(userData.getId())).thenReturn(Optional.of(userData));
+
+        assertSame(userData, repository.findById(userData.getId()).get());
+
+        assertEquals(1, meterRegistry.get("streamline.repository.queries")
+                .tags("repository", "UserDataRepository", "method", "findById", "exception", "None")
+                .timer().count());
+        assertEquals(1.0, meterRegistry.get("streamline.repository.rows")
+                .tags("repository", "UserDataRepository", "method", "findById")
+                .summary().totalAmount(), 1e-9);
+    }
+
+    @Test
+    void tagsFailedQueries() {
+        when(target.findById(any())).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> repository.findById(UUID.randomUUID()));
+
+        assertEquals(1, meterRegistry.get("streamline.repository.queries")
+                .tags("method", "findById", "exception", "DataAccessResourceFailureException")
+                .timer().count());
+    }
+
+    @Test
+    void writesRecordNoRows() {
+        UserData userData = new UserData("user1", 0, 0, 0, 0.0, 0.0);
+        when(target.save(userData)).thenReturn(userData);
+        when(target.count()).thenReturn(5L);
+
+        repository.save(userData);
+        repository.count();
+
+        assertEquals(0.0, meterRegistry.get("streamline.repository.rows")
+                .tags("repository", "UserDataRepository", "method", "save")
+                .summary().totalAmount(), 1e-9);
+        assertEquals(0.0, meterRegistry.get("streamline.repository.rows")
+                .tags("repository", "UserDataRepository", "method", "count")
+                .summary().totalAmount(), 1e-9);
+    }
+
+    @Test
+    void countRows() {
+        assertEquals(0, RepositoryMetricsAspect.countRows("findById", null));
+        assertEquals(0, RepositoryMetricsAspect.countRows("findById", Optional.empty()));
+        assertEquals(1, RepositoryMetricsAspect.countRows("findById", Optional.of(new UserData())));
+        assertEquals(0, RepositoryMetricsAspect.countRows("streamAll", Stream.of(1, 2)));
+        assertEquals(3, RepositoryMetricsAspect.countRows("findAll", Arrays.asList(1, 2, 3)));
+        assertEquals(2, RepositoryMetricsAspect.countRows("findAll",
+                new PageImpl<>(Arrays.asList(1, 2), Pageable.unpaged(), 10)));
+        assertEquals(1, RepositoryMetricsAspect.countRows("findByUserId", new UserData()));
+        assertEquals(0, RepositoryMetricsAspect.countRows("countByOwnerId", 42L));
+        assertEquals(0, RepositoryMetricsAspect.countRows("existsById", true));
+        assertEquals(0, RepositoryMetricsAspect.countRows("deleteByOwnerId", 3));
+        assertEquals(0, RepositoryMetricsAspect.countRows("save", new UserData()));
+        assertEquals(0, RepositoryMetricsAspect.countRows("saveAll", Arrays.asList(new UserData())));
+    }
+}
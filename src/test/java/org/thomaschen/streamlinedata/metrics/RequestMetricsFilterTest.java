@@ -0,0 +1,58 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestMetricsFilterTest {
+    private SimpleMeterRegistry meterRegistry;
+    private RequestMetricsFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new RequestMetricsFilter();
+        filter.meterRegistry = meterRegistry;
+    }
+
+    @Test
+    void recordsRowsAndBytesPerUriPattern() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/42");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+
+        filter.doFilter(request, response, (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/users/{id}");
+            RequestMetricsFilter.addRows(3);
+            RequestMetricsFilter.addRows(2);
+            res.getWriter().write("héllo");
+        });
+
+        assertEquals("héllo", response.getContentAsString());
+        assertEquals(5.0, meterRegistry.get("streamline.http.rows")
+                .tags("uri", "/api/users/{id}", "method", "GET").summary().totalAmount(), 1e-9);
+        assertEquals("héllo".getBytes(StandardCharsets.UTF_8).length, meterRegistry.get("streamline.http.response.bytes")
+                .tags("uri", "/api/users/{id}").summary().totalAmount(), 1e-9);
+    }
+
+    @Test
+    void rowsOutsideRequestsAreIgnored() throws Exception {
+        RequestMetricsFilter.addRows(7);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/tasks/batch");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> res.getOutputStream().write(new byte[10]));
+
+        assertEquals(0.0, meterRegistry.get("streamline.http.rows")
+                .tags("uri", "UNKNOWN", "method", "POST").summary().totalAmount(), 1e-9);
+        assertEquals(10.0, meterRegistry.get("streamline.http.response.bytes")
+                .tags("uri", "UNKNOWN").summary().totalAmount(), 1e-9);
+    }
+}
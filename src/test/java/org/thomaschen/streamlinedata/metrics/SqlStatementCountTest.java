@@ -0,0 +1,110 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+import org.thomaschen.streamlinedata.service.TaskDataService;
+import org.thomaschen.streamlinedata.service.UserDataCache;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Bounds the SQL statements read endpoints issue against a Testcontainers MySQL database, so
+ * an association that starts loading row by row fails here instead of in production.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "streamline.sql.repeated-statement-threshold=3")
+@AutoConfigureMockMvc
+class SqlStatementCountTest {
+    private static final int TASKS = 30;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    UserDataCache userDataCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private UserData user;
+    private TaskData task;
+
+    @BeforeEach
+    void setUp() {
+        user = userDataRepository.save(new UserData("sqlcount" + System.nanoTime(), 0, 0, 0, 0.0, 0.0));
+        for (int i = 0; i < TASKS; i++) {
+            TaskData taskData = new TaskData();
+            taskData.setExpDuration(1000L);
+            taskData.setActualDuration(500L + i * 50L);
+            taskData.setTags(Arrays.asList("tag" + i % 3, "all"));
+            task = taskDataService.createTaskData(user.getId(), taskData);
+        }
+        userDataCache.clear();
+    }
+
+    @Test
+    void getUserReadsOneRow() throws Exception {
+        try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+            mockMvc.perform(get("/api/users/{id}", user.getId())).andExpect(status().isOk());
+            assertEquals(1, counter.getStatementCount(), counter::toString);
+
+            mockMvc.perform(get("/api/users/{id}", user.getId())).andExpect(status().isOk());
+            assertEquals(1, counter.getStatementCount(), counter::toString);
+        }
+    }
+
+    @Test
+    void getTaskLoadsTagsWithTask() throws Exception {
+        try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+            mockMvc.perform(get("/api/tasks/{id}", task.getTaskId())).andExpect(status().isOk());
+
+            assertTrue(counter.getStatementCount() <= 2, counter::toString);
+        }
+    }
+
+    @Test
+    void listingTasksLoadsTagsInOneQuery() throws Exception {
+        try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+            mockMvc.perform(get("/api/users/{id}/tasks", user.getId())).andExpect(status().isOk());
+
+            assertTrue(counter.getStatementCount() <= 3, counter::toString);
+        }
+    }
+
+    @Test
+    void pagingTasksLoadsTagsInOneQuery() throws Exception {
+        try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+            mockMvc.perform(get("/api/users/{id}/tasks/paged", user.getId()).param("size", "10"))
+                    .andExpect(status().isOk());
+
+            assertTrue(counter.getStatementCount() <= 4, counter::toString);
+            assertTrue(counter.getRepeatedStatements(2).isEmpty(), counter::toString);
+        }
+        assertTrue(meterRegistry.get("streamline.http.statements")
+                .tags("uri", "/api/users/{id}/tasks/paged", "method", "GET")
+                .summary().count() >= 1);
+    }
+}
@@ -0,0 +1,71 @@
+package org.thomaschen.streamlinedata.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlStatementCounterTest {
+    private static final String SELECT_TAGS = "select tags0_.tags from task_data_tags tags0_ where tags0_.task_data_task_id=?";
+    private static final String SELECT_TASK = "select taskdata0_.task_id from tasks taskdata0_ where taskdata0_.task_id=?";
+
+    private final SqlStatementInspector inspector = new SqlStatementInspector();
+
+    @Test
+    void countsStatementsWhileOpen() {
+        inspector.inspect(SELECT_TASK);
+
+        SqlStatementCounter counter = SqlStatementCounter.open();
+        assertEquals(SELECT_TASK, inspector.inspect(SELECT_TASK));
+        inspector.inspect(SELECT_TAGS);
+        inspector.inspect(SELECT_TAGS);
+        counter.close();
+        inspector.inspect(SELECT_TAGS);
+
+        assertEquals(3, counter.getStatementCount());
+        assertEquals(2, counter.getDistinctStatementCount());
+    }
+
+    @Test
+    void nestedCountersSeeInnerStatements() {
+        try (SqlStatementCounter outer = SqlStatementCounter.open()) {
+            inspector.inspect(SELECT_TASK);
+            try (SqlStatementCounter inner = SqlStatementCounter.open()) {
+                inspector.inspect(SELECT_TAGS);
+                assertEquals(1, inner.getStatementCount());
+            }
+            assertEquals(2, outer.getStatementCount());
+        }
+    }
+
+    @Test
+    void reportsRepeatedStatements() {
+        try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+            inspector.inspect(SELECT_TASK);
+            for (int i = 0; i < 10; i++) {
+                inspector.inspect(SELECT_TAGS);
+            }
+
+            assertEquals(Collections.singletonMap(SELECT_TAGS, 10), counter.getRepeatedStatements(10));
+            assertTrue(counter.getRepeatedStatements(11).isEmpty());
+            assertTrue(counter.toString().startsWith("11 statements"), counter::toString);
+        }
+    }
+
+    @Test
+    void chargesExecutionsToLastPreparedStatement() {
+        SqlStatementTimer timer = new SqlStatementTimer();
+        try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+            inspector.inspect(SELECT_TASK);
+            SqlStatementCounter.statementExecuted(TimeUnit.MILLISECONDS.toNanos(800));
+            inspector.inspect(SELECT_TAGS);
+            timer.jdbcExecuteStatementStart();
+            timer.jdbcExecuteStatementEnd();
+
+            assertEquals(Collections.singletonMap(SELECT_TASK, 800L), counter.getSlowStatements(500));
+            assertEquals(2, counter.getSlowStatements(0).size());
+        }
+    }
+}
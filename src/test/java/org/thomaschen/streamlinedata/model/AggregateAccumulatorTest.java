@@ -0,0 +1,174 @@
+package org.thomaschen.streamlinedata.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregateAccumulatorTest {
+    private static AggregateAccumulator testAccumulator;
+
+    @BeforeEach
+    void setUp() {
+        testAccumulator = new AggregateAccumulator();
+        testAccumulator.add(1000L, 1200L);
+        testAccumulator.add(1000L, 1000L);
+        testAccumulator.add(1000L, 400L);
+    }
+
+    @Test
+    void add() {
+        assertEquals(3, testAccumulator.getTaskCount());
+        assertEquals(1, testAccumulator.getOverTaskCount());
+        assertEquals(2, testAccumulator.getUnderTaskCount());
+        assertEquals(2600, testAccumulator.getSumActualDuration());
+        assertEquals(2600.0 / 3, testAccumulator.getAvgTaskTime(), 1e-12);
+        assertEquals(2.6 / 3, testAccumulator.getTaskEstFactor(), 1e-12);
+    }
+
+    @Test
+    void remove() {
+        testAccumulator.remove(1000L, 1200L);
+        assertEquals(2, testAccumulator.getTaskCount());
+        assertEquals(0, testAccumulator.getOverTaskCount());
+        assertEquals(700.0, testAccumulator.getAvgTaskTime());
+        assertEquals(0.7, testAccumulator.getTaskEstFactor(), 1e-15);
+    }
+
+    @Test
+    void removeLastTaskResets() {
+        AggregateAccumulator single = new AggregateAccumulator();
+        single.add(3L, 7L);
+        single.remove(3L, 7L);
+
+        assertEquals(0, single.getTaskCount());
+        assertEquals(0.0, single.getSumTaskEstFactor());
+        assertEquals(0.0, single.getSumTaskEstFactorCompensation());
+        assertEquals(0.0, single.getTaskEstFactor());
+    }
+
+    @Test
+    void merge() {
+        AggregateAccumulator other = new AggregateAccumulator();
+        other.add(1000L, 3600L);
+        testAccumulator.merge(other);
+
+        AggregateAccumulator expected = new AggregateAccumulator();
+        expected.add(1000L, 1200L);
+        expected.add(1000L, 1000L);
+        expected.add(1000L, 400L);
+        expected.add(1000L, 3600L);
+
+        assertEquals(expected.getTaskCount(), testAccumulator.getTaskCount());
+        assertEquals(expected.getOverTaskCount(), testAccumulator.getOverTaskCount());
+        assertEquals(expected.getSumActualDuration(), testAccumulator.getSumActualDuration());
+        assertEquals(expected.getTaskEstFactor(), testAccumulator.getTaskEstFactor(), 1e-15);
+    }
+
+    @Test
+    void noDriftAfterManyUpdates() {
+        Random random = new Random(42);
+        AggregateAccumulator churn = new AggregateAccumulator();
+        churn.add(7L, 3L);
+
+        for (int i = 0; i < 1_000_000; i++) {
+            long exp = 1 + random.nextInt(10_000);
+            long actual = random.nextInt(20_000);
+            churn.add(exp, actual);
+            churn.remove(exp, actual);
+        }
+
+        assertEquals(1, churn.getTaskCount());
+        assertEquals(3L, churn.getSumActualDuration());
+        assertEquals(3.0 / 7.0, churn.getTaskEstFactor(), 1e-15);
+    }
+
+    @Test
+    void regressionMatchesLeastSquares() {
+        AggregateAccumulator fit = new AggregateAccumulator();
+        long[][] tasks = {{1000, 1500}, {2000, 2600}, {4000, 4900}, {8000, 9300}};
+        for (long[] task : tasks) {
+            fit.add(task[0], task[1]);
+        }
+
+        double meanX = 3750.0;
+        double meanY = 4575.0;
+        double sxx = 0.0;
+        double sxy = 0.0;
+        for (long[] task : tasks) {
+            sxx += (task[0] - meanX) * (task[0] - meanX);
+            sxy += (task[0] - meanX) * (task[1] - meanY);
+        }
+
+        assertTrue(fit.isRegressionTracked());
+        assertEquals(meanX, fit.getMeanExpDuration(), 1e-9);
+        assertEquals(sxx, fit.getExpDurationVariation(), 1e-6);
+        assertEquals(sxy, fit.getExpActualCovariation(), 1e-6);
+        assertEquals(sxy / sxx, fit.getRegressionSlope(), 1e-12);
+        assertEquals(meanY - sxy / sxx * meanX, fit.getRegressionIntercept(), 1e-9);
+    }
+
+    @Test
+    void regressionRemoveUndoesAdd() {
+        AggregateAccumulator fit = new AggregateAccumulator();
+        fit.add(1000L, 1500L);
+        fit.add(2000L, 2600L);
+        fit.add(4000L, 4900L);
+        fit.add(9000L, 100L);
+        fit.remove(9000L, 100L);
+
+        AggregateAccumulator expected = new AggregateAccumulator();
+        expected.add(1000L, 1500L);
+        expected.add(2000L, 2600L);
+        expected.add(4000L, 4900L);
+
+        assertEquals(expected.getMeanExpDuration(), fit.getMeanExpDuration(), 1e-9);
+        assertEquals(expected.getExpDurationVariation(), fit.getExpDurationVariation(), 1e-6);
+        assertEquals(expected.getExpActualCovariation(), fit.getExpActualCovariation(), 1e-6);
+    }
+
+    @Test
+    void regressionMerge() {
+        Random random = new Random(7);
+        AggregateAccumulator left = new AggregateAccumulator();
+        AggregateAccumulator right = new AggregateAccumulator();
+        AggregateAccumulator expected = new AggregateAccumulator();
+
+        for (int i = 0; i < 1000; i++) {
+            long exp = 1 + random.nextInt(10_000);
+            long actual = random.nextInt(20_000);
+            (i % 3 == 0 ? left : right).add(exp, actual);
+            expected.add(exp, actual);
+        }
+        left.merge(right);
+
+        assertTrue(left.isRegressionTracked());
+        assertEquals(expected.getMeanExpDuration(), left.getMeanExpDuration(), 1e-6);
+        assertEquals(1.0, left.getExpDurationVariation() / expected.getExpDurationVariation(), 1e-12);
+        assertEquals(1.0, left.getExpActualCovariation() / expected.getExpActualCovariation(), 1e-9);
+    }
+
+    @Test
+    void regressionUntrackedForLegacyTotals() {
+        AggregateAccumulator legacy = new AggregateAccumulator(3, 1, 2, 2600L, 2.6, 0.0);
+        assertFalse(legacy.isRegressionTracked());
+
+        legacy.add(1000L, 1000L);
+        assertFalse(legacy.isRegressionTracked());
+
+        testAccumulator.merge(legacy);
+        assertFalse(testAccumulator.isRegressionTracked());
+
+        legacy.reset();
+        assertTrue(legacy.isRegressionTracked());
+    }
+
+    @Test
+    void reset() {
+        testAccumulator.reset();
+        assertEquals(0, testAccumulator.getTaskCount());
+        assertEquals(0.0, testAccumulator.getAvgTaskTime());
+    }
+}
@@ -0,0 +1,29 @@
+package org.thomaschen.streamlinedata.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetPageTest {
+
+    @Test
+    void cursorRoundTrip() {
+        Calendar createdAt = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        UUID id = UUID.randomUUID();
+
+        String cursor = KeysetPage.encodeCursor(createdAt, id);
+
+        assertEquals(createdAt.getTimeInMillis(), KeysetPage.cursorCreatedAt(cursor).getTimeInMillis());
+        assertEquals(id, KeysetPage.cursorId(cursor));
+    }
+
+    @Test
+    void malformedCursor() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetPage.cursorId("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPage.cursorCreatedAt("bm9wZQ"));
+    }
+}
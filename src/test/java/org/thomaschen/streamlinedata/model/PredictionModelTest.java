@@ -0,0 +1,66 @@
+package org.thomaschen.streamlinedata.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PredictionModelTest {
+
+    @Test
+    void predictWithoutHistory() {
+        PredictionModel model = new PredictionModel(new AggregateAccumulator());
+
+        assertEquals(1000.0, model.predict(1000L));
+        assertFalse(model.isRegression());
+    }
+
+    @Test
+    void predictWithFewTasksUsesEstFactor() {
+        AggregateAccumulator accumulator = new AggregateAccumulator();
+        accumulator.add(1000L, 1500L);
+        accumulator.add(2000L, 3000L);
+        PredictionModel model = new PredictionModel(accumulator);
+
+        assertFalse(model.isRegression());
+        assertEquals(6000.0, model.predict(4000L), 1e-9);
+    }
+
+    @Test
+    void predictWithRegression() {
+        // actual = 1.2 * expected + 300
+        AggregateAccumulator accumulator = new AggregateAccumulator();
+        for (long exp = 1000; exp <= 6000; exp += 1000) {
+            accumulator.add(exp, Math.round(1.2 * exp + 300));
+        }
+        PredictionModel model = new PredictionModel(accumulator);
+
+        assertTrue(model.isRegression());
+        assertEquals(1.2, model.getSlope(), 1e-12);
+        assertEquals(300.0, model.getIntercept(), 1e-9);
+        assertEquals(12300.0, model.predict(10000L), 1e-6);
+    }
+
+    @Test
+    void predictWithIdenticalExpectedDurationsUsesEstFactor() {
+        AggregateAccumulator accumulator = new AggregateAccumulator();
+        for (int i = 0; i < 10; i++) {
+            accumulator.add(1000L, 800L + i * 40L);
+        }
+        PredictionModel model = new PredictionModel(accumulator);
+
+        assertFalse(model.isRegression());
+        assertEquals(accumulator.getTaskEstFactor() * 2000, model.predict(2000L), 1e-9);
+    }
+
+    @Test
+    void predictNeverNegative() {
+        // Steeply falling line crosses zero for long tasks
+        AggregateAccumulator accumulator = new AggregateAccumulator();
+        for (long exp = 1000; exp <= 5000; exp += 1000) {
+            accumulator.add(exp, 10000L - 2 * exp);
+        }
+        PredictionModel model = new PredictionModel(accumulator);
+
+        assertTrue(model.predict(100000L) >= 0.0);
+    }
+}
@@ -0,0 +1,78 @@
+package org.thomaschen.streamlinedata.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagStatisticsTest {
+    private static UserData testUserData;
+    private static TagStatistics testTagStatistics;
+    private static List<String> tags = Arrays.asList("tag1");
+
+    @BeforeEach
+    void setUp() {
+        testUserData = new UserData("user1", 0, 0, 0, 0.0, 0.0);
+        testTagStatistics = new TagStatistics(testUserData.getId(), "tag1");
+    }
+
+    @Test
+    void addTaskData() {
+        testTagStatistics.addTaskData(new TaskData(testUserData, 1000L, 1200L, tags));
+        testTagStatistics.addTaskData(new TaskData(testUserData, 1000L, 1000L, tags));
+
+        assertEquals(2, testTagStatistics.getTaskCount());
+        assertEquals(1, testTagStatistics.getOverTaskCount());
+        assertEquals(1, testTagStatistics.getUnderTaskCount());
+        assertEquals(2200, testTagStatistics.getSumActualDuration());
+    }
+
+    @Test
+    void subtractTaskData() {
+        TaskData over = new TaskData(testUserData, 1000L, 1200L, tags);
+        TaskData under = new TaskData(testUserData, 1000L, 1000L, tags);
+        testTagStatistics.addTaskData(over);
+        testTagStatistics.addTaskData(under);
+        testTagStatistics.subtractTaskData(under);
+
+        assertEquals(1, testTagStatistics.getTaskCount());
+        assertEquals(1, testTagStatistics.getOverTaskCount());
+        assertEquals(0, testTagStatistics.getUnderTaskCount());
+        assertEquals(1200, testTagStatistics.getSumActualDuration());
+
+        testTagStatistics.subtractTaskData(over);
+        assertEquals(0, testTagStatistics.getTaskCount());
+        assertEquals(0.0, testTagStatistics.getSumTaskEstFactor());
+    }
+
+    @Test
+    void toUserDataMatchesCalcUserData() {
+        List<TaskData> tasks = Arrays.asList(
+                new TaskData(testUserData, 1000L, 1200L, tags),
+                new TaskData(testUserData, 1000L, 1000L, tags),
+                new TaskData(testUserData, 1000L, 200L, tags));
+        for (TaskData task : tasks) {
+            testTagStatistics.addTaskData(task);
+        }
+
+        UserData expected = UserData.calcUserData(tasks, "tag1");
+        UserData actual = testTagStatistics.toUserData("tag1");
+
+        assertEquals(expected.getTotalTasksCompleted(), actual.getTotalTasksCompleted());
+        assertEquals(expected.getTotalOverTasks(), actual.getTotalOverTasks());
+        assertEquals(expected.getTotalUnderTasks(), actual.getTotalUnderTasks());
+        assertEquals(expected.getAvgTaskTime(), actual.getAvgTaskTime(), 1e-9);
+        assertEquals(expected.getTaskEstFactor(), actual.getTaskEstFactor(), 1e-9);
+    }
+
+    @Test
+    void fromTotalsWithoutTasks() {
+        TagStatistics empty = TagStatistics.fromTotals(UUID.randomUUID(), "tag1", null);
+        assertEquals(0, empty.getTaskCount());
+        assertEquals(0.0, (double) empty.toUserData("tag1").getAvgTaskTime());
+    }
+}
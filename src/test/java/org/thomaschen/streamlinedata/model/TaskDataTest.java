@@ -97,4 +97,14 @@ class TaskDataTest {
         assertEquals(tags, testTaskData.getTags());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void getTagsFromTagEntries() {
+        TaskData loaded = new TaskData();
+        loaded.setTagEntries(Arrays.asList(new Tag("tag1"), new Tag("tag2")));
+        assertEquals(Arrays.asList("tag1", "tag2"), loaded.getTags());
+
+        loaded.setTags(tags);
+        assertEquals(tags, loaded.getTags());
+    }
+}
@@ -0,0 +1,52 @@
+package org.thomaschen.streamlinedata.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedUuidGeneratorTest {
+
+    @Test
+    void versionAndVariant() {
+        UUID uuid = TimeOrderedUuidGenerator.nextUuid();
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void embedsCurrentTime() {
+        long before = System.currentTimeMillis();
+        UUID uuid = TimeOrderedUuidGenerator.nextUuid();
+
+        long millis = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(millis >= before);
+        assertTrue(millis <= System.currentTimeMillis() + 1);
+    }
+
+    @Test
+    void strictlyIncreasingAndUnique() {
+        Set<UUID> seen = new HashSet<>();
+        UUID previous = TimeOrderedUuidGenerator.nextUuid();
+
+        // More ids than fit in one millisecond's counter
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = TimeOrderedUuidGenerator.nextUuid();
+            assertTrue(next.compareTo(previous) > 0);
+            assertTrue(seen.add(next));
+            previous = next;
+        }
+    }
+
+    @Test
+    void entitiesUseTimeOrderedIds() {
+        UserData userData = new UserData("user1", 0, 0, 0, 0.0, 0.0);
+        TaskData taskData = new TaskData(userData, 1000L, 1000L, null);
+
+        assertEquals(7, userData.getId().version());
+        assertEquals(7, taskData.getTaskId().version());
+    }
+}
@@ -214,6 +214,21 @@ class UserDataTest {
         assertEquals(12.6512, (double) testUserData.getTaskEstFactor());
     }
 
+    @Test
+    void regressionStatisticsRoundTrip() {
+        UserData user = new UserData();
+        user.addTaskData(new TaskData(user, 1000L, 1500L, null));
+        user.addTaskData(new TaskData(user, 3000L, 3300L, null));
+
+        AggregateAccumulator accumulator = user.toAccumulator();
+        assertTrue(accumulator.isRegressionTracked());
+        assertEquals(2000.0, accumulator.getMeanExpDuration(), 1e-9);
+        assertEquals(0.9, accumulator.getRegressionSlope(), 1e-12);
+
+        user.setAvgTaskTime(1000.0);
+        assertFalse(user.toAccumulator().isRegressionTracked());
+    }
+
     @Test
     void equals() {
         UserData temp = new UserData(
@@ -0,0 +1,146 @@
+package org.thomaschen.streamlinedata.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.model.Tag;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Guards the indexes behind the owner and tag filtered task queries by checking
+ * MySQL's EXPLAIN output against a Testcontainers database.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TaskDataQueryPlanTest {
+    private static final int OWNERS = 50;
+    private static final int TASKS_PER_OWNER = 40;
+    private static final List<String> TAGS = Arrays.asList("tag1", "tag2", "tag3");
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    TagRepository tagRepository;
+
+    @Autowired
+    DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+    private byte[] ownerId;
+    private int tagId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        taskDataRepository.deleteAllInBatch();
+        userDataRepository.deleteAllInBatch();
+
+        List<Tag> tags = new ArrayList<>();
+        for (String name : TAGS) {
+            tags.add(tagRepository.findByName(name).orElseGet(() -> tagRepository.save(new Tag(name))));
+        }
+        tagId = tags.get(1).getId();
+
+        List<TaskData> tasks = new ArrayList<>();
+        for (int i = 0; i < OWNERS; i++) {
+            UserData owner = new UserData();
+            owner.setUserId("planuser" + i);
+            owner = userDataRepository.save(owner);
+
+            for (int j = 0; j < TASKS_PER_OWNER; j++) {
+                TaskData task = new TaskData();
+                task.setOwner(owner);
+                task.setExpDuration(1000L);
+                task.setActualDuration(500L + j * 50L);
+                task.setTagEntries(Arrays.asList(tags.get(j % tags.size()), tags.get((j + 1) % tags.size())));
+                tasks.add(task);
+            }
+        }
+        taskDataRepository.saveAll(tasks);
+
+        ownerId = UuidBytes.toBytes(tasks.get(0).getOwner().getId());
+        jdbcTemplate.queryForList("ANALYZE TABLE users, tasks, task_tags");
+    }
+
+    @Test
+    void ownerTimeSeriesUsesOwnerCreatedIndex() {
+        List<Map<String, Object>> plan = explain(
+                "SELECT t.created_at, t.exp_duration, t.actual_duration FROM tasks t " +
+                        "WHERE t.owner_id = ? ORDER BY t.created_at", ownerId);
+
+        assertEquals("idx_tasks_owner_created", plan.get(0).get("key"));
+        assertNoFullScanOrFilesort(plan);
+    }
+
+    @Test
+    void tagTimeSeriesAvoidsFullScanAndFilesort() {
+        List<Map<String, Object>> plan = explain(
+                "SELECT t.created_at, t.exp_duration, t.actual_duration FROM tasks t " +
+                        "INNER JOIN task_tags tg ON t.task_id = tg.task_id INNER JOIN tags tag ON tg.tag_id = tag.id " +
+                        "WHERE t.owner_id = ? AND tag.id = ? ORDER BY t.created_at", ownerId, tagId);
+
+        assertNoFullScanOrFilesort(plan);
+    }
+
+    @Test
+    void tagCountAvoidsFullScan() {
+        List<Map<String, Object>> plan = explain(
+                "SELECT count(*) FROM tasks t " +
+                        "INNER JOIN task_tags tg ON t.task_id = tg.task_id INNER JOIN tags tag ON tg.tag_id = tag.id " +
+                        "WHERE t.owner_id = ? AND tag.id = ?", ownerId, tagId);
+
+        assertNoFullScanOrFilesort(plan);
+    }
+
+    @Test
+    void keysetListingUsesCreatedIdIndex() {
+        List<Map<String, Object>> plan = explain(
+                "SELECT t.task_id FROM tasks t ORDER BY t.created_at, t.task_id LIMIT 100");
+
+        assertEquals("idx_tasks_created_id", plan.get(0).get("key"));
+        assertNoFilesort(plan);
+    }
+
+    private List<Map<String, Object>> explain(String sql, Object... args) {
+        return jdbcTemplate.queryForList("EXPLAIN " + sql, args);
+    }
+
+    private static void assertNoFullScanOrFilesort(List<Map<String, Object>> plan) {
+        for (Map<String, Object> row : plan) {
+            assertNotEquals("ALL", row.get("type"), "Full table scan in plan: " + plan);
+        }
+        assertNoFilesort(plan);
+    }
+
+    private static void assertNoFilesort(List<Map<String, Object>> plan) {
+        for (Map<String, Object> row : plan) {
+            Object extra = row.get("Extra");
+            assertFalse(extra != null && extra.toString().contains("filesort"), "Filesort in plan: " + plan);
+        }
+    }
+}
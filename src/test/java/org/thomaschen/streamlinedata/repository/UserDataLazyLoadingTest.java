@@ -0,0 +1,133 @@
+package org.thomaschen.streamlinedata.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.metrics.SqlStatementCounter;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.service.TaskDataService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks against a Testcontainers MySQL database that loading a user leaves its tasks unread,
+ * and that the paged task listing reads one page of tasks instead of every task of the user.
+ * Also checks that a capped listing links to the page after it.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+class UserDataLazyLoadingTest {
+    private static final int TASKS = 12;
+
+    private static final Pattern TASKS_TABLE = Pattern.compile("\\btasks\\b");
+
+    private static final Pattern NEXT_LINK = Pattern.compile("<http://localhost(/api/tasks/page)\\?cursor=([^&]+)&limit=5>; rel=\"next\"");
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private UserData user;
+
+    @BeforeEach
+    void setUp() {
+        user = userDataRepository.save(new UserData("lazy" + System.nanoTime(), 0, 0, 0, 0.0, 0.0));
+        for (int i = 0; i < TASKS; i++) {
+            TaskData taskData = new TaskData();
+            taskData.setExpDuration(1000L);
+            taskData.setActualDuration(500L + i * 50L);
+            taskData.setTags(Arrays.asList("tag" + i % 3, "all"));
+            taskDataService.createTaskData(user.getId(), taskData);
+        }
+    }
+
+    @Test
+    void loadingUserSelectsNoTasks() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+                UserData byId = userDataRepository.findById(user.getId()).get();
+                UserData byUserId = userDataRepository.findByUserId(user.getUserId());
+                assertNotNull(byId.toString());
+
+                assertSame(byId, byUserId);
+                assertEquals(TASKS, (int) byId.getTotalTasksCompleted());
+                assertFalse(entityManagerFactory.getPersistenceUnitUtil().isLoaded(byId, "tasks"));
+                assertEquals(2, counter.getStatementCount(), counter::toString);
+                assertNoTaskSelect(counter);
+            }
+            return null;
+        });
+    }
+
+    @Test
+    void pagingTasksReadsOnePage() throws Exception {
+        try (SqlStatementCounter counter = SqlStatementCounter.open()) {
+            mockMvc.perform(get("/api/users/{id}/tasks/paged", user.getId()).param("size", "5"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content.length()").value(5))
+                    .andExpect(jsonPath("$.content[0].tags.length()").value(2))
+                    .andExpect(jsonPath("$.totalElements").value(TASKS));
+
+            // Owner check, page, count and one batch of tags
+            assertTrue(counter.getStatementCount() <= 4, counter::toString);
+            assertTrue(counter.getRepeatedStatements(2).isEmpty(), counter::toString);
+        }
+    }
+
+    @Test
+    void cappedTaskListingLinksToNextPage() throws Exception {
+        String link = mockMvc.perform(get("/api/tasks/").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andReturn().getResponse().getHeader("Link");
+
+        Matcher next = NEXT_LINK.matcher(link);
+        assertTrue(next.matches(), link);
+        mockMvc.perform(get(next.group(1)).param("cursor", next.group(2)).param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(5));
+
+        // Far fewer users than the limit, so nothing is left out
+        mockMvc.perform(get("/api/users/"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    private static void assertNoTaskSelect(SqlStatementCounter counter) {
+        for (String sql : counter.getRepeatedStatements(1).keySet()) {
+            assertFalse(TASKS_TABLE.matcher(sql).find(), counter::toString);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.AggregateDelta;
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TagStatisticsId;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.AggregateDeltaRepository;
+import org.thomaschen.streamlinedata.repository.TagStatisticsRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AggregateDeltaWorkerTest {
+    private AggregateDeltaWorker worker;
+    private AggregateDeltaRepository aggregateDeltaRepository;
+    private UserDataRepository userDataRepository;
+    private TagStatisticsRepository tagStatisticsRepository;
+    private TeamRollupService teamRollupService;
+    private List<AggregateDelta> pending = new ArrayList<>();
+    private UserData testUserData;
+    private TagStatistics testTagStatistics;
+
+    @BeforeEach
+    void setUp() {
+        testUserData = new UserData("user1", 0, 0, 0, 0.0, 0.0);
+        testTagStatistics = new TagStatistics(testUserData.getId(), "tag1");
+
+        aggregateDeltaRepository = mock(AggregateDeltaRepository.class);
+        userDataRepository = mock(UserDataRepository.class);
+        tagStatisticsRepository = mock(TagStatisticsRepository.class);
+        teamRollupService = mock(TeamRollupService.class);
+
+        when(aggregateDeltaRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            pending.addAll(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(aggregateDeltaRepository.findOldest(any())).thenAnswer(invocation -> new ArrayList<>(pending));
+        doAnswer(invocation -> pending.removeAll((Collection<?>) invocation.getArgument(0)))
+                .when(aggregateDeltaRepository).deleteInBatch(any());
+        when(userDataRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<UserData> found = new ArrayList<>();
+            for (Object id : (Iterable<?>) invocation.getArgument(0)) {
+                if (testUserData.getId().equals(id)) {
+                    found.add(testUserData);
+                }
+            }
+            return found;
+        });
+        when(tagStatisticsRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<TagStatistics> found = new ArrayList<>();
+            for (Object id : (Iterable<?>) invocation.getArgument(0)) {
+                if (testTagStatistics.getId().equals(id)) {
+                    found.add(testTagStatistics);
+                }
+            }
+            return found;
+        });
+
+        worker = new AggregateDeltaWorker();
+        worker.aggregateDeltaRepository = aggregateDeltaRepository;
+        worker.userDataRepository = userDataRepository;
+        worker.tagStatisticsRepository = tagStatisticsRepository;
+        worker.teamRollupService = teamRollupService;
+        worker.userDataCache = mock(UserDataCache.class);
+        worker.predictionService = mock(PredictionService.class);
+    }
+
+    @Test
+    void recordWritesOneDeltaPerDistinctTag() {
+        worker.record(testUserData.getId(),
+                new TaskData(testUserData, 1000L, 2000L, Arrays.asList("tag1", null, "tag2", "tag1")), false);
+
+        assertEquals(3, pending.size());
+        assertNull(pending.get(0).getTag());
+        assertEquals("tag1", pending.get(1).getTag());
+        assertEquals("tag2", pending.get(2).getTag());
+    }
+
+    @Test
+    void applyOldestCoalescesPerUser() {
+        List<String> tags = Arrays.asList("tag1");
+        worker.record(testUserData.getId(), new TaskData(testUserData, 1000L, 2000L, tags), false);
+        worker.record(testUserData.getId(), new TaskData(testUserData, 2000L, 1000L, tags), false);
+        worker.record(testUserData.getId(), new TaskData(testUserData, 3000L, 3000L, tags), false);
+        worker.record(testUserData.getId(), new TaskData(testUserData, 2000L, 1000L, tags), true);
+
+        assertEquals(8, worker.applyOldest(100));
+
+        assertEquals(2, (int) testUserData.getTotalTasksCompleted());
+        assertEquals(1, (int) testUserData.getTotalOverTasks());
+        assertEquals(2500.0, testUserData.getAvgTaskTime(), 1e-9);
+        assertEquals(2, testTagStatistics.getTaskCount());
+        assertEquals(5000, testTagStatistics.getSumActualDuration());
+        assertTrue(pending.isEmpty());
+
+        verify(userDataRepository, times(1)).findAllById(any());
+        verify(userDataRepository, times(1)).saveAll(any());
+        verify(worker.predictionService, times(1)).evictTag(testUserData.getId(), "tag1");
+        verify(worker.userDataCache).evictAll(Arrays.asList(testUserData.getId()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void applyOldestUpdatesTeamRollups() {
+        worker.record(testUserData.getId(), new TaskData(testUserData, 1000L, 2000L, null), false);
+        worker.applyOldest(100);
+
+        ArgumentCaptor<Consumer<AggregateAccumulator>> update = ArgumentCaptor.forClass(Consumer.class);
+        verify(teamRollupService).applyToRollups(eq(testUserData.getId()), update.capture());
+
+        AggregateAccumulator rollup = new AggregateAccumulator();
+        update.getValue().accept(rollup);
+        assertEquals(1, rollup.getTaskCount());
+        assertEquals(2000, rollup.getSumActualDuration());
+    }
+
+    @Test
+    void applyOldestDropsDeltasOfDeletedUsers() {
+        UserData deleted = new UserData("deleted", 0, 0, 0, 0.0, 0.0);
+        worker.record(deleted.getId(), new TaskData(deleted, 1000L, 2000L, Arrays.asList("tag1")), false);
+
+        assertEquals(2, worker.applyOldest(100));
+        assertTrue(pending.isEmpty());
+        verify(teamRollupService, never()).applyToRollups(any(), any());
+    }
+
+    @Test
+    void applyOldestWithNothingPending() {
+        assertEquals(0, worker.applyOldest(100));
+        verify(aggregateDeltaRepository, never()).deleteInBatch(any());
+    }
+}
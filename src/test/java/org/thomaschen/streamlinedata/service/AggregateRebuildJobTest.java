@@ -0,0 +1,130 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the aggregate rebuild against a Testcontainers MySQL database, with a batch size small
+ * enough that users are split across several slices.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"streamline.rebuild.batch-size=2", "streamline.rebuild.parallelism=2"})
+class AggregateRebuildJobTest {
+    private static final int TASKS_PER_USER = 4;
+
+    @Autowired
+    AggregateRebuildJob aggregateRebuildJob;
+
+    @Autowired
+    UserDeletionService userDeletionService;
+
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        userDeletionService.deleteAll();
+    }
+
+    @Test
+    void rebuildEmptyDatabase() {
+        AggregateAccumulator totals = aggregateRebuildJob.rebuild();
+
+        assertEquals(0, totals.getTaskCount());
+        RebuildStatus status = aggregateRebuildJob.getStatus();
+        assertNull(status.getFailure());
+        assertEquals(0, status.getUsersProcessed());
+    }
+
+    @Test
+    void rebuildRestoresDriftedAggregates() {
+        UserData[] users = new UserData[5];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = createUser("rebuild" + i);
+        }
+        UserData drifted = userDataRepository.findById(users[0].getId()).get();
+        drifted.setTotalTasksCompleted(1000);
+        userDataRepository.save(drifted);
+
+        AggregateAccumulator totals = aggregateRebuildJob.rebuild();
+
+        assertEquals(users.length * TASKS_PER_USER, totals.getTaskCount());
+        assertNull(aggregateRebuildJob.getStatus().getFailure());
+        for (UserData user : users) {
+            assertEquals(TASKS_PER_USER, (int) userDataRepository.findById(user.getId()).get().getTotalTasksCompleted());
+        }
+    }
+
+    @Test
+    void taskWriteDuringRebuildIsKept() throws Exception {
+        UserData user = createUser("rebuildrace");
+        CompletableFuture<AggregateAccumulator> rebuild = new CompletableFuture<>();
+
+        // Holds the task write open while the rebuild starts, then commits it
+        new TransactionTemplate(transactionManager).execute(status -> {
+            taskDataService.createTaskData(user.getId(), task(5000L));
+            entityManager.flush();
+
+            Thread rebuilder = new Thread(() -> rebuild.complete(aggregateRebuildJob.rebuild()));
+            rebuilder.start();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+
+        assertEquals(TASKS_PER_USER + 1, rebuild.get(30, TimeUnit.SECONDS).getTaskCount());
+        UserData rebuilt = userDataRepository.findById(user.getId()).get();
+        assertEquals(TASKS_PER_USER + 1, (int) rebuilt.getTotalTasksCompleted());
+        assertEquals(2, (int) rebuilt.getTotalOverTasks());
+    }
+
+    private UserData createUser(String userId) {
+        UserData userData = userDataRepository.save(new UserData(userId, 0, 0, 0, 0.0, 0.0));
+        for (int i = 0; i < TASKS_PER_USER; i++) {
+            taskDataService.createTaskData(userData.getId(), task(500L + i * 250L));
+        }
+        return userData;
+    }
+
+    private static TaskData task(long actualDuration) {
+        TaskData taskData = new TaskData();
+        taskData.setExpDuration(1000L);
+        taskData.setActualDuration(actualDuration);
+        taskData.setTags(Arrays.asList("rebuild"));
+        return taskData;
+    }
+}
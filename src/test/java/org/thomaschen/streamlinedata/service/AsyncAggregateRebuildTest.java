@@ -0,0 +1,154 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the aggregate rebuild and the delta worker against a Testcontainers MySQL database while
+ * asynchronous task writes leave their aggregates to the delta worker. The scheduled drain is pushed out of the
+ * way, so deltas are only applied when a test drains them.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"streamline.writes.async=true", "streamline.writes.async-flush-interval-ms=3600000",
+                "streamline.rebuild.batch-size=2", "streamline.rebuild.parallelism=2"})
+class AsyncAggregateRebuildTest {
+    private static final int TASKS_PER_USER = 4;
+
+    @Autowired
+    AggregateRebuildJob aggregateRebuildJob;
+
+    @Autowired
+    AggregateDeltaWorker aggregateDeltaWorker;
+
+    @Autowired
+    UserDeletionService userDeletionService;
+
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    TagStatisticsService tagStatisticsService;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        userDeletionService.deleteAll();
+    }
+
+    @Test
+    void rebuildCountsPendingDeltasOnce() {
+        UserData user = createUser("asyncrebuild");
+
+        assertEquals(TASKS_PER_USER, aggregateRebuildJob.rebuild().getTaskCount());
+        aggregateDeltaWorker.drain();
+
+        assertEquals(0, aggregateDeltaWorker.getPendingCount());
+        assertEquals(TASKS_PER_USER, (int) userDataRepository.findById(user.getId()).get().getTotalTasksCompleted());
+        assertEquals(TASKS_PER_USER, tagStatisticsService.getTagStatistics(user.getId(), "rebuild").getTaskCount());
+    }
+
+    @Test
+    void asyncTaskWriteDuringRebuildIsCountedOnce() throws Exception {
+        UserData user = createUser("asyncrebuildrace");
+        CompletableFuture<AggregateAccumulator> rebuild = new CompletableFuture<>();
+
+        // Holds the task write and its deltas open while the rebuild starts, then commits them
+        new TransactionTemplate(transactionManager).execute(status -> {
+            taskDataService.createTaskData(user.getId(), task(5000L));
+            entityManager.flush();
+
+            Thread rebuilder = new Thread(() -> rebuild.complete(aggregateRebuildJob.rebuild()));
+            rebuilder.start();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+
+        assertEquals(TASKS_PER_USER + 1, rebuild.get(30, TimeUnit.SECONDS).getTaskCount());
+        aggregateDeltaWorker.drain();
+
+        UserData rebuilt = userDataRepository.findById(user.getId()).get();
+        assertEquals(TASKS_PER_USER + 1, (int) rebuilt.getTotalTasksCompleted());
+        assertEquals(2, (int) rebuilt.getTotalOverTasks());
+        assertEquals(TASKS_PER_USER + 1,
+                tagStatisticsService.getTagStatistics(user.getId(), "rebuild").getTaskCount());
+    }
+
+    @Test
+    void concurrentDrainsApplyEachDeltaOnce() throws Exception {
+        UserData user = createUser("asyncdrains");
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        CompletableFuture<Integer> other = new CompletableFuture<>();
+
+        // Applies the batch while a second drain, as another node would, asks for the same deltas
+        int applied = transaction.execute(status -> {
+            int count = aggregateDeltaWorker.applyOldest(100);
+            Thread drainer = new Thread(() -> other.complete(transaction.execute(
+                    otherStatus -> aggregateDeltaWorker.applyOldest(100))));
+            drainer.start();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            assertFalse(other.isDone());
+            return count;
+        });
+
+        assertEquals(2 * TASKS_PER_USER, applied);
+        assertEquals(0, (int) other.get(30, TimeUnit.SECONDS));
+        assertEquals(TASKS_PER_USER, (int) userDataRepository.findById(user.getId()).get().getTotalTasksCompleted());
+        assertEquals(TASKS_PER_USER, tagStatisticsService.getTagStatistics(user.getId(), "rebuild").getTaskCount());
+    }
+
+    private UserData createUser(String userId) {
+        UserData userData = userDataRepository.save(new UserData(userId, 0, 0, 0, 0.0, 0.0));
+        for (int i = 0; i < TASKS_PER_USER; i++) {
+            taskDataService.createTaskData(userData.getId(), task(500L + i * 250L));
+        }
+        return userData;
+    }
+
+    private static TaskData task(long actualDuration) {
+        TaskData taskData = new TaskData();
+        taskData.setExpDuration(1000L);
+        taskData.setActualDuration(actualDuration);
+        taskData.setTags(Arrays.asList("rebuild"));
+        return taskData;
+    }
+}
@@ -0,0 +1,87 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExportServiceTest {
+    private ExportService service;
+    private UserDataRepository userDataRepository;
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() {
+        userDataRepository = mock(UserDataRepository.class);
+        service = new ExportService();
+        service.userDataRepository = userDataRepository;
+        service.objectMapper = new ObjectMapper();
+        service.entityManager = mock(EntityManager.class);
+    }
+
+    @Test
+    void completeExportEndsWithNewline() throws Exception {
+        when(userDataRepository.streamAllOrderByCreatedAt()).thenReturn(users(3, false));
+        service.writeUsers(out);
+
+        String export = export();
+        assertTrue(export.endsWith("}\n"), export);
+        assertEquals(3, export.split("\n").length);
+    }
+
+    @Test
+    void emptyExportIsEmpty() throws Exception {
+        when(userDataRepository.streamAllOrderByCreatedAt()).thenReturn(users(0, false));
+        service.writeUsers(out);
+
+        assertEquals("", export());
+    }
+
+    @Test
+    void failureBeforeRowsWereSentSendsNothing() {
+        when(userDataRepository.streamAllOrderByCreatedAt()).thenReturn(users(2, true));
+
+        assertThrows(IllegalStateException.class, () -> service.writeUsers(out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void failureAfterRowsWereSentEndsWithErrorLine() {
+        // More rows than the generator buffers, so some reach the output before the failure
+        when(userDataRepository.streamAllOrderByCreatedAt()).thenReturn(users(500, true));
+
+        assertThrows(IllegalStateException.class, () -> service.writeUsers(out));
+        String export = export();
+        assertTrue(export.startsWith("{"), export);
+        assertTrue(export.endsWith("\n{\"error\":\"export incomplete\"}"));
+    }
+
+    /**
+     * Users streamed as the repository would, optionally failing after the last one
+     */
+    private static Stream<UserData> users(int count, boolean fail) {
+        return IntStream.rangeClosed(0, count)
+                .filter(i -> i < count || fail)
+                .mapToObj(i -> {
+                    if (i == count) {
+                        throw new IllegalStateException("Connection lost");
+                    }
+                    return new UserData("user" + i, 0, 0, 0, 0.0, 0.0);
+                });
+    }
+
+    private String export() {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
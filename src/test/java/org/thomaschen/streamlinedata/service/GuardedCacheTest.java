@@ -0,0 +1,88 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuardedCacheTest {
+    private GuardedCache<String, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new GuardedCache<>(Caffeine.newBuilder().recordStats().<String, String>build());
+    }
+
+    @Test
+    void getLoadsOnce() {
+        assertEquals("v1", cache.get("k", key -> "v1"));
+        assertEquals("v1", cache.get("k", key -> "v2"));
+        assertEquals(1, cache.getCache().stats().hitCount());
+    }
+
+    @Test
+    void getDoesNotCacheNull() {
+        assertNull(cache.get("k", key -> null));
+        assertEquals(0, cache.getCache().estimatedSize());
+    }
+
+    @Test
+    void evictionDuringLoadIsNotCached() {
+        assertEquals("old", cache.get("k", key -> {
+            cache.invalidate(key);
+            return "old";
+        }));
+        assertNull(cache.getCache().getIfPresent("k"));
+        assertEquals("new", cache.get("k", key -> "new"));
+    }
+
+    @Test
+    void putIfNotEvictedChecksStamp() {
+        long stamp = cache.evictionStamp("k");
+        cache.invalidateAll(Arrays.asList("k"));
+        cache.putIfNotEvicted("k", "old", stamp);
+        assertNull(cache.getCache().getIfPresent("k"));
+
+        cache.putIfNotEvicted("k", "new", cache.evictionStamp("k"));
+        assertEquals("new", cache.getCache().getIfPresent("k"));
+    }
+
+    @Test
+    void invalidateIfMatchesKeys() {
+        cache.get("a1", key -> "v");
+        cache.get("b1", key -> "v");
+
+        cache.invalidateIf(key -> key.startsWith("a"));
+
+        assertNull(cache.getCache().getIfPresent("a1"));
+        assertEquals("v", cache.getCache().getIfPresent("b1"));
+    }
+
+    @Test
+    void slowLoadDoesNotBlockInvalidate() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> load = CompletableFuture.supplyAsync(() -> cache.get("k", key -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "old";
+        }));
+
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture.runAsync(() -> cache.invalidate("k")).get(5, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertEquals("old", load.get(5, TimeUnit.SECONDS));
+        assertNull(cache.getCache().getIfPresent("k"));
+    }
+}
@@ -0,0 +1,180 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.PredictionRequest;
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TagStatisticsId;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TagStatisticsRepository;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.validation.Validation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PredictionServiceTest {
+    private PredictionService service;
+    private UserDataRepository userDataRepository;
+    private TagStatisticsRepository tagStatisticsRepository;
+    private UserData testUserData;
+    private List<String> tags = Arrays.asList("tag1");
+
+    @BeforeEach
+    void setUp() {
+        testUserData = new UserData("user1", 0, 0, 0, 0.0, 0.0);
+        for (long exp = 1000; exp <= 5000; exp += 1000) {
+            testUserData.addTaskData(new TaskData(testUserData, exp, 2 * exp, tags));
+        }
+
+        userDataRepository = mock(UserDataRepository.class);
+        tagStatisticsRepository = mock(TagStatisticsRepository.class);
+        when(userDataRepository.findById(any())).thenReturn(Optional.empty());
+        when(userDataRepository.findById(testUserData.getId())).thenReturn(Optional.of(testUserData));
+        when(tagStatisticsRepository.findById(any())).thenReturn(Optional.empty());
+
+        service = new PredictionService();
+        service.userDataRepository = userDataRepository;
+        service.tagStatisticsRepository = tagStatisticsRepository;
+        service.taskDataRepository = mock(TaskDataRepository.class);
+        service.tagDictionary = mock(TagDictionary.class);
+        service.validator = Validation.buildDefaultValidatorFactory().getValidator();
+        service.parallelThreshold = 1000;
+        service.maximumSize = 100;
+        service.expireAfterWriteSeconds = 60;
+        service.init();
+    }
+
+    @Test
+    void predictFromUserModel() {
+        assertEquals(20000.0, service.predict(testUserData.getId(), 10000L, null), 1e-6);
+        assertEquals(20000.0, service.predict(testUserData.getId(), 10000L, Collections.emptyList()), 1e-6);
+        verify(userDataRepository, times(1)).findById(testUserData.getId());
+    }
+
+    @Test
+    void predictUnknownUser() {
+        assertThrows(ResourceNotFoundException.class,
+                () -> service.predict(UUID.randomUUID(), 1000L, null));
+    }
+
+    @Test
+    void predictWeightsTagModels() {
+        TagStatistics fast = new TagStatistics(testUserData.getId(), "fast");
+        TagStatistics slow = new TagStatistics(testUserData.getId(), "slow");
+        fast.addTaskData(new TaskData(testUserData, 1000L, 500L, tags));
+        slow.addTaskData(new TaskData(testUserData, 1000L, 3000L, tags));
+        slow.addTaskData(new TaskData(testUserData, 2000L, 6000L, tags));
+        when(tagStatisticsRepository.findById(fast.getId())).thenReturn(Optional.of(fast));
+        when(tagStatisticsRepository.findById(slow.getId())).thenReturn(Optional.of(slow));
+
+        // (1 * 0.5 + 2 * 3.0) / 3 of the expected duration
+        assertEquals(1000.0 * 6.5 / 3, service.predict(testUserData.getId(), 1000L, Arrays.asList("fast", "slow")), 1e-9);
+    }
+
+    @Test
+    void predictFallsBackToUserModelForUnusedTags() {
+        when(service.tagDictionary.getId("new")).thenReturn(TagDictionary.UNKNOWN_TAG_ID);
+        when(service.taskDataRepository.sumTotalsByOwnerIdAndTagId(testUserData.getId(), TagDictionary.UNKNOWN_TAG_ID))
+                .thenReturn(null);
+
+        assertEquals(20000.0, service.predict(testUserData.getId(), 10000L, Arrays.asList("new")), 1e-6);
+    }
+
+    @Test
+    void predictBatchLoadsEachModelOnce() {
+        UserData other = new UserData("user2", 0, 0, 0, 0.0, 0.0);
+        other.addTaskData(new TaskData(other, 1000L, 500L, tags));
+        TagStatistics stats = new TagStatistics(testUserData.getId(), "tag1");
+        stats.addTaskData(new TaskData(testUserData, 1000L, 3000L, tags));
+        when(userDataRepository.findAllById(any())).thenReturn(Arrays.asList(testUserData, other));
+        when(tagStatisticsRepository.findAllById(any())).thenReturn(Arrays.asList(stats));
+
+        List<PredictionRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new PredictionRequest(testUserData.getId(), 10000L, null));
+            requests.add(new PredictionRequest(other.getId(), 1000L, null));
+            requests.add(new PredictionRequest(testUserData.getId(), 1000L, tags));
+        }
+
+        List<Double> predictions = service.predictBatch(requests);
+
+        assertEquals(15, predictions.size());
+        for (int i = 0; i < 15; i += 3) {
+            assertEquals(20000.0, predictions.get(i), 1e-6);
+            assertEquals(500.0, predictions.get(i + 1), 1e-9);
+            assertEquals(3000.0, predictions.get(i + 2), 1e-9);
+        }
+        verify(userDataRepository, times(1)).findAllById(any());
+        verify(tagStatisticsRepository, times(1)).findAllById(any());
+        verify(userDataRepository, never()).findById(any());
+    }
+
+    @Test
+    void predictBatchInParallelKeepsOrder() {
+        service.parallelThreshold = 10;
+        when(userDataRepository.findAllById(any())).thenReturn(Arrays.asList(testUserData));
+
+        List<PredictionRequest> requests = new ArrayList<>();
+        for (long exp = 1; exp <= 5000; exp++) {
+            requests.add(new PredictionRequest(testUserData.getId(), exp, null));
+        }
+
+        List<Double> predictions = service.predictBatch(requests);
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals(2.0 * (i + 1), predictions.get(i), 1e-6);
+        }
+    }
+
+    @Test
+    void predictBatchUnknownUser() {
+        when(userDataRepository.findAllById(any())).thenReturn(Collections.emptyList());
+
+        assertThrows(ResourceNotFoundException.class, () -> service.predictBatch(
+                Arrays.asList(new PredictionRequest(UUID.randomUUID(), 1000L, null))));
+    }
+
+    @Test
+    void predictBatchRejectsInvalidRequest() {
+        assertThrows(InvalidParameterException.class, () -> service.predictBatch(
+                Arrays.asList(new PredictionRequest(testUserData.getId(), -1L, null))));
+    }
+
+    @Test
+    void evictTagRefitsModel() {
+        TagStatistics stats = new TagStatistics(testUserData.getId(), "tag1");
+        stats.addTaskData(new TaskData(testUserData, 1000L, 500L, tags));
+        when(tagStatisticsRepository.findById(stats.getId())).thenReturn(Optional.of(stats));
+        assertEquals(500.0, service.predict(testUserData.getId(), 1000L, tags), 1e-9);
+
+        stats.addTaskData(new TaskData(testUserData, 1000L, 1500L, tags));
+        assertEquals(500.0, service.predict(testUserData.getId(), 1000L, tags), 1e-9);
+
+        service.evictTag(testUserData.getId(), "tag1");
+        assertEquals(1000.0, service.predict(testUserData.getId(), 1000L, tags), 1e-9);
+    }
+
+    @Test
+    void evictDeletedDropsTagModels() {
+        service.getTagModel(testUserData.getId(), "tag1");
+        service.getTagModel(testUserData.getId(), "tag2");
+
+        service.evictDeleted(testUserData.getId());
+        service.getTagModel(testUserData.getId(), "tag1");
+
+        verify(tagStatisticsRepository, times(2)).findById(new TagStatisticsId(testUserData.getId(), "tag1"));
+    }
+}
@@ -0,0 +1,111 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import org.thomaschen.streamlinedata.model.Tag;
+import org.thomaschen.streamlinedata.repository.TagRepository;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class TagDictionaryTest {
+    private TagDictionary dictionary;
+    private TagRepository repository;
+    private AtomicInteger nextId;
+
+    @BeforeEach
+    void setUp() {
+        nextId = new AtomicInteger(1);
+        repository = mock(TagRepository.class);
+        when(repository.findByNameIn(anyCollection())).thenReturn(Collections.emptyList());
+        when(repository.saveAndFlush(any(Tag.class))).thenAnswer(invocation -> saved(invocation.getArgument(0)));
+
+        dictionary = new TagDictionary();
+        dictionary.tagRepository = repository;
+        dictionary.transactionManager = mock(PlatformTransactionManager.class);
+        dictionary.entityManager = mock(EntityManager.class);
+    }
+
+    @Test
+    void internInsertsMissingTagsOnce() {
+        Map<String, Integer> ids = dictionary.intern(Arrays.asList("b", "a", "b", null));
+
+        assertEquals(2, ids.size());
+        assertEquals(1, (int) ids.get("b"));
+        assertEquals(2, (int) ids.get("a"));
+
+        assertEquals(ids, dictionary.intern(Arrays.asList("a", "b")));
+        assertEquals(2, dictionary.getId("a"));
+        verify(repository, times(2)).saveAndFlush(any(Tag.class));
+        verify(repository, times(1)).findByNameIn(anyCollection());
+        verify(repository, never()).findByName(any());
+    }
+
+    @Test
+    void internReusesTagsInsertedElsewhere() {
+        Tag existing = saved(new Tag("a"));
+        when(repository.findByNameIn(anyCollection())).thenReturn(Arrays.asList(existing));
+
+        Map<String, Integer> ids = dictionary.intern(Arrays.asList("a", "b"));
+
+        assertEquals(existing.getId(), ids.get("a"));
+        assertEquals(2, (int) ids.get("b"));
+        verify(repository, times(1)).saveAndFlush(any(Tag.class));
+    }
+
+    @Test
+    void internRetriesLostInsertRace() {
+        when(repository.saveAndFlush(any(Tag.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_tags_name"));
+        Tag inserted = saved(new Tag("a"));
+        when(repository.findByNameIn(anyCollection()))
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Arrays.asList(inserted));
+
+        assertEquals(inserted.getId(), dictionary.intern(Arrays.asList("a")).get("a"));
+    }
+
+    @Test
+    void getIdOfUnknownTagIsNotCached() {
+        when(repository.findByName("a")).thenReturn(Optional.empty());
+        assertEquals(TagDictionary.UNKNOWN_TAG_ID, dictionary.getId("a"));
+
+        Tag created = saved(new Tag("a"));
+        when(repository.findByName("a")).thenReturn(Optional.of(created));
+        assertEquals((int) created.getId(), dictionary.getId("a"));
+        assertEquals((int) created.getId(), dictionary.getId("a"));
+        verify(repository, times(2)).findByName("a");
+    }
+
+    @Test
+    void getReferencesOfDistinctTags() {
+        when(dictionary.entityManager.getReference(eq(Tag.class), any()))
+                .thenAnswer(invocation -> saved(new Tag("ref" + invocation.getArgument(1))));
+
+        List<Tag> references = dictionary.getReferences(Arrays.asList("x", "y", "x"));
+
+        assertEquals(2, references.size());
+        assertEquals("ref1", references.get(0).getName());
+        assertEquals("ref2", references.get(1).getName());
+        assertTrue(dictionary.getReferences(null).isEmpty());
+    }
+
+    private Tag saved(Tag tag) {
+        ReflectionTestUtils.setField(tag, "id", nextId.getAndIncrement());
+        return tag;
+    }
+}
@@ -0,0 +1,88 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagExpressionTest {
+    // Tasks 0-5: work on 0-3, urgent on 2-4, home on 5
+    private static final RoaringBitmap ALL = RoaringBitmap.bitmapOf(0, 1, 2, 3, 4, 5);
+    private static final Map<String, RoaringBitmap> TAGS = new HashMap<>();
+
+    static {
+        TAGS.put("work", RoaringBitmap.bitmapOf(0, 1, 2, 3));
+        TAGS.put("urgent", RoaringBitmap.bitmapOf(2, 3, 4));
+        TAGS.put("home", RoaringBitmap.bitmapOf(5));
+        TAGS.put("deep work", RoaringBitmap.bitmapOf(1));
+    }
+
+    @Test
+    void plainValueIsOneTag() {
+        assertEquals("work", TagExpression.parse("work").getTag());
+        assertEquals("deep work", TagExpression.parse("deep work").getTag());
+        assertEquals("and", TagExpression.parse("and").getTag());
+        assertEquals("", TagExpression.parse("").getTag());
+    }
+
+    @Test
+    void quotedValueIsOneTag() {
+        assertEquals("deep work", TagExpression.parse("\"deep work\"").getTag());
+        assertEquals("AND", TagExpression.parse("\"AND\"").getTag());
+        assertEquals("say \"hi\"", TagExpression.parse("\"say \\\"hi\\\"\"").getTag());
+    }
+
+    @Test
+    void keywordsCombineTags() {
+        assertArrayEquals(new int[] {2, 3}, evaluate("work AND urgent"));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 5}, evaluate("work OR home"));
+        assertArrayEquals(new int[] {0, 1}, evaluate("work AND NOT urgent"));
+        assertArrayEquals(new int[] {4}, evaluate("NOT work AND urgent"));
+        assertArrayEquals(new int[] {4, 5}, evaluate("NOT work"));
+        assertNull(TagExpression.parse("work AND urgent").getTag());
+    }
+
+    @Test
+    void notBindsTighterThanAndThanOr() {
+        assertArrayEquals(new int[] {2, 3, 5}, evaluate("home OR work AND urgent"));
+        assertArrayEquals(new int[] {2, 3}, evaluate("(home OR work) AND urgent"));
+        assertArrayEquals(new int[] {0, 1, 5}, evaluate("NOT urgent AND NOT (NOT work AND NOT home)"));
+        assertEquals("(\"home\" OR (\"work\" AND NOT \"urgent\"))",
+                TagExpression.parse("home OR work AND NOT urgent").toString());
+    }
+
+    @Test
+    void quotedTagsAndUnknownTags() {
+        assertArrayEquals(new int[] {1}, evaluate("\"deep work\" AND work"));
+        assertArrayEquals(new int[0], evaluate("missing AND work"));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5}, evaluate("NOT missing"));
+    }
+
+    @Test
+    void evaluationLeavesBitmapsUnchanged() {
+        evaluate("NOT (work OR urgent) AND NOT home");
+        assertEquals(RoaringBitmap.bitmapOf(0, 1, 2, 3), TAGS.get("work"));
+        assertEquals(RoaringBitmap.bitmapOf(0, 1, 2, 3, 4, 5), ALL);
+    }
+
+    @Test
+    void invalidExpressionsAreRejected() {
+        for (String value : new String[] {"work AND", "AND work", "(work", "work)", "work OR OR home",
+                "\"work", "()", "NOT", "work home AND urgent"}) {
+            InvalidParameterException e = assertThrows(InvalidParameterException.class,
+                    () -> TagExpression.parse(value), value);
+            assertEquals("tags", e.getParameterName());
+        }
+    }
+
+    private static int[] evaluate(String value) {
+        return TagExpression.parse(value)
+                .evaluate(tag -> TAGS.getOrDefault(tag, new RoaringBitmap()), ALL)
+                .toArray();
+    }
+}
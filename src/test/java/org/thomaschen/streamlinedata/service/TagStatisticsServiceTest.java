@@ -0,0 +1,73 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TagStatisticsId;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.repository.TagStatisticsRepository;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class TagStatisticsServiceTest {
+    private TagStatisticsService service;
+    private TagStatisticsRepository tagStatisticsRepository;
+    private Map<TagStatisticsId, TagStatistics> rows = new HashMap<>();
+    private UUID owner = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        tagStatisticsRepository = mock(TagStatisticsRepository.class);
+        when(tagStatisticsRepository.findById(any())).thenAnswer(invocation ->
+                Optional.ofNullable(rows.get(invocation.getArgument(0))));
+        when(tagStatisticsRepository.save(any())).thenAnswer(this::saveRow);
+        when(tagStatisticsRepository.saveAndFlush(any())).thenAnswer(this::saveRow);
+
+        service = new TagStatisticsService();
+        service.tagStatisticsRepository = tagStatisticsRepository;
+        service.taskDataRepository = mock(TaskDataRepository.class);
+        service.predictionService = mock(PredictionService.class);
+        service.tagDictionary = mock(TagDictionary.class);
+        when(service.tagDictionary.getId(any())).thenReturn(TagDictionary.UNKNOWN_TAG_ID);
+        when(service.taskDataRepository.sumTotalsByOwnerIdAndTagId(any(), anyInt())).thenReturn(null);
+    }
+
+    @Test
+    void readsDoNotStoreMissingRows() {
+        TagStatistics stats = service.getTagStatistics(owner, "unused");
+
+        assertEquals(0, stats.getTaskCount());
+        verify(tagStatisticsRepository, never()).save(any());
+        verify(tagStatisticsRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void writesSkipNullAndDuplicateTags() {
+        service.addTaskData(owner, new TaskData(null, 1000L, 2000L, Arrays.asList("tag1", null, "tag1", "tag2")));
+
+        assertEquals(2, rows.size());
+        assertEquals(1, rows.get(new TagStatisticsId(owner, "tag1")).getTaskCount());
+        assertEquals(1, rows.get(new TagStatisticsId(owner, "tag2")).getTaskCount());
+
+        service.seedTagStatistics(owner, new TaskData(null, 1000L, 2000L, Arrays.asList((String) null)));
+        assertEquals(2, rows.size());
+    }
+
+    private TagStatistics saveRow(InvocationOnMock invocation) {
+        TagStatistics stats = invocation.getArgument(0);
+        rows.put(stats.getId(), stats);
+        return stats;
+    }
+}
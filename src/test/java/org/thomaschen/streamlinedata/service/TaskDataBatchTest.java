@@ -0,0 +1,218 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs batch task creation against a Testcontainers MySQL database, with a JDBC batch size small
+ * enough that the persistence context is flushed and cleared several times per batch.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "spring.jpa.properties.hibernate.jdbc.batch_size=3")
+class TaskDataBatchTest {
+    private static final List<String> TAGS = Arrays.asList("review", "deploy", "meeting");
+
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    TagStatisticsService tagStatisticsService;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDeletionService userDeletionService;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @BeforeEach
+    void setUp() {
+        userDeletionService.deleteAll();
+    }
+
+    @Test
+    void batchMatchesOneAtATimeReplay() {
+        UserData alice = createUser("alice");
+        UserData bob = createUser("bob");
+        UserData batchTeam = createTeam("tbatch", alice, bob);
+        UserData aliceReplay = createUser("alice-replay");
+        UserData bobReplay = createUser("bob-replay");
+        UserData replayTeam = createTeam("treplay", aliceReplay, bobReplay);
+
+        Map<UUID, List<TaskData>> batch = new LinkedHashMap<>();
+        batch.put(alice.getId(), tasks(0, 7));
+        batch.put(bob.getId(), tasks(7, 4));
+        taskDataService.createTaskDataBatch(batch);
+
+        for (TaskData taskData : tasks(0, 7)) {
+            taskDataService.createTaskData(aliceReplay.getId(), taskData);
+        }
+        for (TaskData taskData : tasks(7, 4)) {
+            taskDataService.createTaskData(bobReplay.getId(), taskData);
+        }
+
+        assertSameAggregates(aliceReplay, alice);
+        assertSameAggregates(bobReplay, bob);
+        for (String tag : TAGS) {
+            assertSameStatistics(
+                    tagStatisticsService.getTagStatistics(aliceReplay.getId(), tag).getStatistics(),
+                    tagStatisticsService.getTagStatistics(alice.getId(), tag).getStatistics(), tag);
+            assertSameStatistics(
+                    tagStatisticsService.getTagStatistics(bobReplay.getId(), tag).getStatistics(),
+                    tagStatisticsService.getTagStatistics(bob.getId(), tag).getStatistics(), tag);
+        }
+        assertSameStatistics(teamRollupService.getRollup(replayTeam.getId()).getStatistics(),
+                teamRollupService.getRollup(batchTeam.getId()).getStatistics(), "team");
+        assertEquals(11, teamRollupService.getRollup(batchTeam.getId()).getStatistics().getTaskCount());
+    }
+
+    @Test
+    void unknownOwnerRollsBackTheBatch() {
+        UserData alice = createUser("alice");
+        UserData team = createTeam("tplatform", alice);
+
+        Map<UUID, List<TaskData>> batch = new LinkedHashMap<>();
+        batch.put(alice.getId(), tasks(0, 5));
+        batch.put(UUID.randomUUID(), tasks(5, 2));
+        assertThrows(ResourceNotFoundException.class, () -> taskDataService.createTaskDataBatch(batch));
+
+        assertEquals(0, taskDataRepository.countByOwnerId(alice.getId()));
+        assertEquals(0, (int) userDataRepository.findById(alice.getId()).get().getTotalTasksCompleted());
+        assertEquals(0, tagStatisticsService.getTagStatistics(alice.getId(), "review").getTaskCount());
+        assertEquals(0, teamRollupService.getRollup(team.getId()).getStatistics().getTaskCount());
+    }
+
+    @Test
+    void nullTasksAreRejected() {
+        UserData alice = createUser("alice");
+
+        Map<UUID, List<TaskData>> nullList = new LinkedHashMap<>();
+        nullList.put(alice.getId(), null);
+        assertThrows(InvalidParameterException.class, () -> taskDataService.createTaskDataBatch(nullList));
+
+        Map<UUID, List<TaskData>> nullTask = new LinkedHashMap<>();
+        List<TaskData> tasks = tasks(0, 2);
+        tasks.add(null);
+        nullTask.put(alice.getId(), tasks);
+        assertThrows(InvalidParameterException.class, () -> taskDataService.createTaskDataBatch(nullTask));
+
+        assertEquals(0, taskDataRepository.countByOwnerId(alice.getId()));
+    }
+
+    @Test
+    void tasksSurviveFlushAndClear() {
+        UserData alice = createUser("alice");
+        UserData bob = createUser("bob");
+
+        Map<UUID, List<TaskData>> batch = new LinkedHashMap<>();
+        batch.put(alice.getId(), tasks(0, 10));
+        batch.put(bob.getId(), tasks(10, 5));
+        Map<UUID, List<UUID>> created = taskDataService.createTaskDataBatch(batch);
+
+        assertEquals(10, created.get(alice.getId()).size());
+        assertEquals(5, created.get(bob.getId()).size());
+        assertEquals(15, new HashSet<UUID>(concat(created.values())).size());
+        assertEquals(10, taskDataRepository.countByOwnerId(alice.getId()));
+        assertEquals(5, taskDataRepository.countByOwnerId(bob.getId()));
+
+        List<TaskData> expected = tasks(0, 15);
+        List<UUID> ids = concat(Arrays.asList(created.get(alice.getId()), created.get(bob.getId())));
+        for (int i = 0; i < ids.size(); i++) {
+            TaskData stored = taskDataRepository.findById(ids.get(i)).get();
+            assertEquals(expected.get(i).getExpDuration(), stored.getExpDuration());
+            assertEquals(expected.get(i).getActualDuration(), stored.getActualDuration());
+            assertEquals(new HashSet<>(expected.get(i).getTags()), new HashSet<>(stored.getTags()));
+        }
+
+        assertEquals(10, (int) userDataRepository.findById(alice.getId()).get().getTotalTasksCompleted());
+        assertEquals(5, (int) userDataRepository.findById(bob.getId()).get().getTotalTasksCompleted());
+    }
+
+    private UserData createUser(String userId) {
+        return userDataRepository.save(new UserData(userId, 0, 0, 0, 0.0, 0.0));
+    }
+
+    private UserData createTeam(String teamId, UserData... members) {
+        UserData team = createUser(teamId);
+        for (UserData member : members) {
+            teamRollupService.addMember(team.getId(), member.getId());
+        }
+        return team;
+    }
+
+    /**
+     * Tasks with varied durations and one to three tags, the same for the same indexes
+     */
+    private static List<TaskData> tasks(int from, int count) {
+        List<TaskData> tasks = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            TaskData taskData = new TaskData();
+            taskData.setExpDuration(60000L * (1 + i % 4));
+            taskData.setActualDuration(45000L + 20000L * i);
+            taskData.setTags(new ArrayList<>(TAGS.subList(0, 1 + i % TAGS.size())));
+            tasks.add(taskData);
+        }
+        return tasks;
+    }
+
+    private static <T> List<T> concat(Iterable<List<T>> lists) {
+        List<T> all = new ArrayList<>();
+        for (List<T> list : lists) {
+            all.addAll(list);
+        }
+        return all;
+    }
+
+    private void assertSameAggregates(UserData expected, UserData actual) {
+        UserData expectedStored = userDataRepository.findById(expected.getId()).get();
+        UserData actualStored = userDataRepository.findById(actual.getId()).get();
+        assertEquals(expectedStored.getTotalTasksCompleted(), actualStored.getTotalTasksCompleted());
+        assertEquals(expectedStored.getTotalUnderTasks(), actualStored.getTotalUnderTasks());
+        assertEquals(expectedStored.getTotalOverTasks(), actualStored.getTotalOverTasks());
+        assertEquals(expectedStored.getTaskEstFactor(), actualStored.getTaskEstFactor(), 1e-9);
+        assertEquals(expectedStored.getAvgTaskTime(), actualStored.getAvgTaskTime(), 1e-6);
+        assertSameStatistics(expectedStored.toAccumulator(), actualStored.toAccumulator(), actual.getUserId());
+    }
+
+    private static void assertSameStatistics(AggregateAccumulator expected, AggregateAccumulator actual,
+                                             String message) {
+        assertEquals(expected.getTaskCount(), actual.getTaskCount(), message);
+        assertEquals(expected.getOverTaskCount(), actual.getOverTaskCount(), message);
+        assertEquals(expected.getUnderTaskCount(), actual.getUnderTaskCount(), message);
+        assertEquals(expected.getSumActualDuration(), actual.getSumActualDuration(), message);
+        assertEquals(expected.getTaskEstFactor(), actual.getTaskEstFactor(), 1e-9, message);
+        assertEquals(expected.getMeanExpDuration(), actual.getMeanExpDuration(), 1e-6, message);
+        assertEquals(expected.getRegressionSlope(), actual.getRegressionSlope(), 1e-9, message);
+        assertEquals(expected.getRegressionIntercept(), actual.getRegressionIntercept(), 1e-6, message);
+    }
+}
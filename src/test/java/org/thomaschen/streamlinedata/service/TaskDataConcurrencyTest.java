@@ -0,0 +1,249 @@
+package org.thomaschen.streamlinedata.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TagStatistics;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TaskDataView;
+import org.thomaschen.streamlinedata.model.TeamRollup;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers one user's aggregates with concurrent task writes from two simulated nodes, each
+ * with its own striped locks, and checks no update was lost against the task rows.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "streamline.writes.max-attempts=100")
+class TaskDataConcurrencyTest {
+    private static final int THREADS_PER_NODE = 8;
+    private static final int TASKS_PER_THREAD = 50;
+
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    TagStatisticsService tagStatisticsService;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    UserDataWriteExecutor userDataWriteExecutor;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    Validator validator;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    private TaskDataService otherNode;
+    private UserDataWriteExecutor otherExecutor;
+    private UserData user;
+    private UserData team;
+
+    @BeforeEach
+    void setUp() {
+        user = userDataRepository.save(new UserData("stressuser" + System.nanoTime(), 0, 0, 0, 0.0, 0.0));
+        team = userDataRepository.save(new UserData("stressteam" + System.nanoTime(), 0, 0, 0, 0.0, 0.0));
+        teamRollupService.addMember(team.getId(), user.getId());
+
+        // Same beans, but locks of its own, so conflicts with the first node only surface as version checks
+        otherExecutor = new UserDataWriteExecutor();
+        otherExecutor.transactionManager = transactionManager;
+        otherExecutor.meterRegistry = new SimpleMeterRegistry();
+        otherExecutor.stripeCount = 16;
+        otherExecutor.maxAttempts = 100;
+        otherExecutor.init();
+
+        otherNode = new TaskDataService();
+        otherNode.userDataRepository = taskDataService.userDataRepository;
+        otherNode.taskDataRepository = taskDataService.taskDataRepository;
+        otherNode.tagStatisticsService = taskDataService.tagStatisticsService;
+        otherNode.teamRollupService = taskDataService.teamRollupService;
+        otherNode.userDataCache = taskDataService.userDataCache;
+        otherNode.aggregateDeltaWorker = taskDataService.aggregateDeltaWorker;
+        otherNode.userDataWriteExecutor = otherExecutor;
+        otherNode.tagDictionary = taskDataService.tagDictionary;
+        otherNode.taskTagIndexService = taskDataService.taskTagIndexService;
+        otherNode.validator = validator;
+        otherNode.entityManager = entityManager;
+        otherNode.batchSize = taskDataService.batchSize;
+    }
+
+    @Test
+    void concurrentCreatesLoseNoUpdates() throws Exception {
+        List<Callable<Void>> writers = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < 2 * THREADS_PER_NODE; thread++) {
+            TaskDataService node = (thread % 2 == 0) ? taskDataService : otherNode;
+            int seed = thread;
+            writers.add(() -> {
+                start.await();
+                for (int i = 0; i < TASKS_PER_THREAD; i++) {
+                    TaskData taskData = new TaskData();
+                    taskData.setExpDuration(1000L);
+                    taskData.setActualDuration(500L + ((seed * TASKS_PER_THREAD + i) % 20) * 100L);
+                    taskData.setTags(Arrays.asList("stress"));
+                    node.createTaskData(user.getId(), taskData);
+                }
+                return null;
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers.size());
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (Callable<Void> writer : writers) {
+                results.add(pool.submit(writer));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        AggregateAccumulator expected = new AggregateAccumulator();
+        for (TaskDataView taskData : taskDataRepository.findViewsByOwnerId(user.getId())) {
+            expected.add(taskData.getExpDuration(), taskData.getActualDuration());
+        }
+        assertEquals(2 * THREADS_PER_NODE * TASKS_PER_THREAD, expected.getTaskCount());
+
+        UserData stored = userDataRepository.findById(user.getId()).get();
+        assertEquals(expected.getTaskCount(), (long) stored.getTotalTasksCompleted());
+        assertEquals(expected.getOverTaskCount(), (long) stored.getTotalOverTasks());
+        assertEquals(expected.getSumActualDuration(), stored.toAccumulator().getSumActualDuration());
+        assertEquals(expected.getTaskEstFactor(), stored.getTaskEstFactor(), 1e-9);
+
+        TagStatistics tagStatistics = tagStatisticsService.getTagStatistics(user.getId(), "stress");
+        assertEquals(expected.getTaskCount(), tagStatistics.getTaskCount());
+        assertEquals(expected.getSumActualDuration(), tagStatistics.getSumActualDuration());
+
+        TeamRollup rollup = teamRollupService.getRollup(team.getId());
+        assertEquals(expected.getTaskCount(), rollup.getStatistics().getTaskCount());
+        assertEquals(expected.getSumActualDuration(), rollup.getStatistics().getSumActualDuration());
+    }
+
+    @Test
+    void membershipChangesDuringTaskWritesLoseNoTasks() throws Exception {
+        UserData member = userDataRepository.save(new UserData("stressmember" + System.nanoTime(), 0, 0, 0, 0.0, 0.0));
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS_PER_NODE);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS_PER_NODE; thread++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < TASKS_PER_THREAD; i++) {
+                        TaskData taskData = new TaskData();
+                        taskData.setExpDuration(1000L);
+                        taskData.setActualDuration(500L + i * 100L);
+                        taskData.setTags(Arrays.asList("stress"));
+                        otherNode.createTaskData(member.getId(), taskData);
+                    }
+                    return null;
+                }));
+            }
+
+            // Membership changes go through the executor of this node, as the team controller does
+            start.countDown();
+            List<UUID> locked = Arrays.asList(team.getId(), member.getId());
+            for (int i = 0; i < TASKS_PER_THREAD; i++) {
+                userDataWriteExecutor.execute(locked, () -> teamRollupService.addMember(team.getId(), member.getId()));
+                userDataWriteExecutor.execute(locked, () -> {
+                    teamRollupService.removeMember(team.getId(), member.getId());
+                    return null;
+                });
+            }
+            userDataWriteExecutor.execute(locked, () -> teamRollupService.addMember(team.getId(), member.getId()));
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        AggregateAccumulator expected = new AggregateAccumulator();
+        for (UserData stored : userDataRepository.findAllById(Arrays.asList(user.getId(), member.getId()))) {
+            expected.merge(stored.toAccumulator());
+        }
+        assertEquals(THREADS_PER_NODE * TASKS_PER_THREAD, taskDataRepository.countByOwnerId(member.getId()));
+
+        TeamRollup rollup = teamRollupService.getRollup(team.getId());
+        assertEquals(2, rollup.getMemberCount());
+        assertEquals(expected.getTaskCount(), rollup.getStatistics().getTaskCount());
+        assertEquals(expected.getSumActualDuration(), rollup.getStatistics().getSumActualDuration());
+    }
+
+    @Test
+    void memberAddedDuringTaskWriteGetsTheTask() throws Exception {
+        UserData member = userDataRepository.save(new UserData("stressmember" + System.nanoTime(), 0, 0, 0, 0.0, 0.0));
+        Thread adder = new Thread(() -> otherExecutor.execute(Arrays.asList(team.getId(), member.getId()),
+                () -> teamRollupService.addMember(team.getId(), member.getId())));
+
+        userDataWriteExecutor.execute(member.getId(), () -> {
+            TaskData taskData = new TaskData();
+            taskData.setExpDuration(1000L);
+            taskData.setActualDuration(2000L);
+            taskData.setTags(Arrays.asList("stress"));
+            TaskData created = taskDataService.createTaskData(member.getId(), taskData);
+
+            // The other node adds the member after this write looked up the member's teams
+            if (adder.getState() == Thread.State.NEW) {
+                adder.start();
+                try {
+                    adder.join(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return created;
+        });
+        adder.join();
+
+        TeamRollup rollup = teamRollupService.getRollup(team.getId());
+        assertEquals(2, rollup.getMemberCount());
+        assertEquals(userDataRepository.findById(user.getId()).get().getTotalTasksCompleted() + 1,
+                rollup.getStatistics().getTaskCount());
+    }
+}
@@ -0,0 +1,99 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.thomaschen.streamlinedata.model.TaskDataView;
+import org.thomaschen.streamlinedata.model.TaskTag;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class TaskDataViewServiceTest {
+    private TaskDataViewService service;
+    private TaskDataRepository repository;
+    private UUID owner = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(TaskDataRepository.class);
+        service = new TaskDataViewService();
+        service.taskDataRepository = repository;
+    }
+
+    @Test
+    void withTagsAddsTagsToTheirTasks() {
+        TaskDataView first = view();
+        TaskDataView second = view();
+        TaskDataView untagged = view();
+        when(repository.findTagsByTaskIdIn(anyCollection())).thenReturn(Arrays.asList(
+                tag(first.getTaskId(), "tag1"),
+                tag(second.getTaskId(), "tag1"),
+                tag(first.getTaskId(), "tag2")));
+
+        List<TaskDataView> views = service.withTags(Arrays.asList(first, second, untagged));
+
+        assertEquals(Arrays.asList("tag1", "tag2"), views.get(0).getTags());
+        assertEquals(Arrays.asList("tag1"), views.get(1).getTags());
+        assertTrue(views.get(2).getTags().isEmpty());
+        verify(repository, times(1)).findTagsByTaskIdIn(anyCollection());
+    }
+
+    @Test
+    void withTagsQueriesInChunks() {
+        List<TaskDataView> views = new ArrayList<>();
+        for (int i = 0; i < TaskDataViewService.TAG_QUERY_CHUNK * 2 + 1; i++) {
+            views.add(view());
+        }
+        when(repository.findTagsByTaskIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            assertTrue(ids.size() <= TaskDataViewService.TAG_QUERY_CHUNK);
+            List<TaskTag> tags = new ArrayList<>();
+            for (UUID id : ids) {
+                tags.add(tag(id, "tag1"));
+            }
+            return tags;
+        });
+
+        service.withTags(views);
+
+        verify(repository, times(3)).findTagsByTaskIdIn(anyCollection());
+        for (TaskDataView view : views) {
+            assertEquals(Arrays.asList("tag1"), view.getTags());
+        }
+    }
+
+    @Test
+    void withTagsSkipsEmptyList() {
+        service.withTags(new ArrayList<>());
+
+        verify(repository, never()).findTagsByTaskIdIn(anyCollection());
+    }
+
+    private TaskDataView view() {
+        return new TaskDataView(UUID.randomUUID(), Calendar.getInstance(), owner, 1000L, 1200L);
+    }
+
+    private static TaskTag tag(UUID taskId, String tag) {
+        return new TaskTag() {
+            @Override
+            public UUID getTaskId() {
+                return taskId;
+            }
+
+            @Override
+            public String getTag() {
+                return tag;
+            }
+        };
+    }
+}
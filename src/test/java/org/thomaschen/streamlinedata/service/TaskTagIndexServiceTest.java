@@ -0,0 +1,235 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TaskDataView;
+import org.thomaschen.streamlinedata.model.TaskTag;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TaskTagIndexServiceTest {
+    private static final TagExpression WORK_AND_NOT_URGENT = TagExpression.parse("work AND NOT urgent");
+    private static final TagExpression WORK_OR_HOME = TagExpression.parse("work OR home");
+
+    private TaskTagIndexService service;
+    private TaskDataRepository repository;
+    private UUID owner = UUID.randomUUID();
+    private List<TaskDataView> views = new ArrayList<>();
+    private List<TaskTag> tags = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(TaskDataRepository.class);
+        when(repository.findViewsByOwnerId(owner)).thenAnswer(invocation -> new ArrayList<>(views));
+        when(repository.findTagsByOwnerId(owner)).thenAnswer(invocation -> new ArrayList<>(tags));
+
+        service = new TaskTagIndexService();
+        service.taskDataRepository = repository;
+        service.transactionManager = mock(PlatformTransactionManager.class);
+        service.maximumTasks = 1000;
+        service.expireAfterLoadSeconds = 60;
+        service.init();
+
+        // 0: work, 1: work urgent, 2: home, 3: untagged
+        addStored(1000L, 1000L, "work");
+        addStored(1000L, 3000L, "work", "urgent");
+        addStored(2000L, 1000L, "home");
+        addStored(500L, 500L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void accumulateSelectedTasks() {
+        AggregateAccumulator accumulator = service.accumulate(owner, WORK_OR_HOME);
+
+        assertEquals(3, accumulator.getTaskCount());
+        assertEquals(5000L, accumulator.getSumActualDuration());
+        assertEquals(1, accumulator.getOverTaskCount());
+        assertEquals(1, service.accumulate(owner, WORK_AND_NOT_URGENT).getTaskCount());
+        assertEquals(1, service.accumulate(owner, TagExpression.parse("NOT (work OR home)")).getTaskCount());
+    }
+
+    @Test
+    void indexLoadsOnce() {
+        service.accumulate(owner, WORK_OR_HOME);
+        service.findViews(owner, WORK_AND_NOT_URGENT);
+
+        verify(repository, times(1)).findViewsByOwnerId(owner);
+        verify(repository, times(1)).findTagsByOwnerId(owner);
+        assertEquals(1, service.getIndexes().stats().hitCount());
+    }
+
+    @Test
+    void viewsAreOldestFirstWithTags() {
+        List<TaskDataView> found = service.findViews(owner, TagExpression.parse("work OR NOT home"));
+
+        assertEquals(Arrays.asList(views.get(0).getTaskId(), views.get(1).getTaskId(), views.get(3).getTaskId()),
+                taskIds(found));
+        assertEquals(Arrays.asList("work"), found.get(0).getTags());
+        assertEquals(Arrays.asList("urgent", "work"), found.get(1).getTags());
+        assertTrue(found.get(2).getTags().isEmpty());
+        assertEquals(owner, found.get(0).getOwner());
+        assertEquals(views.get(1).getCreatedAt().getTimeInMillis(), found.get(1).getCreatedAt().getTimeInMillis());
+    }
+
+    @Test
+    void selectCopiesTimeSeriesColumns() {
+        TaskTagIndex.Selection selection = service.select(owner, WORK_OR_HOME);
+
+        assertEquals(3, selection.size());
+        assertEquals(views.get(2).getCreatedAt().getTimeInMillis(), selection.getCreatedAt(2));
+        assertEquals(3000L, selection.getActualDuration(1));
+        assertEquals(2000L, selection.getExpDuration(2));
+    }
+
+    @Test
+    void committedWritesUpdateLoadedIndex() {
+        service.accumulate(owner, WORK_OR_HOME);
+
+        TransactionSynchronizationManager.initSynchronization();
+        TaskData created = task(later(3), 1000L, 1000L, "home");
+        service.tasksSaved(owner, Collections.singletonList(created));
+        TaskData updated = task(views.get(0).getCreatedAt(), 1000L, 1000L, "home");
+        ReflectionTestUtils.setField(updated, "taskId", views.get(0).getTaskId());
+        service.tasksSaved(owner, Collections.singletonList(updated));
+        service.taskDeleted(owner, views.get(2).getTaskId());
+
+        assertEquals(1, service.accumulate(owner, WORK_AND_NOT_URGENT).getTaskCount());
+        commit();
+
+        assertEquals(0, service.accumulate(owner, WORK_AND_NOT_URGENT).getTaskCount());
+        assertEquals(Arrays.asList(views.get(0).getTaskId(), views.get(1).getTaskId(), created.getTaskId()),
+                taskIds(service.findViews(owner, WORK_OR_HOME)));
+        assertEquals(Arrays.asList("home"), service.findViews(owner, TagExpression.parse("home OR home")).get(0).getTags());
+        verify(repository, times(1)).findViewsByOwnerId(owner);
+    }
+
+    @Test
+    void rolledBackWritesAreNotApplied() {
+        service.accumulate(owner, WORK_OR_HOME);
+
+        TransactionSynchronizationManager.initSynchronization();
+        service.tasksSaved(owner, Collections.singletonList(task(later(3), 1000L, 1000L, "home")));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertEquals(3, service.accumulate(owner, WORK_OR_HOME).getTaskCount());
+    }
+
+    @Test
+    void olderTaskEvictsIndex() {
+        service.accumulate(owner, WORK_OR_HOME);
+
+        TransactionSynchronizationManager.initSynchronization();
+        Calendar earlier = (Calendar) views.get(0).getCreatedAt().clone();
+        earlier.add(Calendar.SECOND, -1);
+        TaskData older = task(earlier, 1000L, 1000L, "work");
+        service.tasksSaved(owner, Collections.singletonList(older));
+        commit();
+
+        assertNull(service.getIndexes().getIfPresent(owner));
+        views.add(0, view(older));
+        tags.add(tag(older.getTaskId(), "work"));
+        assertEquals(older.getTaskId(), service.findViews(owner, WORK_OR_HOME).get(0).getTaskId());
+    }
+
+    @Test
+    void writeDuringLoadIsNotCached() {
+        when(repository.findTagsByOwnerId(owner)).thenAnswer(invocation -> {
+            TransactionSynchronizationManager.initSynchronization();
+            service.taskDeleted(owner, views.get(0).getTaskId());
+            commit();
+            TransactionSynchronizationManager.clearSynchronization();
+            return new ArrayList<>(tags);
+        });
+
+        service.accumulate(owner, WORK_OR_HOME);
+
+        assertNull(service.getIndexes().getIfPresent(owner));
+    }
+
+    @Test
+    void clearEvictsEveryIndex() {
+        service.accumulate(owner, WORK_OR_HOME);
+        service.clear();
+
+        assertEquals(0, service.getIndexes().estimatedSize());
+    }
+
+    private void addStored(long expDuration, long actualDuration, String... taskTags) {
+        TaskData taskData = task(later(views.size()), expDuration, actualDuration, taskTags);
+        views.add(view(taskData));
+        for (String taskTag : taskTags) {
+            tags.add(tag(taskData.getTaskId(), taskTag));
+        }
+    }
+
+    private static TaskData task(Calendar createdAt, long expDuration, long actualDuration, String... taskTags) {
+        TaskData taskData = new TaskData(null, expDuration, actualDuration, Arrays.asList(taskTags));
+        ReflectionTestUtils.setField(taskData, "taskId", UUID.randomUUID());
+        taskData.setCreatedAt(createdAt);
+        return taskData;
+    }
+
+    private TaskDataView view(TaskData taskData) {
+        return new TaskDataView(taskData.getTaskId(), taskData.getCreatedAt(), owner,
+                taskData.getExpDuration(), taskData.getActualDuration());
+    }
+
+    private static Calendar later(int minutes) {
+        Calendar createdAt = Calendar.getInstance();
+        createdAt.setTimeInMillis(1500000000000L);
+        createdAt.add(Calendar.MINUTE, minutes);
+        return createdAt;
+    }
+
+    private static List<UUID> taskIds(List<TaskDataView> views) {
+        List<UUID> ids = new ArrayList<>();
+        for (TaskDataView view : views) {
+            ids.add(view.getTaskId());
+        }
+        return ids;
+    }
+
+    private static void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+    }
+
+    private static TaskTag tag(UUID taskId, String tag) {
+        return new TaskTag() {
+            @Override
+            public UUID getTaskId() {
+                return taskId;
+            }
+
+            @Override
+            public String getTag() {
+                return tag;
+            }
+        };
+    }
+}
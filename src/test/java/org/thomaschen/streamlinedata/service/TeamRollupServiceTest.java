@@ -0,0 +1,230 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+import org.thomaschen.streamlinedata.exceptions.InvalidParameterException;
+import org.thomaschen.streamlinedata.exceptions.ResourceNotFoundException;
+import org.thomaschen.streamlinedata.model.AggregateAccumulator;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TeamMembership;
+import org.thomaschen.streamlinedata.model.TeamMembershipId;
+import org.thomaschen.streamlinedata.model.TeamRollup;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TeamMembershipRepository;
+import org.thomaschen.streamlinedata.repository.TeamRollupRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TeamRollupServiceTest {
+    private TeamRollupService service;
+    private UserDataRepository userDataRepository;
+    private TeamMembershipRepository teamMembershipRepository;
+    private TeamRollupRepository teamRollupRepository;
+    private Map<UUID, TeamRollup> rollups = new HashMap<>();
+    private List<UUID> memberIds = new ArrayList<>();
+    private List<String> tags = Arrays.asList("tag1");
+    private UserData team;
+    private UserData alice;
+    private UserData bob;
+
+    @BeforeEach
+    void setUp() {
+        team = new UserData("team", 0, 0, 0, 0.0, 0.0);
+        alice = new UserData("alice", 0, 0, 0, 0.0, 0.0);
+        bob = new UserData("bob", 0, 0, 0, 0.0, 0.0);
+        alice.addTaskData(new TaskData(alice, 1000L, 2000L, tags));
+        bob.addTaskData(new TaskData(bob, 1000L, 500L, tags));
+        bob.addTaskData(new TaskData(bob, 2000L, 1000L, tags));
+
+        userDataRepository = mock(UserDataRepository.class);
+        teamMembershipRepository = mock(TeamMembershipRepository.class);
+        teamRollupRepository = mock(TeamRollupRepository.class);
+
+        for (UserData user : Arrays.asList(team, alice, bob)) {
+            when(userDataRepository.existsById(user.getId())).thenReturn(true);
+        }
+        when(userDataRepository.findById(any())).thenAnswer(invocation ->
+                Arrays.asList(team, alice, bob).stream()
+                        .filter(user -> user.getId().equals(invocation.getArgument(0)))
+                        .findFirst());
+        when(userDataRepository.findAllById(any())).thenAnswer(this::findUsers);
+        when(userDataRepository.findAllByIdForUpdate(any())).thenAnswer(this::findUsers);
+
+        when(teamMembershipRepository.existsById(any())).thenAnswer(invocation ->
+                memberIds.contains(((TeamMembershipId) invocation.getArgument(0)).getMemberId()));
+        when(teamMembershipRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            memberIds.add(((TeamMembership) invocation.getArgument(0)).getMemberId());
+            return invocation.getArgument(0);
+        });
+        doAnswer(invocation -> memberIds.remove(((TeamMembershipId) invocation.getArgument(0)).getMemberId()))
+                .when(teamMembershipRepository).deleteById(any());
+        when(teamMembershipRepository.findMemberIdsByTeamId(team.getId()))
+                .thenAnswer(invocation -> new ArrayList<>(memberIds));
+        when(teamMembershipRepository.findTeamIdsByMemberId(any())).thenAnswer(invocation ->
+                memberIds.contains(invocation.getArgument(0))
+                        ? Collections.singletonList(team.getId())
+                        : Collections.emptyList());
+
+        when(teamRollupRepository.findById(any())).thenAnswer(invocation ->
+                Optional.ofNullable(rollups.get(invocation.getArgument(0))));
+        when(teamRollupRepository.findByIdForUpdate(any())).thenAnswer(invocation ->
+                Optional.ofNullable(rollups.get(invocation.getArgument(0))));
+        when(teamRollupRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<TeamRollup> found = new ArrayList<>();
+            for (Object id : (Iterable<?>) invocation.getArgument(0)) {
+                if (rollups.containsKey(id)) {
+                    found.add(rollups.get(id));
+                }
+            }
+            return found;
+        });
+        when(teamRollupRepository.save(any())).thenAnswer(this::saveRollup);
+        when(teamRollupRepository.saveAndFlush(any())).thenAnswer(this::saveRollup);
+
+        service = new TeamRollupService();
+        service.userDataRepository = userDataRepository;
+        service.teamMembershipRepository = teamMembershipRepository;
+        service.teamRollupRepository = teamRollupRepository;
+    }
+
+    @Test
+    void addMembersMergesStatistics() {
+        service.addMember(team.getId(), alice.getId());
+        TeamRollup rollup = service.addMember(team.getId(), bob.getId());
+
+        assertEquals(2, rollup.getMemberCount());
+        assertEquals(3, rollup.getStatistics().getTaskCount());
+        assertEquals(1, rollup.getStatistics().getOverTaskCount());
+        assertEquals(3500, rollup.getStatistics().getSumActualDuration());
+        assertEquals(1.0, rollup.getStatistics().getTaskEstFactor(), 1e-9);
+    }
+
+    @Test
+    void addMemberIsIdempotent() {
+        service.addMember(team.getId(), alice.getId());
+        TeamRollup rollup = service.addMember(team.getId(), alice.getId());
+
+        assertEquals(1, rollup.getMemberCount());
+        assertEquals(1, rollup.getStatistics().getTaskCount());
+        assertEquals(1, memberIds.size());
+    }
+
+    @Test
+    void addMemberRejectsSelfAndUnknownUsers() {
+        assertThrows(InvalidParameterException.class,
+                () -> service.addMember(team.getId(), team.getId()));
+        assertThrows(ResourceNotFoundException.class,
+                () -> service.addMember(team.getId(), UUID.randomUUID()));
+        assertThrows(ResourceNotFoundException.class,
+                () -> service.addMember(UUID.randomUUID(), alice.getId()));
+    }
+
+    @Test
+    void taskWritesApplyToExistingRollups() {
+        service.addMember(team.getId(), alice.getId());
+        TaskData taskData = new TaskData(alice, 4000L, 4000L, tags);
+
+        service.addTaskData(alice.getId(), taskData);
+        assertEquals(2, rollups.get(team.getId()).getStatistics().getTaskCount());
+        assertEquals(6000, rollups.get(team.getId()).getStatistics().getSumActualDuration());
+
+        service.subtractTaskData(alice.getId(), taskData);
+        assertEquals(1, rollups.get(team.getId()).getStatistics().getTaskCount());
+        assertEquals(2000, rollups.get(team.getId()).getStatistics().getSumActualDuration());
+
+        AggregateAccumulator batch = new AggregateAccumulator();
+        batch.add(1000L, 3000L);
+        batch.add(1000L, 1000L);
+        service.addTaskDataBatch(alice.getId(), batch);
+        assertEquals(3, rollups.get(team.getId()).getStatistics().getTaskCount());
+        assertEquals(6000, rollups.get(team.getId()).getStatistics().getSumActualDuration());
+    }
+
+    @Test
+    void taskWritesSkipMissingRollups() {
+        service.addTaskData(alice.getId(), new TaskData(alice, 4000L, 4000L, tags));
+
+        verify(teamRollupRepository, never()).save(any());
+    }
+
+    @Test
+    void removeMemberRecomputes() {
+        service.addMember(team.getId(), alice.getId());
+        service.addMember(team.getId(), bob.getId());
+
+        service.removeMember(team.getId(), alice.getId());
+
+        TeamRollup rollup = rollups.get(team.getId());
+        assertEquals(1, rollup.getMemberCount());
+        assertEquals(2, rollup.getStatistics().getTaskCount());
+        assertEquals(1500, rollup.getStatistics().getSumActualDuration());
+        assertThrows(ResourceNotFoundException.class,
+                () -> service.removeMember(team.getId(), alice.getId()));
+    }
+
+    @Test
+    void getRollupComputesMissingRollup() {
+        memberIds.add(alice.getId());
+        memberIds.add(bob.getId());
+
+        TeamRollup rollup = service.getRollup(team.getId());
+
+        assertEquals(2, rollup.getMemberCount());
+        assertEquals(3, rollup.getStatistics().getTaskCount());
+        verify(teamRollupRepository, never()).save(any());
+        verify(teamRollupRepository, never()).saveAndFlush(any());
+        verify(userDataRepository, never()).findAllByIdForUpdate(any());
+    }
+
+    @Test
+    void membershipChangesLockMembers() {
+        service.addMember(team.getId(), alice.getId());
+        service.addMember(team.getId(), bob.getId());
+        verify(userDataRepository).findAllByIdForUpdate(Collections.singletonList(bob.getId()));
+
+        service.removeMember(team.getId(), alice.getId());
+        verify(userDataRepository, times(2)).findAllByIdForUpdate(Collections.singletonList(bob.getId()));
+    }
+
+    @Test
+    void memberChangedRecomputes() {
+        service.addMember(team.getId(), alice.getId());
+        alice.setTotalTasksCompleted(10);
+
+        service.memberChanged(alice.getId());
+
+        assertEquals(10, rollups.get(team.getId()).getStatistics().getTaskCount());
+    }
+
+    private TeamRollup saveRollup(InvocationOnMock invocation) {
+        TeamRollup rollup = invocation.getArgument(0);
+        rollups.put(rollup.getTeamId(), rollup);
+        return rollup;
+    }
+
+    private List<UserData> findUsers(InvocationOnMock invocation) {
+        List<UserData> found = new ArrayList<>();
+        for (Object id : (Iterable<?>) invocation.getArgument(0)) {
+            for (UserData user : Arrays.asList(team, alice, bob)) {
+                if (user.getId().equals(id)) {
+                    found.add(user);
+                }
+            }
+        }
+        return found;
+    }
+}
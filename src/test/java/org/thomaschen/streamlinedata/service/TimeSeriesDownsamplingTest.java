@@ -0,0 +1,148 @@
+package org.thomaschen.streamlinedata.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TimeSeriesDownsamplingTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private CollectingSink collected;
+
+    @BeforeEach
+    void setUp() {
+        collected = new CollectingSink();
+    }
+
+    @Test
+    void bucketStartWeekBeginsOnMonday() {
+        // 1970-01-05 was a Monday
+        long monday = 4 * DAY;
+        assertEquals(monday, TimeBucket.WEEK.bucketStart(monday));
+        assertEquals(monday, TimeBucket.WEEK.bucketStart(monday + 6 * DAY + HOUR));
+        assertEquals(monday - 7 * DAY, TimeBucket.WEEK.bucketStart(monday - 1));
+    }
+
+    @Test
+    void fromName() {
+        assertEquals(TimeBucket.DAY, TimeBucket.fromName("day"));
+        assertEquals(TimeBucket.HOUR, TimeBucket.fromName("HOUR"));
+        assertNull(TimeBucket.fromName("month"));
+    }
+
+    @Test
+    void timeBucketSinkKeepsLastValuePerBucket() throws Exception {
+        TimeBucketSink sink = new TimeBucketSink(TimeBucket.HOUR, collected);
+        sink.accept(10, 1.0);
+        sink.accept(20, 2.0);
+        sink.accept(HOUR + 5, 3.0);
+        sink.accept(3 * HOUR, 4.0);
+        sink.finish();
+
+        assertEquals(3, collected.timestamps.size());
+        assertEquals(0L, (long) collected.timestamps.get(0));
+        assertEquals(2.0, (double) collected.values.get(0));
+        assertEquals(HOUR, (long) collected.timestamps.get(1));
+        assertEquals(3 * HOUR, (long) collected.timestamps.get(2));
+        assertTrue(collected.finished);
+    }
+
+    @Test
+    void lttbPassesThroughSmallSeries() throws Exception {
+        LargestTriangleThreeBucketsSink sink = new LargestTriangleThreeBucketsSink(4, 10, collected);
+        for (int i = 0; i < 4; i++) {
+            sink.accept(i, i);
+        }
+        sink.finish();
+
+        assertEquals(4, collected.timestamps.size());
+    }
+
+    @Test
+    void lttbKeepsEndpointsAndLimitsPoints() throws Exception {
+        int total = 1000;
+        LargestTriangleThreeBucketsSink sink = new LargestTriangleThreeBucketsSink(total, 50, collected);
+        for (int i = 0; i < total; i++) {
+            sink.accept(i, Math.sin(i / 10.0));
+        }
+        sink.finish();
+
+        assertEquals(50, collected.timestamps.size());
+        assertEquals(0L, (long) collected.timestamps.get(0));
+        assertEquals(total - 1, (long) collected.timestamps.get(49));
+        for (int i = 1; i < collected.timestamps.size(); i++) {
+            assertTrue(collected.timestamps.get(i) > collected.timestamps.get(i - 1));
+        }
+    }
+
+    @Test
+    void lttbSelectsSpike() throws Exception {
+        LargestTriangleThreeBucketsSink sink = new LargestTriangleThreeBucketsSink(11, 3, collected);
+        for (int i = 0; i < 11; i++) {
+            sink.accept(i, i == 6 ? 100.0 : 0.0);
+        }
+        sink.finish();
+
+        assertEquals(3, collected.timestamps.size());
+        assertEquals(6L, (long) collected.timestamps.get(1));
+        assertEquals(100.0, (double) collected.values.get(1));
+    }
+
+    @Test
+    void lttbToleratesShorterSeriesThanExpected() throws Exception {
+        LargestTriangleThreeBucketsSink sink = new LargestTriangleThreeBucketsSink(100, 10, collected);
+        for (int i = 0; i < 40; i++) {
+            sink.accept(i, i);
+        }
+        sink.finish();
+
+        assertTrue(collected.timestamps.size() <= 10);
+        assertEquals(39L, (long) collected.timestamps.get(collected.timestamps.size() - 1));
+    }
+
+    @Test
+    void failedQueryWritesNothing() {
+        TaskDataRepository repository = mock(TaskDataRepository.class);
+        UUID ownerId = UUID.randomUUID();
+        when(repository.streamPointsByOwnerId(ownerId)).thenThrow(new DataAccessResourceFailureException("down"));
+
+        TimeSeriesService service = new TimeSeriesService();
+        service.taskDataRepository = repository;
+        service.objectMapper = new ObjectMapper();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> service.writeTimeSeries(ownerId, null, null, null, out));
+        assertEquals(0, out.size());
+    }
+
+    private static class CollectingSink implements TimeSeriesSink {
+        private final List<Long> timestamps = new ArrayList<>();
+        private final List<Double> values = new ArrayList<>();
+        private boolean finished = false;
+
+        @Override
+        public void accept(long timestamp, double value) {
+            timestamps.add(timestamp);
+            values.add(value);
+        }
+
+        @Override
+        public void finish() {
+            finished = true;
+        }
+    }
+}
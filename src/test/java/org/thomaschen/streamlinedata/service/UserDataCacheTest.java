@@ -0,0 +1,187 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.model.UserDataSnapshot;
+import org.thomaschen.streamlinedata.model.UserIdentity;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserDataCacheTest {
+    private UserDataCache cache;
+    private UserDataRepository repository;
+    private UserData testUserData;
+
+    @BeforeEach
+    void setUp() {
+        testUserData = new UserData("user1", 2, 1, 1, 1.1, 1100.0);
+        repository = mock(UserDataRepository.class);
+        when(repository.findSnapshotById(testUserData.getId()))
+                .thenAnswer(invocation -> Optional.of(new UserDataSnapshot(testUserData)));
+        when(repository.findIdByUserId("user1")).thenReturn(Optional.of(testUserData.getId()));
+
+        cache = new UserDataCache();
+        cache.userDataRepository = repository;
+        cache.predictionService = mock(PredictionService.class);
+        cache.taskTagIndexService = mock(TaskTagIndexService.class);
+        cache.maximumSize = 100;
+        cache.expireAfterWriteSeconds = 60;
+        cache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void getByIdLoadsOnce() {
+        UserDataSnapshot first = cache.getById(testUserData.getId());
+        UserDataSnapshot second = cache.getById(testUserData.getId());
+
+        assertSame(first, second);
+        assertEquals(1100.0, first.getAvgTaskTime().doubleValue());
+        verify(repository, times(1)).findSnapshotById(testUserData.getId());
+        assertEquals(1, cache.getSnapshots().stats().hitCount());
+        assertEquals(1, cache.getSnapshots().stats().missCount());
+    }
+
+    @Test
+    void getByIdMissingUser() {
+        UUID missing = UUID.randomUUID();
+        when(repository.findSnapshotById(missing)).thenReturn(Optional.empty());
+
+        assertNull(cache.getById(missing));
+        assertEquals(0, cache.getSnapshots().estimatedSize());
+    }
+
+    @Test
+    void getByUserIdSharesSnapshot() {
+        UserDataSnapshot byName = cache.getByUserId("user1");
+        UserDataSnapshot byId = cache.getById(testUserData.getId());
+
+        assertSame(byName, byId);
+        verify(repository, times(1)).findIdByUserId("user1");
+        verify(repository, times(1)).findSnapshotById(testUserData.getId());
+    }
+
+    @Test
+    void evictReloadsAggregates() {
+        cache.getById(testUserData.getId());
+        testUserData.setAvgTaskTime(2000.0);
+
+        cache.evict(testUserData.getId());
+
+        assertEquals(2000.0, cache.getById(testUserData.getId()).getAvgTaskTime().doubleValue());
+    }
+
+    @Test
+    void evictAgainAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.evict(testUserData.getId());
+
+        // A read racing the writer caches the old aggregates
+        cache.getById(testUserData.getId());
+        assertEquals(1, cache.getSnapshots().estimatedSize());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        assertEquals(0, cache.getSnapshots().estimatedSize());
+    }
+
+    @Test
+    void evictDeletedForgetsUserId() {
+        cache.getByUserId("user1");
+        cache.evictDeleted(testUserData.getId(), "user1");
+
+        when(repository.findIdByUserId("user1")).thenReturn(Optional.empty());
+        assertNull(cache.getByUserId("user1"));
+    }
+
+    @Test
+    void loadRacingDeletionDoesNotIndexUserId() {
+        // The user is deleted after its row was read, before the load caches anything
+        when(repository.findSnapshotById(testUserData.getId())).thenAnswer(invocation -> {
+            UserDataSnapshot snapshot = new UserDataSnapshot(testUserData);
+            cache.evictDeleted(testUserData.getId(), "user1");
+            return Optional.of(snapshot);
+        });
+
+        assertNotNull(cache.getById(testUserData.getId()));
+        assertNull(cache.getIds().getIfPresent("user1"));
+        assertNull(cache.getSnapshots().getIfPresent(testUserData.getId()));
+
+        // Without the race the load indexes the userId
+        doAnswer(invocation -> Optional.of(new UserDataSnapshot(testUserData)))
+                .when(repository).findSnapshotById(testUserData.getId());
+        assertNotNull(cache.getById(testUserData.getId()));
+        assertEquals(testUserData.getId(), cache.getIds().getIfPresent("user1"));
+    }
+
+    @Test
+    void resolveIdQueriesOnce() {
+        assertEquals(testUserData.getId(), cache.resolveId("user1"));
+        assertEquals(testUserData.getId(), cache.resolveId("user1"));
+
+        verify(repository, times(1)).findIdByUserId("user1");
+        verify(repository, never()).findSnapshotById(any());
+    }
+
+    @Test
+    void resolveIdsLoadsMissingInOneQuery() {
+        UserIdentity user2 = identity("user2", UUID.randomUUID());
+        when(repository.findIdentitiesByUserIdIn(anyCollection())).thenReturn(Arrays.asList(user2));
+        cache.resolveId("user1");
+
+        Map<String, UUID> ids = cache.resolveIds(Arrays.asList("user1", "user2", "user3"));
+
+        assertEquals(2, ids.size());
+        assertEquals(testUserData.getId(), ids.get("user1"));
+        assertEquals(user2.getId(), ids.get("user2"));
+        verify(repository, times(1)).findIdentitiesByUserIdIn(new HashSet<>(Arrays.asList("user2", "user3")));
+    }
+
+    @Test
+    void snapshotCopiesUserData() {
+        UserDataSnapshot snapshot = new UserDataSnapshot(testUserData);
+
+        assertEquals(testUserData.getId(), snapshot.getId());
+        assertEquals(testUserData.getUserId(), snapshot.getUserId());
+        assertEquals(testUserData.getTotalTasksCompleted(), snapshot.getTotalTasksCompleted());
+        assertEquals(testUserData.getTotalUnderTasks(), snapshot.getTotalUnderTasks());
+        assertEquals(testUserData.getTotalOverTasks(), snapshot.getTotalOverTasks());
+        assertEquals(testUserData.getTaskEstFactor(), snapshot.getTaskEstFactor());
+        assertEquals(testUserData.getCreatedAt(), snapshot.getCreatedAt());
+        assertNotSame(snapshot.getCreatedAt(), snapshot.getCreatedAt());
+    }
+
+    private static UserIdentity identity(String userId, UUID id) {
+        return new UserIdentity() {
+            @Override
+            public String getUserId() {
+                return userId;
+            }
+
+            @Override
+            public UUID getId() {
+                return id;
+            }
+        };
+    }
+}
@@ -0,0 +1,163 @@
+package org.thomaschen.streamlinedata.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import org.thomaschen.streamlinedata.exceptions.ConcurrentUpdateException;
+import org.thomaschen.streamlinedata.model.UserData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UserDataWriteExecutorTest {
+    private UserDataWriteExecutor executor;
+    private PlatformTransactionManager transactionManager;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        executor = new UserDataWriteExecutor();
+        executor.transactionManager = transactionManager;
+        executor.meterRegistry = meterRegistry = new SimpleMeterRegistry();
+        executor.stripeCount = 16;
+        executor.maxAttempts = 3;
+        executor.init();
+    }
+
+    @Test
+    void retriesOptimisticLockFailures() {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = executor.execute(UUID.randomUUID(), () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException(UserData.class, "id");
+            }
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+        verify(transactionManager, times(2)).rollback(any());
+        verify(transactionManager, times(1)).commit(any());
+        assertEquals(2, meterRegistry.counter("streamline.aggregates.writes.retries").count(), 1e-9);
+        assertEquals(1, meterRegistry.timer("streamline.aggregates.writes", "outcome", "success").count());
+    }
+
+    @Test
+    void giveUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(ConcurrentUpdateException.class, () -> executor.execute(UUID.randomUUID(), () -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException(UserData.class, "id");
+        }));
+        assertEquals(3, attempts.get());
+        assertEquals(1, meterRegistry.timer("streamline.aggregates.writes", "outcome", "conflict").count());
+    }
+
+    @Test
+    void otherFailuresAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> executor.execute(UUID.randomUUID(), () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException();
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void constraintViolationsAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(DataIntegrityViolationException.class, () -> executor.execute(UUID.randomUUID(), () -> {
+            attempts.incrementAndGet();
+            throw new DataIntegrityViolationException("not null");
+        }));
+        assertEquals(1, attempts.get());
+        assertEquals(0, meterRegistry.counter("streamline.aggregates.writes.retries").count(), 1e-9);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lostInsertRaceIsRetried() {
+        JpaRepository<String, String> repository = mock(JpaRepository.class);
+        when(repository.saveAndFlush("row"))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"))
+                .thenReturn("row");
+
+        String result = executor.execute(UUID.randomUUID(),
+                () -> UserDataWriteExecutor.insertContended(repository, "row"));
+
+        assertEquals("row", result);
+        verify(repository, times(2)).saveAndFlush("row");
+        verify(repository, times(2)).flush();
+    }
+
+    @Test
+    void serializesWritesForTheSameUser() throws Exception {
+        UUID userId = UUID.randomUUID();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(pool.submit(() -> executor.execute(userId, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    running.decrementAndGet();
+                    return null;
+                })));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void multiUserWritesDoNotDeadlock() throws Exception {
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            users.add(UUID.randomUUID());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                List<UUID> subset = new ArrayList<>(users.subList(i % 16, i % 16 + 16));
+                if (i % 2 == 1) {
+                    Collections.reverse(subset);
+                }
+                results.add(pool.submit(() -> executor.execute(subset, () -> null)));
+            }
+            for (Future<Object> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.thomaschen.streamlinedata.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import org.thomaschen.streamlinedata.DockerAvailableCondition;
+import org.thomaschen.streamlinedata.model.TaskData;
+import org.thomaschen.streamlinedata.model.TeamRollup;
+import org.thomaschen.streamlinedata.model.UserData;
+import org.thomaschen.streamlinedata.repository.TaskDataRepository;
+import org.thomaschen.streamlinedata.repository.TeamRollupRepository;
+import org.thomaschen.streamlinedata.repository.UserDataRepository;
+import org.thomaschen.streamlinedata.repository.UuidBytes;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the set-based user deletes against a Testcontainers MySQL database, with batch sizes
+ * small enough that every delete loops.
+ */
+@ExtendWith(DockerAvailableCondition.class)
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"streamline.delete.batch-size=3", "streamline.delete.user-batch-size=2"})
+class UserDeletionServiceTest {
+    private static final int TASKS_PER_USER = 5;
+
+    @Autowired
+    UserDeletionService userDeletionService;
+
+    @Autowired
+    TaskDataService taskDataService;
+
+    @Autowired
+    TeamRollupService teamRollupService;
+
+    @Autowired
+    UserDataRepository userDataRepository;
+
+    @Autowired
+    TaskDataRepository taskDataRepository;
+
+    @Autowired
+    TeamRollupRepository teamRollupRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private UserData alice;
+    private UserData bob;
+    private UserData team;
+
+    @BeforeEach
+    void setUp() {
+        userDeletionService.deleteAll();
+
+        alice = createUser("alice");
+        bob = createUser("bob");
+        team = createUser("tplatform");
+        createUser("tdata");
+        teamRollupService.addMember(team.getId(), alice.getId());
+        teamRollupService.addMember(team.getId(), bob.getId());
+    }
+
+    @Test
+    void deleteAllEmptiesEveryTable() {
+        assertEquals(4, userDeletionService.deleteAll());
+
+        for (String table : Arrays.asList("users", "tasks", "task_tags", "tag_stats",
+                "team_members", "team_rollups", "aggregate_deltas")) {
+            assertEquals(0, count(table), table);
+        }
+    }
+
+    @Test
+    void deleteByPrefixKeepsOtherUsers() {
+        assertEquals(2, userDeletionService.deleteMatching(null, null, "t"));
+
+        assertEquals(2, count("users"));
+        assertEquals(2 * TASKS_PER_USER, count("tasks"));
+        assertEquals(0, count("team_members"));
+        assertEquals(0, count("team_rollups"));
+        assertTrue(userDataRepository.existsById(alice.getId()));
+    }
+
+    @Test
+    void deleteByPrefixEscapesWildcards() {
+        createUser("a_b");
+        createUser("axb");
+
+        assertEquals(1, userDeletionService.deleteMatching(null, null, "a_"));
+        assertEquals(0, userDeletionService.deleteMatching(null, null, "%"));
+        assertEquals(5, count("users"));
+    }
+
+    @Test
+    void deleteMemberDropsTeamRollup() {
+        assertNotNull(teamRollupService.getRollup(team.getId()));
+
+        assertEquals(1, userDeletionService.deleteMatching(null, null, "bob"));
+
+        assertEquals(0, count("team_rollups"));
+        assertEquals(1, teamRollupService.getRollup(team.getId()).getMemberCount());
+        assertEquals(TASKS_PER_USER, teamRollupService.getRollup(team.getId()).getStatistics().getTaskCount());
+    }
+
+    @Test
+    void deleteUserRecomputesTeamRollups() {
+        assertTrue(userDeletionService.deleteUser(alice.getId()));
+
+        assertFalse(userDataRepository.existsById(alice.getId()));
+        assertEquals(3 * TASKS_PER_USER, count("tasks"));
+        assertEquals(0, count("tag_stats where owner_id = ?", UuidBytes.toBytes(alice.getId())));
+        assertEquals(1, count("team_rollups"));
+        TeamRollup rollup = teamRollupRepository.findById(team.getId()).get();
+        assertEquals(1, rollup.getMemberCount());
+        assertEquals(TASKS_PER_USER, rollup.getStatistics().getTaskCount());
+
+        assertFalse(userDeletionService.deleteUser(alice.getId()));
+    }
+
+    @Test
+    void deleteByCreatedAtRange() {
+        Calendar from = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        from.set(2017, Calendar.JANUARY, 1, 0, 0, 0);
+        Calendar to = (Calendar) from.clone();
+        to.add(Calendar.YEAR, 1);
+
+        Calendar created = (Calendar) from.clone();
+        created.add(Calendar.MONTH, 6);
+        jdbcTemplate.update("update users set created_at = ? where id = ?",
+                new Timestamp(created.getTimeInMillis()), UuidBytes.toBytes(bob.getId()));
+
+        assertEquals(1, userDeletionService.deleteMatching(from, to, null));
+        assertFalse(userDataRepository.existsById(bob.getId()));
+        assertEquals(0, userDeletionService.deleteMatching(from, to, null));
+        assertEquals(3 * TASKS_PER_USER, count("tasks"));
+    }
+
+    private UserData createUser(String userId) {
+        UserData userData = userDataRepository.save(new UserData(userId, 0, 0, 0, 0.0, 0.0));
+        for (int i = 0; i < TASKS_PER_USER; i++) {
+            TaskData taskData = new TaskData();
+            taskData.setExpDuration(1000L);
+            taskData.setActualDuration(500L + i * 250L);
+            taskData.setTags(Arrays.asList("tag" + i % 2, "all"));
+            taskDataService.createTaskData(userData.getId(), taskData);
+        }
+        return userData;
+    }
+
+    private long count(String table, Object... args) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class, args);
+    }
+}